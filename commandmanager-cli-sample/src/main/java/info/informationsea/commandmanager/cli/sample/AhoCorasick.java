@@ -0,0 +1,194 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Multi-pattern string replacement with an Aho-Corasick automaton.
+ *
+ * All targets are searched in a single pass over the text. Matches do not overlap, and when matches overlap,
+ * the leftmost one is replaced, and the longest one is preferred among matches starting at the same position.
+ * An automaton is immutable and thread safe once it is built.
+ * @author Yasunobu OKAMURA
+ */
+public class AhoCorasick {
+
+    /**
+     * Sorted transition characters of each state
+     */
+    private final char[][] keys;
+    private final int[][] children;
+    private final int[] fail;
+    private final int[] depth;
+
+    /**
+     * Index of the longest pattern which ends at each state, or -1
+     */
+    private final int[] output;
+
+    /**
+     * Transitions from the root state for all characters. 0 means no transition.
+     */
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+
+    private final String[] replacements;
+    private final int[] patternLengths;
+
+    /**
+     * Number of targets
+     */
+    @Getter
+    private final int size;
+
+    /**
+     * Build an automaton.
+     * @param mapping replacements for each target. Targets should not be empty.
+     */
+    public AhoCorasick(@NonNull Map<String, String> mapping) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Integer> terminals = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        depths.add(0);
+        terminals.add(-1);
+
+        size = mapping.size();
+        replacements = new String[size];
+        patternLengths = new int[size];
+        int index = 0;
+        for (Map.Entry<String, String> entry : mapping.entrySet()) {
+            String target = entry.getKey();
+            if (target.isEmpty())
+                throw new IllegalArgumentException("Replacement target should not be empty");
+            int state = 0;
+            for (int i = 0; i < target.length(); i++) {
+                Integer next = trie.get(state).get(target.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    depths.add(i + 1);
+                    terminals.add(-1);
+                    trie.get(state).put(target.charAt(i), next);
+                }
+                state = next;
+            }
+            terminals.set(state, index);
+            replacements[index] = entry.getValue();
+            patternLengths[index] = target.length();
+            index += 1;
+        }
+
+        int stateCount = trie.size();
+        keys = new char[stateCount][];
+        children = new int[stateCount][];
+        depth = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            TreeMap<Character, Integer> transitions = trie.get(state);
+            keys[state] = new char[transitions.size()];
+            children[state] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                keys[state][i] = entry.getKey();
+                children[state][i] = entry.getValue();
+                i += 1;
+            }
+            depth[state] = depths.get(state);
+        }
+        for (int i = 0; i < keys[0].length; i++) {
+            rootNext[keys[0][i]] = children[0][i];
+        }
+
+        // breadth first search to build failure links
+        fail = new int[stateCount];
+        output = new int[stateCount];
+        output[0] = -1;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : children[0]) {
+            fail[child] = 0;
+            output[child] = terminals.get(child);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < keys[state].length; i++) {
+                int child = children[state][i];
+                fail[child] = step(fail[state], keys[state][i]);
+                output[child] = terminals.get(child) >= 0 ? terminals.get(child) : output[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int step(int state, char ch) {
+        while (state != 0) {
+            int found = Arrays.binarySearch(keys[state], ch);
+            if (found >= 0)
+                return children[state][found];
+            state = fail[state];
+        }
+        return rootNext[ch];
+    }
+
+    /**
+     * Replace all targets in the text.
+     * @param text a text
+     * @return a replaced text. The same instance is returned if no target is found.
+     */
+    public String replace(@NonNull String text) {
+        StringBuilder builder = null;
+        int position = 0;
+
+        while (position < text.length()) {
+            int state = 0;
+            int matchStart = -1;
+            int matchEnd = -1;
+            int matchPattern = -1;
+
+            for (int i = position; i < text.length(); i++) {
+                state = step(state, text.charAt(i));
+                // no later match can start at or before the pending match
+                if (matchStart >= 0 && i - depth[state] + 1 > matchStart)
+                    break;
+                int pattern = output[state];
+                if (pattern >= 0) {
+                    int start = i - patternLengths[pattern] + 1;
+                    if (matchStart < 0 || start <= matchStart) {
+                        matchStart = start;
+                        matchEnd = i + 1;
+                        matchPattern = pattern;
+                    }
+                }
+            }
+
+            if (matchStart < 0)
+                break;
+            if (builder == null)
+                builder = new StringBuilder(text.length());
+            builder.append(text, position, matchStart).append(replacements[matchPattern]);
+            position = matchEnd;
+        }
+
+        if (builder == null)
+            return text;
+        return builder.append(text, position, text.length()).toString();
+    }
+}
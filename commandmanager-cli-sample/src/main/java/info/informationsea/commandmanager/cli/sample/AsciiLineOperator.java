@@ -0,0 +1,38 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * A line operator which can also work on ASCII bytes without materializing strings.
+ * Compact leaves of ASCII lines use {@code applyAscii} instead of {@code apply}.
+ * Both methods should give the same result.
+ * @author Yasunobu OKAMURA
+ */
+public interface AsciiLineOperator extends UnaryOperator<String> {
+
+    /**
+     * Apply this operator to an ASCII line.
+     * @param data an array which contains the line
+     * @param from start of the line, inclusive
+     * @param to end of the line, exclusive
+     * @return new ASCII bytes of the line, or null if the line is not changed
+     */
+    byte[] applyAscii(byte[] data, int from, int to);
+}
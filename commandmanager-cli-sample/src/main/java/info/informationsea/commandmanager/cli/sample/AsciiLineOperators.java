@@ -0,0 +1,185 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * Line operators with byte level fast paths for ASCII data.
+ * A plain operator is returned when the fast path cannot give the same result as the string operation.
+ * @author Yasunobu OKAMURA
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class AsciiLineOperators {
+
+    /**
+     * Convert lines to upper case.
+     * @param locale a locale of case conversion
+     * @return an operator
+     */
+    public static UnaryOperator<String> toUpperCase(@NonNull Locale locale) {
+        if (!isAsciiSafe(locale))
+            return s -> s.toUpperCase(locale);
+        return new CaseOperator(locale, true);
+    }
+
+    /**
+     * Convert lines to lower case.
+     * @param locale a locale of case conversion
+     * @return an operator
+     */
+    public static UnaryOperator<String> toLowerCase(@NonNull Locale locale) {
+        if (!isAsciiSafe(locale))
+            return s -> s.toLowerCase(locale);
+        return new CaseOperator(locale, false);
+    }
+
+    /**
+     * Replace all occurrences of a literal target.
+     * @param target a replacement target
+     * @param replacement new text
+     * @return an operator
+     */
+    public static UnaryOperator<String> replace(@NonNull String target, @NonNull String replacement) {
+        if (target.isEmpty() || !isAscii(target) || !isAscii(replacement))
+            return s -> s.replace(target, replacement);
+        return new ReplaceOperator(target, replacement);
+    }
+
+    static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Case mapping of ASCII letters in Turkish and Azerbaijani gives non-ASCII letters
+     */
+    private static boolean isAsciiSafe(Locale locale) {
+        return !locale.getLanguage().equals("tr") && !locale.getLanguage().equals("az");
+    }
+
+    private static class CaseOperator implements AsciiLineOperator {
+        private final Locale locale;
+        private final boolean upper;
+
+        CaseOperator(Locale locale, boolean upper) {
+            this.locale = locale;
+            this.upper = upper;
+        }
+
+        @Override
+        public String apply(String s) {
+            return upper ? s.toUpperCase(locale) : s.toLowerCase(locale);
+        }
+
+        @Override
+        public byte[] applyAscii(byte[] data, int from, int to) {
+            byte first = upper ? (byte) 'a' : (byte) 'A';
+            byte last = upper ? (byte) 'z' : (byte) 'Z';
+            byte[] result = null;
+            for (int i = from; i < to; i++) {
+                if (data[i] >= first && data[i] <= last) {
+                    if (result == null)
+                        result = Arrays.copyOfRange(data, from, to);
+                    result[i - from] ^= 0x20;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class ReplaceOperator implements AsciiLineOperator {
+        private final String target;
+        private final String replacement;
+        private final byte[] targetBytes;
+        private final byte[] replacementBytes;
+
+        ReplaceOperator(String target, String replacement) {
+            this.target = target;
+            this.replacement = replacement;
+            this.targetBytes = toBytes(target);
+            this.replacementBytes = toBytes(replacement);
+        }
+
+        private static byte[] toBytes(String ascii) {
+            byte[] bytes = new byte[ascii.length()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) ascii.charAt(i);
+            }
+            return bytes;
+        }
+
+        @Override
+        public String apply(String s) {
+            return s.replace(target, replacement);
+        }
+
+        @Override
+        public byte[] applyAscii(byte[] data, int from, int to) {
+            int found = indexOf(data, from, to);
+            if (found < 0)
+                return null;
+
+            byte[] result = new byte[to - from + 16];
+            int length = 0;
+            int position = from;
+            while (found >= 0) {
+                result = ensure(result, length + (found - position) + replacementBytes.length);
+                System.arraycopy(data, position, result, length, found - position);
+                length += found - position;
+                System.arraycopy(replacementBytes, 0, result, length, replacementBytes.length);
+                length += replacementBytes.length;
+                position = found + targetBytes.length;
+                found = indexOf(data, position, to);
+            }
+            result = ensure(result, length + (to - position));
+            System.arraycopy(data, position, result, length, to - position);
+            length += to - position;
+            return Arrays.copyOf(result, length);
+        }
+
+        private static byte[] ensure(byte[] array, int capacity) {
+            return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+        }
+
+        private int indexOf(byte[] data, int from, int to) {
+            byte first = targetBytes[0];
+            int last = to - targetBytes.length;
+            outer:
+            for (int i = from; i <= last; i++) {
+                if (data[i] != first)
+                    continue;
+                for (int j = 1; j < targetBytes.length; j++) {
+                    if (data[i + j] != targetBytes[j])
+                        continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+}
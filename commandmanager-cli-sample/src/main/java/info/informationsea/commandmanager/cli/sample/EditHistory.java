@@ -0,0 +1,237 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.*;
+
+/**
+ * Undo and redo history of the line editor.
+ *
+ * Each entry is an immutable {@code LineRope} snapshot. Snapshots share unchanged nodes with each other,
+ * so an entry is charged only for nodes which are not shared with its neighbouring state, and its cost is
+ * proportional to its edit rather than to the buffer. When the total estimated size exceeds the budget,
+ * the oldest entries are evicted first.
+ * @author Yasunobu OKAMURA
+ */
+public class EditHistory {
+
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    static final long CONCAT_SIZE = 32;
+
+    /**
+     * Undo entries. The first entry is the newest.
+     */
+    private final Deque<Entry> undoEntries = new ArrayDeque<>();
+
+    /**
+     * Redo entries. The first entry is the next state to redo.
+     */
+    private final Deque<Entry> redoEntries = new ArrayDeque<>();
+
+    private long budget = DEFAULT_BUDGET;
+    private long usedBytes = 0;
+
+    /**
+     * Record an edit. Redo entries are discarded.
+     * @param before lines before the edit
+     * @param after lines after the edit
+     */
+    public synchronized void record(@NonNull LineRope before, @NonNull LineRope after) {
+        if (before == after)
+            return;
+        for (Entry one : redoEntries) {
+            usedBytes -= one.getSize();
+        }
+        redoEntries.clear();
+        push(undoEntries, before, after);
+        evict();
+    }
+
+    /**
+     * Undo the last edit.
+     * @param current current lines, which can be restored with {@code redo}
+     * @return lines before the last edit
+     * @throws IllegalStateException nothing to undo
+     */
+    public synchronized LineRope undo(@NonNull LineRope current) {
+        return move(undoEntries, redoEntries, current, "Nothing to undo");
+    }
+
+    /**
+     * Redo the last undone edit.
+     * @param current current lines, which can be restored with {@code undo}
+     * @return lines after the edit
+     * @throws IllegalStateException nothing to redo
+     */
+    public synchronized LineRope redo(@NonNull LineRope current) {
+        return move(redoEntries, undoEntries, current, "Nothing to redo");
+    }
+
+    private LineRope move(Deque<Entry> from, Deque<Entry> to, LineRope current, String message) {
+        if (from.isEmpty())
+            throw new IllegalStateException(message);
+        Entry entry = from.pop();
+        usedBytes -= entry.getSize();
+        push(to, current, entry.getRope());
+        evict();
+        return entry.getRope();
+    }
+
+    private void push(Deque<Entry> entries, LineRope rope, LineRope neighbour) {
+        Entry entry = new Entry(rope, retainedSize(rope, neighbour));
+        entries.push(entry);
+        usedBytes += entry.getSize();
+    }
+
+    private void evict() {
+        while (usedBytes > budget && !undoEntries.isEmpty()) {
+            usedBytes -= undoEntries.removeLast().getSize();
+        }
+        while (usedBytes > budget && !redoEntries.isEmpty()) {
+            usedBytes -= redoEntries.removeLast().getSize();
+        }
+    }
+
+    /**
+     * Discard all entries.
+     */
+    public synchronized void clear() {
+        undoEntries.clear();
+        redoEntries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized boolean canUndo() {
+        return !undoEntries.isEmpty();
+    }
+
+    public synchronized boolean canRedo() {
+        return !redoEntries.isEmpty();
+    }
+
+    public synchronized int getUndoCount() {
+        return undoEntries.size();
+    }
+
+    public synchronized int getRedoCount() {
+        return redoEntries.size();
+    }
+
+    /**
+     * Get an estimated heap size retained by history entries.
+     * @return size in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Set a memory budget. Old entries are evicted if the history exceeds the new budget.
+     * @param budget a budget in bytes
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("budget should not be negative");
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Estimate heap size of nodes in {@code rope} which are not shared with {@code base}.
+     *
+     * Shared subtrees have the same height in both ropes, so both trees are expanded level by level from the top,
+     * and nodes found at the same level of both trees are not expanded. The cost is proportional to the number of
+     * unshared nodes.
+     * @param rope a rope to estimate
+     * @param base a rope which stays in memory
+     * @return estimated size in bytes
+     */
+    static long retainedSize(LineRope rope, LineRope base) {
+        if (rope == base)
+            return 0;
+
+        int height = Math.max(rope.height(), base.height());
+        List<List<LineRope>> ropeLevels = new ArrayList<>();
+        List<List<LineRope>> baseLevels = new ArrayList<>();
+        for (int i = 0; i <= height; i++) {
+            ropeLevels.add(new ArrayList<>());
+            baseLevels.add(new ArrayList<>());
+        }
+        ropeLevels.get(rope.height()).add(rope);
+        baseLevels.get(base.height()).add(base);
+
+        List<LineRope.Leaf> ropeLeaves = new ArrayList<>();
+        Set<Object> baseStores = Collections.newSetFromMap(new IdentityHashMap<>());
+        long size = 0;
+
+        for (int level = height; level >= 0; level--) {
+            Set<LineRope> ropeNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+            ropeNodes.addAll(ropeLevels.get(level));
+            Set<LineRope> baseNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+            baseNodes.addAll(baseLevels.get(level));
+
+            for (LineRope node : ropeNodes) {
+                if (baseNodes.contains(node))
+                    continue;
+                if (node instanceof LineRope.Concat) {
+                    size += CONCAT_SIZE;
+                    expand((LineRope.Concat) node, ropeLevels);
+                } else {
+                    ropeLeaves.add((LineRope.Leaf) node);
+                }
+            }
+            for (LineRope node : baseNodes) {
+                if (ropeNodes.contains(node))
+                    continue;
+                if (node instanceof LineRope.Concat) {
+                    expand((LineRope.Concat) node, baseLevels);
+                } else if (((LineRope.Leaf) node).backingStore() != null) {
+                    baseStores.add(((LineRope.Leaf) node).backingStore());
+                }
+            }
+        }
+
+        Set<Object> countedStores = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (LineRope.Leaf leaf : ropeLeaves) {
+            size += leaf.estimatedSize();
+            Object store = leaf.backingStore();
+            if (store != null && !baseStores.contains(store) && countedStores.add(store))
+                size += leaf.backingStoreSize();
+        }
+        return size;
+    }
+
+    private static void expand(LineRope.Concat node, List<List<LineRope>> levels) {
+        levels.get(node.left.height()).add(node.left);
+        levels.get(node.right.height()).add(node.right);
+    }
+
+    @Value
+    private static class Entry {
+        private LineRope rope;
+        private long size;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * External merge sort of lines which may not fit in memory.
+ *
+ * Lines are collected into runs until the estimated size of a run reaches its share of the memory limit.
+ * Runs are sorted and spilled to temporary files in parallel, and the sorted runs are merged with a heap.
+ * If there are more runs than {@code MAX_MERGE_WIDTH}, runs are merged in several passes.
+ * Input which fits in one run is sorted in memory without temporary files.
+ * The sort is stable, and the unique mode keeps the first line of equal lines.
+ * Lines should not contain line separators.
+ * @author Yasunobu OKAMURA
+ */
+public class ExternalSorter {
+
+    public static final long DEFAULT_MEMORY_LIMIT = 64L * 1024 * 1024;
+
+    /**
+     * Maximum number of runs merged at once
+     */
+    static final int MAX_MERGE_WIDTH = 128;
+
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives sorted lines.
+     */
+    public interface LineConsumer {
+        void accept(String line) throws IOException;
+    }
+
+    /**
+     * Numbers of lines processed by a sort, and runs spilled to temporary files.
+     */
+    @Value
+    public static class Statistics {
+        private long inputLines;
+        private long outputLines;
+        private int runs;
+    }
+
+    @Getter
+    private final Comparator<String> comparator;
+
+    /**
+     * Estimated memory in bytes used by runs in progress
+     */
+    @Getter
+    private final long memoryLimit;
+
+    @Getter
+    private final boolean unique;
+
+    /**
+     * Number of runs sorted and written at the same time
+     */
+    @Getter
+    private final int parallelism;
+
+    /**
+     * A directory to create temporary files. null for the default temporary directory.
+     */
+    @Getter
+    private final File temporaryDirectory;
+
+    public ExternalSorter(Comparator<String> comparator, long memoryLimit, boolean unique) {
+        this(comparator, memoryLimit, unique, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    public ExternalSorter(@NonNull Comparator<String> comparator, long memoryLimit, boolean unique,
+                          int parallelism, File temporaryDirectory) {
+        if (memoryLimit <= 0)
+            throw new IllegalArgumentException("memoryLimit should be positive");
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism should be positive");
+        this.comparator = comparator;
+        this.memoryLimit = memoryLimit;
+        this.unique = unique;
+        this.parallelism = parallelism;
+        this.temporaryDirectory = temporaryDirectory;
+    }
+
+    /**
+     * Sort lines.
+     * @param input lines to sort
+     * @param output receives sorted lines
+     * @throws IOException failed to read or write temporary files, or the output failed
+     * @return numbers of processed lines and runs
+     */
+    public Statistics sort(@NonNull Iterator<String> input, @NonNull LineConsumer output) throws IOException {
+        // one more run is collected while the others are written
+        long runMemory = Math.max(1, memoryLimit / (parallelism + 1));
+        List<File> temporaryFiles = Collections.synchronizedList(new ArrayList<>());
+        List<Future<File>> runs = new ArrayList<>();
+        Semaphore writers = new Semaphore(parallelism);
+        ExecutorService executor = null;
+
+        try {
+            long inputLines = 0;
+            List<String> batch = new ArrayList<>();
+            long batchMemory = 0;
+            while (input.hasNext()) {
+                String line = input.next();
+                batch.add(line);
+                batchMemory += estimateSize(line);
+                inputLines++;
+
+                if (batchMemory >= runMemory && input.hasNext()) {
+                    if (executor == null)
+                        executor = Executors.newFixedThreadPool(parallelism);
+                    runs.add(submitRun(executor, writers, batch, temporaryFiles));
+                    batch = new ArrayList<>();
+                    batchMemory = 0;
+                }
+            }
+
+            if (runs.isEmpty()) {
+                String[] lines = batch.toArray(new String[batch.size()]);
+                Arrays.parallelSort(lines, comparator);
+                long outputLines = 0;
+                String last = null;
+                for (String one : lines) {
+                    if (unique && last != null && comparator.compare(last, one) == 0)
+                        continue;
+                    output.accept(one);
+                    last = one;
+                    outputLines++;
+                }
+                return new Statistics(inputLines, outputLines, 0);
+            }
+            if (!batch.isEmpty())
+                runs.add(submitRun(executor, writers, batch, temporaryFiles));
+
+            List<File> runFiles = new ArrayList<>();
+            for (Future<File> one : runs) {
+                runFiles.add(await(one));
+            }
+            int runCount = runFiles.size();
+
+            while (runFiles.size() > MAX_MERGE_WIDTH) {
+                List<File> merged = new ArrayList<>();
+                for (int i = 0; i < runFiles.size(); i += MAX_MERGE_WIDTH) {
+                    List<File> group = runFiles.subList(i, Math.min(runFiles.size(), i + MAX_MERGE_WIDTH));
+                    File file = createRunFile(temporaryFiles);
+                    try (Writer writer = openRun(file)) {
+                        merge(group, line -> {
+                            writer.write(line);
+                            writer.write('\n');
+                        });
+                    }
+                    for (File one : group) {
+                        Files.deleteIfExists(one.toPath());
+                    }
+                    merged.add(file);
+                }
+                runFiles = merged;
+            }
+
+            return new Statistics(inputLines, merge(runFiles, output), runCount);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (temporaryFiles) {
+                for (File one : temporaryFiles) {
+                    Files.deleteIfExists(one.toPath());
+                }
+            }
+        }
+    }
+
+    private Future<File> submitRun(ExecutorService executor, Semaphore writers, List<String> batch,
+                                   List<File> temporaryFiles) throws IOException {
+        try {
+            // bound the number of runs kept in memory
+            writers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a run to be written");
+        }
+        return executor.submit(() -> {
+            try {
+                return writeRun(batch, temporaryFiles);
+            } finally {
+                writers.release();
+            }
+        });
+    }
+
+    private File writeRun(List<String> batch, List<File> temporaryFiles) throws IOException {
+        String[] lines = batch.toArray(new String[batch.size()]);
+        batch.clear();
+        Arrays.sort(lines, comparator);
+
+        File file = createRunFile(temporaryFiles);
+        try (Writer writer = openRun(file)) {
+            String last = null;
+            for (String one : lines) {
+                if (unique && last != null && comparator.compare(last, one) == 0)
+                    continue;
+                writer.write(one);
+                writer.write('\n');
+                last = one;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Merge sorted runs. Equal lines are taken from earlier runs first to keep the sort stable.
+     * @return a number of merged lines
+     */
+    private long merge(List<File> runFiles, LineConsumer output) throws IOException {
+        PriorityQueue<RunCursor> heap = new PriorityQueue<>(runFiles.size(),
+                Comparator.comparing(RunCursor::getLine, comparator).thenComparingInt(RunCursor::getIndex));
+        List<BufferedReader> readers = new ArrayList<>();
+        try {
+            for (File one : runFiles) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(one),
+                        StandardCharsets.UTF_8), RUN_BUFFER_SIZE);
+                readers.add(reader);
+                RunCursor cursor = new RunCursor(readers.size() - 1, reader);
+                if (cursor.advance())
+                    heap.add(cursor);
+            }
+
+            long outputLines = 0;
+            String last = null;
+            while (!heap.isEmpty()) {
+                RunCursor cursor = heap.poll();
+                String line = cursor.getLine();
+                if (!unique || last == null || comparator.compare(last, line) != 0) {
+                    output.accept(line);
+                    last = line;
+                    outputLines++;
+                }
+                if (cursor.advance())
+                    heap.add(cursor);
+            }
+            return outputLines;
+        } finally {
+            for (BufferedReader one : readers) {
+                one.close();
+            }
+        }
+    }
+
+    private File createRunFile(List<File> temporaryFiles) throws IOException {
+        File file = File.createTempFile("sort", ".run", temporaryDirectory);
+        temporaryFiles.add(file);
+        return file;
+    }
+
+    private static Writer openRun(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                RUN_BUFFER_SIZE);
+    }
+
+    private static File await(Future<File> run) throws IOException {
+        try {
+            return run.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a run to be written");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Failed to write a run", e.getCause());
+        }
+    }
+
+    /**
+     * Estimated heap size of a line in bytes
+     */
+    static long estimateSize(String line) {
+        return 48 + 2L * line.length();
+    }
+
+    private static class RunCursor {
+        @Getter
+        private final int index;
+        private final BufferedReader reader;
+        @Getter
+        private String line = null;
+
+        RunCursor(int index, BufferedReader reader) {
+            this.index = index;
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException {
+            line = reader.readLine();
+            return line != null;
+        }
+    }
+}
@@ -19,22 +19,66 @@
 package info.informationsea.commandmanager.cli.sample;
 
 import info.informationsea.commandmanager.cli.CLICommandConsole;
+import info.informationsea.commandmanager.cli.SessionRecorder;
+import info.informationsea.commandmanager.cli.SessionReplayer;
 import info.informationsea.commandmanager.core.CommandManager;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
  * Example of CLICommandManager usage
+ *
+ * Options: "-restore FILE" restores a snapshot at start. "-record FILE" records the session.
+ * "-replay FILE" replays a recorded session without starting the console, with "-sessions N" concurrent sessions
+ * and "-speed X" times the original speed ("max" for maximum speed).
  */
 public class LineEditor {
     public static void main(String ... args) {
         CommandManager commandManager = new CommandManager();
         CLICommandConsole commandConsole = new CLICommandConsole(commandManager);
         LineEditorCommands.registerCommands(commandManager);
+        commandConsole.setUsageStatisticsFile(new File(System.getProperty("user.home"), ".commandmanager-lineeditor-usage"));
+        commandConsole.setHistoryDirectory(new File(System.getProperty("user.home"), ".commandmanager-lineeditor-history"));
+        File record = null;
+        File replay = null;
+        int sessions = 1;
+        double speed = 1;
+        for (int i = 0; i < args.length - 1; i++) {
+            switch (args[i]) {
+                case "-restore":
+                    commandConsole.setSnapshotFile(new File(args[i + 1]));
+                    break;
+                case "-record":
+                    record = new File(args[i + 1]);
+                    break;
+                case "-replay":
+                    replay = new File(args[i + 1]);
+                    break;
+                case "-sessions":
+                    sessions = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-speed":
+                    speed = args[i + 1].equals("max") ? SessionReplayer.MAXIMUM_SPEED : Double.parseDouble(args[i + 1]);
+                    break;
+            }
+        }
 
         try {
-            commandConsole.startConsole();
-        } catch (IOException e) {
+            if (replay != null) {
+                SessionReplayer replayer = new SessionReplayer(commandManager, LineEditorCommands.LineEditorContext::new, sessions, speed);
+                System.out.print(replayer.replay(SessionRecorder.read(replay)).format());
+                return;
+            }
+            if (record != null)
+                commandConsole.setSessionRecorder(new SessionRecorder(record));
+            try {
+                commandConsole.startConsole();
+            } finally {
+                if (commandConsole.getSessionRecorder() != null)
+                    commandConsole.getSessionRecorder().close();
+            }
+        } catch (IOException | InterruptedException e) {
             e.printStackTrace();
         }
     }
@@ -1,18 +1,39 @@
 package info.informationsea.commandmanager.cli.sample;
 
+import info.informationsea.commandmanager.cli.CLIPageableCommand;
+import info.informationsea.commandmanager.cli.CLIPager;
+import info.informationsea.commandmanager.cli.CLIStreamingCommand;
 import info.informationsea.commandmanager.core.CommandManager;
 import info.informationsea.commandmanager.core.CommandResult;
+import info.informationsea.commandmanager.core.ContextAccess;
+import info.informationsea.commandmanager.core.DeferredContext;
 import info.informationsea.commandmanager.core.ManagedCommand;
+import info.informationsea.commandmanager.core.SnapshotableContext;
 import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * CommandManager
@@ -26,22 +47,168 @@ public class LineEditorCommands {
         commandManager.addCommand("convert", Convert.class);
         commandManager.addCommand("insert", Insert.class);
         commandManager.addCommand("replace", Replace.class);
+        commandManager.addCommand("bulkreplace", BulkReplace.class);
         commandManager.addCommand("save", Save.class);
         commandManager.addCommand("print", Print.class);
+        commandManager.addCommand("undo", Undo.class);
+        commandManager.addCommand("redo", Redo.class);
+        commandManager.addCommand("edithistory", EditHistoryCommand.class);
+        commandManager.addCommand("defer", Defer.class);
+        commandManager.addCommand("index", IndexCommand.class);
+        commandManager.addCommand("find", Find.class);
+        commandManager.addCommand("grep", Grep.class);
+        commandManager.addCommand("sort", Sort.class);
+        commandManager.addCommand("uniq", Uniq.class);
         commandManager.addCommand("dummy", Dummy.class);
         commandManager.setContext(new LineEditorContext());
     }
 
-    public static class LineEditorContext {
-        public List<String> lines = new ArrayList<>();
+    public static class LineEditorContext implements SnapshotableContext, DeferredContext {
+        static final int SNAPSHOT_VERSION = 1;
+
+        public final LineStore lines = new LineStore();
+        public final EditHistory history = new EditHistory();
+
+        /**
+         * A search index of lines, or null if lines are not indexed.
+         * Transformations update the index incrementally. Other edits are reflected when the index is searched.
+         */
+        @Getter @Setter
+        private volatile TrigramIndex index = null;
+
+        /**
+         * A file bound by {@code load -stream}, or null if commands work on the loaded lines.
+         */
+        @Getter @Setter
+        private volatile LineStream stream = null;
+
+        public LineEditorContext() {
+            lines.setTransformListener((before, after) -> {
+                history.record(before, after);
+                TrigramIndex current = index;
+                if (current != null)
+                    current.update(after);
+            });
+        }
+
+        /**
+         * Pending operators of deferred mode and a stale index are finished before lines are read.
+         */
+        @Override
+        public boolean hasPendingWork() {
+            if (lines.getPendingStages() > 0)
+                return true;
+            TrigramIndex current = index;
+            return current != null && !lines.isCurrent(current.getRope());
+        }
+
+        @Override
+        public void finishPendingWork() {
+            LineRope rope = lines.getRope();
+            TrigramIndex current = index;
+            if (current != null)
+                current.update(rope);
+        }
+
+        /**
+         * Write lines as packed leaves, with deferred mode and whether lines are indexed.
+         * Pending operators are applied before writing. Edit history and a bound stream are not saved.
+         */
+        @Override
+        public void writeSnapshot(DataOutputStream output) throws IOException {
+            LineRope rope = lines.getRope();
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeBoolean(lines.isDeferred());
+            output.writeBoolean(index != null);
+            output.writeInt(rope.size());
+
+            String[] batch = new String[PackedLeaf.PACKED_LEAF_SIZE];
+            int count = 0;
+            for (Iterator<LineRope.Leaf> iterator = rope.leafIterator(); iterator.hasNext(); ) {
+                LineRope.Leaf leaf = iterator.next();
+                if (leaf instanceof PackedLeaf) {
+                    if (count > 0) {
+                        PackedLeaf.pack(batch, count).writeTo(output);
+                        count = 0;
+                    }
+                    if (leaf.size() > 0)
+                        ((PackedLeaf) leaf).writeTo(output);
+                    continue;
+                }
+                for (int i = 0; i < leaf.size(); i++) {
+                    batch[count++] = leaf.line(i);
+                    if (count == batch.length) {
+                        PackedLeaf.pack(batch, count).writeTo(output);
+                        count = 0;
+                    }
+                }
+            }
+            if (count > 0)
+                PackedLeaf.pack(batch, count).writeTo(output);
+        }
+
+        /**
+         * Replace lines with packed leaves in the snapshot. The edit history is cleared, and the index is rebuilt.
+         */
+        @Override
+        public void restoreSnapshot(ByteBuffer snapshot) throws IOException {
+            int version = snapshot.getInt();
+            if (version != SNAPSHOT_VERSION)
+                throw new IOException("Unsupported line editor snapshot version: " + version);
+            boolean deferred = snapshot.get() != 0;
+            boolean indexed = snapshot.get() != 0;
+            int size = snapshot.getInt();
+
+            List<LineRope> leaves = new ArrayList<>();
+            int restored = 0;
+            while (restored < size) {
+                PackedLeaf leaf = PackedLeaf.readFrom(snapshot);
+                if (leaf.size() == 0)
+                    throw new IOException("Line editor snapshot is broken");
+                leaves.add(leaf);
+                restored += leaf.size();
+            }
+            if (restored != size || snapshot.hasRemaining())
+                throw new IOException("Line editor snapshot is broken");
+
+            LineRope rope = LineRope.joinAll(leaves);
+            stream = null;
+            lines.setRope(rope);
+            lines.setDeferred(deferred);
+            history.clear();
+            index = indexed ? TrigramIndex.build(rope) : null;
+        }
     }
 
     public abstract static class AbstractLineEditorCommand implements ManagedCommand {
-        protected List<String> lines = null;
+        protected LineEditorContext context = null;
+        protected LineStore lines = null;
 
         @Override
         public void setContext(Object context) {
-            this.lines = ((LineEditorContext) context).lines;
+            this.context = (LineEditorContext) context;
+            this.lines = this.context.lines;
+        }
+
+        /**
+         * Record an edit in the undo history if lines are modified.
+         * @param before lines before the edit
+         */
+        protected void recordHistory(LineRope before) {
+            context.history.record(before, lines.getRope());
+        }
+
+        /**
+         * Apply a function to all lines, or add it to the bound file in stream mode.
+         * @param operator a function to apply
+         */
+        protected void transform(UnaryOperator<String> operator) {
+            LineStream stream = context.getStream();
+            if (stream != null) {
+                stream.transform(operator);
+            } else {
+                lines.transform(operator);
+            }
         }
     }
 
@@ -51,19 +218,44 @@ public class LineEditorCommands {
         @Argument(required = true, usage = "A file to load")
         File file;
 
+        @Option(name = "-mapped", usage = "Map the file into memory and decode lines on access")
+        boolean mapped = false;
+
+        @Option(name = "-compact", usage = "Pack lines into byte arrays to reduce memory usage")
+        boolean compact = false;
+
+        @Option(name = "-stream", usage = "Bind the file without loading it. Following commands are applied line by line when saved")
+        boolean stream = false;
+
+        @Option(name = "-charset", usage = "Charset of the file. A byte order mark is detected if it is not specified")
+        String charset = null;
+
         @Override
         public CommandResult execute() throws Exception{
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                lines.clear();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    log.info("loading {}", line);
-                    if (line.endsWith("\n"))
-                        lines.add(line.substring(0, line.length()-1));
-                    else
-                        lines.add(line);
-                }
+            if ((mapped ? 1 : 0) + (compact ? 1 : 0) + (stream ? 1 : 0) > 1)
+                return new CommandResult("-mapped, -compact and -stream cannot be used together", CommandResult.ResultState.ERROR);
+            if (stream && !file.isFile())
+                return new CommandResult("File is not found: " + file, CommandResult.ResultState.ERROR);
+
+            Charset fileCharset = charset == null ? null : Charset.forName(charset);
+            LineRope before = lines.getRope();
+            if (stream) {
+                context.setStream(new LineStream(file, fileCharset));
+                lines.setRope(LineRope.empty());
+                recordHistory(before);
+                log.info("bound {} in stream mode", file);
+                return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+            }
+
+            context.setStream(null);
+            if (mapped) {
+                lines.setRope(MappedLineSource.open(file, fileCharset).toRope());
+            } else {
+                ParallelLineLoader loader = new ParallelLineLoader(fileCharset, ParallelLineLoader.DEFAULT_CHUNK_SIZE, compact);
+                lines.setRope(loader.load(file));
             }
+            recordHistory(before);
+            log.info("loaded {} lines from {}", lines.size(), file);
             return new CommandResult(null, CommandResult.ResultState.SUCCESS);
         }
     }
@@ -77,11 +269,22 @@ public class LineEditorCommands {
 
         @Override
         public CommandResult execute() {
-            if (position >= 0) {
-                lines.add(position, newline);
-            } else {
-                lines.add(newline);
+            LineStream stream = context.getStream();
+            if (stream != null) {
+                if (position >= 0)
+                    return new CommandResult("Only appending is supported in stream mode", CommandResult.ResultState.ERROR);
+                stream.append(newline);
+                return new CommandResult(null, CommandResult.ResultState.SUCCESS);
             }
+
+            LineRope before = lines.getRope();
+            int inserted = position >= 0 ? position : lines.size();
+            lines.add(inserted, newline);
+            recordHistory(before);
+
+            TrigramIndex index = context.getIndex();
+            if (index != null)
+                index.insert(inserted, before, lines.getRope());
             return new CommandResult(null, CommandResult.ResultState.SUCCESS);
         }
 
@@ -101,38 +304,227 @@ public class LineEditorCommands {
 
         @Override
         public CommandResult execute() throws Exception {
-            List<String> newlines = lines.stream().map(s -> s.replace(target, replacement)).collect(Collectors.toList());
-            lines.clear();
-            lines.addAll(newlines);
+            if (regexp) {
+                Pattern pattern = PatternCache.getDefault().get(target);
+                transform(s -> pattern.matcher(s).replaceAll(replacement));
+            } else {
+                transform(AsciiLineOperators.replace(target, replacement));
+            }
             return new CommandResult(null, CommandResult.ResultState.SUCCESS);
         }
     }
 
-    public static class Save extends AbstractLineEditorCommand {
+    public static class BulkReplace extends AbstractLineEditorCommand {
+
+        static final int AUTOMATON_CACHE_SIZE = 16;
 
+        private static final Map<MappingKey, AhoCorasick> automatonCache =
+                new LinkedHashMap<MappingKey, AhoCorasick>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<MappingKey, AhoCorasick> eldest) {
+                        return size() > AUTOMATON_CACHE_SIZE;
+                    }
+                };
+
+        @Option(name = "-mapping", usage = "Tab separated file of targets and replacements")
+        File mapping;
+
+        @Argument(multiValued = true, usage = "Replacement pairs formatted as target=replacement")
+        List<String> pairs = new ArrayList<>();
+
+        @Override
+        public CommandResult execute() throws Exception {
+            if (mapping == null && pairs.isEmpty())
+                return new CommandResult("No replacement is specified", CommandResult.ResultState.ERROR);
+
+            AhoCorasick automaton;
+            if (pairs.isEmpty()) {
+                automaton = loadAutomaton(mapping);
+            } else {
+                Map<String, String> targets = new LinkedHashMap<>();
+                if (mapping != null)
+                    targets.putAll(readMapping(mapping));
+                for (String one : pairs) {
+                    int separator = one.indexOf('=');
+                    if (separator <= 0)
+                        return new CommandResult("Invalid replacement pair: " + one, CommandResult.ResultState.ERROR);
+                    targets.put(one.substring(0, separator), one.substring(separator + 1));
+                }
+                automaton = new AhoCorasick(targets);
+            }
+
+            transform(automaton::replace);
+            return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+        }
+
+        /**
+         * Get an automaton for a mapping file. Automata are cached until the file is modified.
+         */
+        static AhoCorasick loadAutomaton(File file) throws IOException {
+            MappingKey key = new MappingKey(file.getCanonicalPath(), file.lastModified(), file.length());
+            synchronized (automatonCache) {
+                AhoCorasick automaton = automatonCache.get(key);
+                if (automaton != null)
+                    return automaton;
+            }
+            AhoCorasick automaton = new AhoCorasick(readMapping(file));
+            synchronized (automatonCache) {
+                automatonCache.put(key, automaton);
+            }
+            return automaton;
+        }
+
+        static Map<String, String> readMapping(File file) throws IOException {
+            Map<String, String> targets = new LinkedHashMap<>();
+            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("#"))
+                        continue;
+                    int separator = line.indexOf('\t');
+                    if (separator <= 0)
+                        throw new IOException("Invalid mapping line: " + line);
+                    targets.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+            return targets;
+        }
+
+        @Value
+        private static class MappingKey {
+            private String path;
+            private long lastModified;
+            private long size;
+        }
+    }
+
+    @ContextAccess(ContextAccess.Mode.READ)
+    public static class Save extends AbstractLineEditorCommand {
 
         @Argument(required = true, usage = "File to save")
         File file;
 
+        @Option(name = "-charset", usage = "Charset of the file")
+        String charset = Charset.defaultCharset().name();
+
         @Override
         public CommandResult execute() throws Exception {
-            try (PrintWriter w = new PrintWriter(new FileWriter(file))) {
-                for (String one : lines) {
-                    w.println(one);
-                }
+            RopeWriter writer = RopeWriter.getInstance(Charset.forName(charset));
+            LineStream stream = context.getStream();
+            if (stream != null) {
+                stream.drain(file, writer);
+            } else {
+                writer.write(lines.peekRope(), file);
             }
             return new CommandResult(null, CommandResult.ResultState.SUCCESS);
         }
     }
 
-    public static class Print extends AbstractLineEditorCommand {
+    @ContextAccess(ContextAccess.Mode.READ)
+    public static class Print extends AbstractLineEditorCommand implements CLIStreamingCommand, CLIPageableCommand {
+
+        static final int STREAM_CHUNK_SIZE = 1024;
+
+        @Option(name = "-from", usage = "First line to print")
+        int from = 0;
+
+        @Option(name = "-to", usage = "Line to stop printing before. Default is the last line")
+        int to = -1;
+
+        @Option(name = "-count", usage = "Maximum number of lines to print")
+        int count = -1;
+
+        @Option(name = "-stream", usage = "Write lines to the console in chunks without paging")
+        boolean stream = false;
+
+        private PrintWriter output = null;
+
+        @Override
+        public void setOutput(PrintWriter output) {
+            this.output = output;
+        }
 
         @Override
         public CommandResult execute() throws Exception {
+            try {
+                checkRange();
+            } catch (IllegalArgumentException e) {
+                return new CommandResult(e.getMessage(), CommandResult.ResultState.ERROR);
+            }
+
+            LineStream bound = context.getStream();
+            if (bound == null)
+                return print(selectRange().iterator());
+
+            // lines of a bound file are read sequentially
+            try (Stream<String> source = bound.lines()) {
+                Stream<String> range = source.skip(from);
+                if (to >= 0)
+                    range = range.limit(to - from);
+                if (count >= 0)
+                    range = range.limit(count);
+                return print(range.iterator());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        private CommandResult print(Iterator<String> range) {
+            if (stream && output != null) {
+                int written = 0;
+                while (range.hasNext()) {
+                    output.println(range.next());
+                    if (++written % STREAM_CHUNK_SIZE == 0)
+                        output.flush();
+                }
+                output.flush();
+                return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+            }
+
             StringBuilder buffer = new StringBuilder();
-            lines.forEach(x -> buffer.append(x).append("\n"));
+            range.forEachRemaining(x -> buffer.append(x).append("\n"));
             return new CommandResult(buffer.toString(), CommandResult.ResultState.SUCCESS);
         }
+
+        @Override
+        public CLIPager.PageSource getPageSource() {
+            if (stream || context.getStream() != null)
+                return null;
+            LineRope range = selectRange();
+            return new CLIPager.PageSource() {
+                @Override
+                public int size() {
+                    return range.size();
+                }
+
+                @Override
+                public List<String> lines(int from, int to) {
+                    return range.subRope(from, to).toList();
+                }
+            };
+        }
+
+        private void checkRange() {
+            if (from < 0)
+                throw new IllegalArgumentException("-from should not be negative");
+            if (to >= 0 && to < from)
+                throw new IllegalArgumentException("-to should not be less than -from");
+        }
+
+        /**
+         * Get lines selected with -from, -to and -count. Ranges beyond the last line are truncated.
+         * @throws IllegalArgumentException the range is invalid
+         */
+        LineRope selectRange() {
+            checkRange();
+
+            LineRope rope = lines.peekRope();
+            int start = Math.min(from, rope.size());
+            int end = to < 0 ? rope.size() : Math.min(to, rope.size());
+            if (count >= 0)
+                end = Math.min(end, start + count);
+            return rope.subRope(start, end);
+        }
     }
 
     public static class Convert extends AbstractLineEditorCommand {
@@ -144,24 +536,314 @@ public class LineEditorCommands {
 
         @Override
         public CommandResult execute() throws Exception {
-            List<String> newList = new ArrayList<>();
             switch (convertType) {
                 case LOWER:
-                    newList = lines.stream().map(String::toLowerCase).collect(Collectors.toList());
+                    transform(AsciiLineOperators.toLowerCase(Locale.getDefault()));
                     break;
                 case UPPER:
-                    newList = lines.stream().map(String::toUpperCase).collect(Collectors.toList());
+                    transform(AsciiLineOperators.toUpperCase(Locale.getDefault()));
                     break;
                 case CAPITAL:
-                    newList = lines; // dummy
-                    break;
+                    break; // dummy
             }
-            lines.clear();
-            lines.addAll(newList);
             return new CommandResult(null, CommandResult.ResultState.SUCCESS);
         }
     }
 
+    public static class Undo extends AbstractLineEditorCommand {
+
+        @Argument(usage = "Number of edits to undo")
+        int steps = 1;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            for (int i = 0; i < steps; i++) {
+                if (!context.history.canUndo())
+                    return new CommandResult("Nothing to undo", i == 0 ? CommandResult.ResultState.WARN : CommandResult.ResultState.SUCCESS);
+                lines.setRope(context.history.undo(lines.getRope()));
+            }
+            return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    public static class Redo extends AbstractLineEditorCommand {
+
+        @Argument(usage = "Number of edits to redo")
+        int steps = 1;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            for (int i = 0; i < steps; i++) {
+                if (!context.history.canRedo())
+                    return new CommandResult("Nothing to redo", i == 0 ? CommandResult.ResultState.WARN : CommandResult.ResultState.SUCCESS);
+                lines.setRope(context.history.redo(lines.getRope()));
+            }
+            return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    public static class EditHistoryCommand extends AbstractLineEditorCommand {
+
+        @Option(name = "-budget", usage = "Memory budget of undo history in MiB")
+        long budget = -1;
+
+        @Option(name = "-clear", usage = "Discard undo history")
+        boolean clear = false;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            EditHistory history = context.history;
+            if (clear)
+                history.clear();
+            if (budget >= 0)
+                history.setBudget(budget << 20);
+            return new CommandResult(String.format("undo: %d, redo: %d, memory: %d / %d bytes",
+                    history.getUndoCount(), history.getRedoCount(), history.getUsedBytes(), history.getBudget()),
+                    CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    public static class Defer extends AbstractLineEditorCommand {
+
+        enum Mode {ON, OFF}
+
+        @Argument(usage = "ON to defer transforming commands until lines are read, OFF to apply them immediately")
+        Mode mode = null;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            if (mode != null)
+                lines.setDeferred(mode == Mode.ON);
+            return new CommandResult(String.format("deferred: %s, pending stages: %d",
+                    lines.isDeferred() ? "on" : "off", lines.getPendingStages()), CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    public static class IndexCommand extends AbstractLineEditorCommand {
+
+        enum Mode {ON, OFF}
+
+        @Argument(usage = "ON to build a search index, OFF to discard it")
+        Mode mode = null;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            if (mode == Mode.ON && context.getStream() != null)
+                return new CommandResult("Index is not supported in stream mode", CommandResult.ResultState.ERROR);
+            if (mode == Mode.ON && context.getIndex() == null) {
+                context.setIndex(TrigramIndex.build(lines.getRope()));
+            } else if (mode == Mode.OFF) {
+                context.setIndex(null);
+            }
+
+            TrigramIndex index = context.getIndex();
+            if (index == null)
+                return new CommandResult("index: off", CommandResult.ResultState.SUCCESS);
+            return new CommandResult(String.format("index: on, lines: %d, trigrams: %d, postings: %d",
+                    index.getRope().size(), index.getTrigramCount(), index.getPostingCount()),
+                    CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    /**
+     * Super class of search commands. Lines are searched with the index if it is enabled.
+     * Lines of a bound file are scanned sequentially in stream mode.
+     * Search commands only read immutable ropes, so they are executed optimistically. The index is used only if it
+     * reflects the current lines, and it is updated by {@code LineEditorContext.finishPendingWork}.
+     */
+    @ContextAccess(ContextAccess.Mode.OPTIMISTIC_READ)
+    public abstract static class AbstractSearchCommand extends AbstractLineEditorCommand {
+
+        @Option(name = "-ignorecase", usage = "Ignore case")
+        boolean ignoreCase = false;
+
+        @Option(name = "-count", usage = "Print only a number of matched lines")
+        boolean count = false;
+
+        /**
+         * @return literals which all matched lines contain
+         */
+        abstract List<String> literals();
+
+        abstract Predicate<String> matcher();
+
+        @Override
+        public CommandResult execute() throws Exception {
+            LineStream stream = context.getStream();
+            if (stream != null)
+                return searchStream(stream);
+
+            LineRope rope = lines.peekRope();
+            TrigramIndex index = context.getIndex();
+            int[] found;
+            if (index != null && index.getRope() == rope) {
+                found = index.search(literals(), matcher());
+            } else {
+                found = TrigramIndex.scan(rope, matcher());
+            }
+
+            if (count)
+                return new CommandResult(String.valueOf(found.length), CommandResult.ResultState.SUCCESS);
+            StringBuilder buffer = new StringBuilder();
+            for (int one : found) {
+                buffer.append(one).append(": ").append(rope.get(one)).append("\n");
+            }
+            return new CommandResult(buffer.toString(), CommandResult.ResultState.SUCCESS);
+        }
+
+        private CommandResult searchStream(LineStream stream) throws IOException {
+            Predicate<String> matcher = matcher();
+            int found = 0;
+            StringBuilder buffer = new StringBuilder();
+            try (Stream<String> source = stream.lines()) {
+                Iterator<String> iterator = source.iterator();
+                for (int i = 0; iterator.hasNext(); i++) {
+                    String line = iterator.next();
+                    if (!matcher.test(line))
+                        continue;
+                    found += 1;
+                    if (!count)
+                        buffer.append(i).append(": ").append(line).append("\n");
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new CommandResult(count ? String.valueOf(found) : buffer.toString(), CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    public static class Find extends AbstractSearchCommand {
+
+        @Argument(required = true, usage = "Text to find")
+        String text;
+
+        @Override
+        List<String> literals() {
+            return Collections.singletonList(text);
+        }
+
+        @Override
+        Predicate<String> matcher() {
+            return ignoreCase ? line -> containsIgnoreCase(line, text) : line -> line.contains(text);
+        }
+
+        static boolean containsIgnoreCase(String line, String text) {
+            for (int i = 0; i + text.length() <= line.length(); i++) {
+                if (line.regionMatches(true, i, text, 0, text.length()))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    public static class Grep extends AbstractSearchCommand {
+
+        @Argument(required = true, usage = "Regular expression to find")
+        String regexp;
+
+        @Override
+        List<String> literals() {
+            return TrigramIndex.requiredLiterals(regexp);
+        }
+
+        @Override
+        Predicate<String> matcher() {
+            Pattern pattern = PatternCache.getDefault().get(ignoreCase ? "(?i)" + regexp : regexp);
+            return line -> pattern.matcher(line).find();
+        }
+    }
+
+    public static class Sort extends AbstractLineEditorCommand {
+
+        @Option(name = "-reverse", usage = "Sort in descending order")
+        boolean reverse = false;
+
+        @Option(name = "-ignorecase", usage = "Ignore case")
+        boolean ignoreCase = false;
+
+        @Option(name = "-unique", usage = "Keep only the first of equal lines")
+        boolean unique = false;
+
+        @Option(name = "-memory", usage = "Memory for sorting in MiB. Larger input is sorted with temporary files")
+        long memory = ExternalSorter.DEFAULT_MEMORY_LIMIT / (1024 * 1024);
+
+        @Option(name = "-input", usage = "Sort a file instead of the lines")
+        File input;
+
+        @Option(name = "-output", usage = "Write sorted lines to a file instead of replacing the lines. Required in stream mode")
+        File output;
+
+        @Option(name = "-charset", usage = "Charset of input and output files")
+        String charset = Charset.defaultCharset().name();
+
+        boolean isUnique() {
+            return unique;
+        }
+
+        @Override
+        public CommandResult execute() throws Exception {
+            if (memory <= 0)
+                return new CommandResult("-memory should be positive", CommandResult.ResultState.ERROR);
+            LineStream stream = context.getStream();
+            if (stream != null && input == null && output == null)
+                return new CommandResult("-output is required to sort a bound file in stream mode", CommandResult.ResultState.ERROR);
+
+            Comparator<String> comparator = ignoreCase ? String.CASE_INSENSITIVE_ORDER : Comparator.naturalOrder();
+            if (reverse)
+                comparator = comparator.reversed();
+            ExternalSorter sorter = new ExternalSorter(comparator, memory * 1024 * 1024, isUnique());
+
+            ExternalSorter.Statistics statistics;
+            try {
+                if (input != null) {
+                    try (BufferedReader reader = Files.newBufferedReader(input.toPath(), Charset.forName(charset))) {
+                        statistics = sortTo(sorter, reader.lines().iterator());
+                    }
+                } else if (stream != null) {
+                    try (Stream<String> source = stream.lines()) {
+                        statistics = sortTo(sorter, source.iterator());
+                    }
+                } else {
+                    statistics = sortTo(sorter, lines.getRope().iterator());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            return new CommandResult(String.format("sorted %d lines into %d lines, spilled runs: %d",
+                    statistics.getInputLines(), statistics.getOutputLines(), statistics.getRuns()),
+                    CommandResult.ResultState.SUCCESS);
+        }
+
+        private ExternalSorter.Statistics sortTo(ExternalSorter sorter, Iterator<String> source) throws IOException {
+            if (output != null) {
+                try (BufferedWriter writer = Files.newBufferedWriter(output.toPath(), Charset.forName(charset))) {
+                    return sorter.sort(source, line -> {
+                        writer.write(line);
+                        writer.newLine();
+                    });
+                }
+            }
+
+            LineRope before = lines.getRope();
+            LineRope.Builder builder = new LineRope.Builder();
+            ExternalSorter.Statistics statistics = sorter.sort(source, builder::add);
+            lines.setRope(builder.build());
+            recordHistory(before);
+            return statistics;
+        }
+    }
+
+    /**
+     * Sort and remove duplicated lines. This is same as {@code sort -unique}.
+     */
+    public static class Uniq extends Sort {
+        @Override
+        boolean isUnique() {
+            return true;
+        }
+    }
+
     public static class Dummy extends AbstractLineEditorCommand {
 
         enum SampleEnum {
@@ -0,0 +1,788 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable rope of lines.
+ *
+ * Lines are stored in leaves, and leaves are joined with a height balanced binary tree.
+ * Positional access, insertion and deletion take O(log n) time. Every update returns a new rope which shares
+ * unchanged nodes with the original rope, so old ropes stay valid and cost memory only for changed nodes.
+ * @author Yasunobu OKAMURA
+ */
+public abstract class LineRope implements Iterable<String> {
+
+    /**
+     * Number of lines in a leaf created by {@code Builder}
+     */
+    static final int LEAF_SIZE = 64;
+
+    /**
+     * Maximum number of lines in an array leaf. A larger leaf is split on insertion.
+     */
+    static final int MAX_LEAF_SIZE = 128;
+
+    /**
+     * Minimum number of lines of a subtree which is mapped in a separate fork/join task
+     */
+    static final int PARALLEL_THRESHOLD = 2048;
+
+    private static final LineRope EMPTY = new ArrayLeaf(new String[0]);
+
+    LineRope() {}
+
+    /**
+     * Get an empty rope.
+     * @return an empty rope
+     */
+    public static LineRope empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create a rope from lines.
+     * @param lines lines
+     * @return a new rope
+     */
+    public static LineRope of(@NonNull Collection<String> lines) {
+        Builder builder = new Builder();
+        for (String one : lines) {
+            builder.add(one);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get a number of lines.
+     * @return a number of lines
+     */
+    public abstract int size();
+
+    /**
+     * Get a line.
+     * @param index a line index
+     * @return a line
+     */
+    public String get(int index) {
+        checkElementIndex(index);
+        LineRope node = this;
+        while (node instanceof Concat) {
+            Concat concat = (Concat) node;
+            if (index < concat.left.size()) {
+                node = concat.left;
+            } else {
+                index -= concat.left.size();
+                node = concat.right;
+            }
+        }
+        return ((Leaf) node).line(index);
+    }
+
+    /**
+     * Replace a line.
+     * @param index a line index
+     * @param line a new line
+     * @return a new rope
+     */
+    public LineRope set(int index, @NonNull String line) {
+        checkElementIndex(index);
+        return setAt(index, line);
+    }
+
+    /**
+     * Insert a line.
+     * @param index a position to insert. {@code size()} to append.
+     * @param line a new line
+     * @return a new rope
+     */
+    public LineRope insert(int index, @NonNull String line) {
+        checkPositionIndex(index);
+        return insertAt(index, line);
+    }
+
+    /**
+     * Insert all lines of a rope.
+     * @param index a position to insert. {@code size()} to append.
+     * @param rope lines to insert
+     * @return a new rope
+     */
+    public LineRope insert(int index, @NonNull LineRope rope) {
+        checkPositionIndex(index);
+        return join(join(prefix(index), rope), suffix(index));
+    }
+
+    /**
+     * Remove a line.
+     * @param index a line index
+     * @return a new rope
+     */
+    public LineRope remove(int index) {
+        checkElementIndex(index);
+        return removeAt(index);
+    }
+
+    /**
+     * Remove lines in the range.
+     * @param from first line index to remove, inclusive
+     * @param to last line index to remove, exclusive
+     * @return a new rope
+     */
+    public LineRope remove(int from, int to) {
+        checkRange(from, to);
+        return join(prefix(from), suffix(to));
+    }
+
+    /**
+     * Get lines in the range.
+     * @param from first line index, inclusive
+     * @param to last line index, exclusive
+     * @return a new rope
+     */
+    public LineRope subRope(int from, int to) {
+        checkRange(from, to);
+        return prefix(to).suffix(from);
+    }
+
+    /**
+     * Concatenate two ropes.
+     * @param other a rope to append
+     * @return a new rope
+     */
+    public LineRope concat(@NonNull LineRope other) {
+        return join(this, other);
+    }
+
+    /**
+     * Apply a function to all lines.
+     * Leaves in which the function returns the same instance for all lines are shared with this rope.
+     * @param function a function to apply
+     * @return a new rope
+     */
+    public abstract LineRope map(@NonNull UnaryOperator<String> function);
+
+    /**
+     * Apply a function to all lines in parallel with the common fork/join pool.
+     * Subtrees are mapped in separate tasks, and unchanged leaves are shared as {@code map} does.
+     * @param function a thread safe function to apply
+     * @return a new rope
+     */
+    public LineRope parallelMap(@NonNull UnaryOperator<String> function) {
+        if (size() < PARALLEL_THRESHOLD)
+            return map(function);
+        return ForkJoinPool.commonPool().invoke(new MapTask(this, function));
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new LineIterator(this);
+    }
+
+    /**
+     * Copy lines to a new list.
+     * @return a list of lines
+     */
+    public List<String> toList() {
+        List<String> list = new ArrayList<>(size());
+        for (String one : this) {
+            list.add(one);
+        }
+        return list;
+    }
+
+    abstract int height();
+
+    /**
+     * Iterate leaves of this rope from left to right.
+     * @return an iterator of leaves
+     */
+    Iterator<Leaf> leafIterator() {
+        return new LeafIterator(this);
+    }
+
+    abstract LineRope setAt(int index, String line);
+
+    abstract LineRope insertAt(int index, String line);
+
+    abstract LineRope removeAt(int index);
+
+    /**
+     * Lines in [0, index)
+     */
+    abstract LineRope prefix(int index);
+
+    /**
+     * Lines in [index, size())
+     */
+    abstract LineRope suffix(int index);
+
+    private void checkElementIndex(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    private void checkPositionIndex(int index) {
+        if (index < 0 || index > size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > size() || from > to)
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + size());
+    }
+
+    /**
+     * Join two balanced ropes into a balanced rope.
+     */
+    static LineRope join(LineRope left, LineRope right) {
+        if (left.size() == 0)
+            return right;
+        if (right.size() == 0)
+            return left;
+
+        if (left instanceof Leaf && right instanceof Leaf) {
+            LineRope merged = ((Leaf) left).tryMerge((Leaf) right);
+            if (merged != null)
+                return merged;
+        }
+
+        if (left.height() > right.height() + 1) {
+            Concat concat = (Concat) left;
+            return balance(concat.left, join(concat.right, right));
+        }
+        if (right.height() > left.height() + 1) {
+            Concat concat = (Concat) right;
+            return balance(join(left, concat.left), concat.right);
+        }
+        return new Concat(left, right);
+    }
+
+    /**
+     * Create a balanced node from two balanced ropes whose heights differ by 2 at most.
+     */
+    static LineRope balance(LineRope left, LineRope right) {
+        if (left.size() == 0)
+            return right;
+        if (right.size() == 0)
+            return left;
+
+        if (left.height() > right.height() + 1) {
+            Concat l = (Concat) left;
+            if (l.left.height() >= l.right.height()) {
+                return new Concat(l.left, new Concat(l.right, right));
+            }
+            Concat lr = (Concat) l.right;
+            return new Concat(new Concat(l.left, lr.left), new Concat(lr.right, right));
+        }
+        if (right.height() > left.height() + 1) {
+            Concat r = (Concat) right;
+            if (r.right.height() >= r.left.height()) {
+                return new Concat(new Concat(left, r.left), r.right);
+            }
+            Concat rl = (Concat) r.left;
+            return new Concat(new Concat(left, rl.left), new Concat(rl.right, r.right));
+        }
+        return new Concat(left, right);
+    }
+
+    /**
+     * Build a balanced rope from balanced ropes in order.
+     */
+    static LineRope joinAll(List<LineRope> ropes) {
+        return joinAll(ropes, 0, ropes.size());
+    }
+
+    private static LineRope joinAll(List<LineRope> ropes, int from, int to) {
+        if (to - from == 0)
+            return EMPTY;
+        if (to - from == 1)
+            return ropes.get(from);
+        int middle = (from + to) >>> 1;
+        return join(joinAll(ropes, from, middle), joinAll(ropes, middle, to));
+    }
+
+    /**
+     * Receives lines which differ between two ropes.
+     */
+    interface ChangedLineConsumer {
+        void accept(int index, String before, String after);
+    }
+
+    /**
+     * Find lines which differ between two ropes of the same size.
+     * Subtrees shared by both ropes are skipped without comparing lines, so the cost is proportional to
+     * the size of subtrees rebuilt by updates such as {@code map}.
+     */
+    static void diff(LineRope before, LineRope after, ChangedLineConsumer consumer) {
+        if (before.size() != after.size())
+            throw new IllegalArgumentException("Ropes should have the same size");
+        diff(before, after, 0, consumer);
+    }
+
+    private static void diff(LineRope before, LineRope after, int offset, ChangedLineConsumer consumer) {
+        if (before == after)
+            return;
+        if (before instanceof Concat && after instanceof Concat) {
+            Concat beforeConcat = (Concat) before;
+            Concat afterConcat = (Concat) after;
+            if (beforeConcat.left.size() == afterConcat.left.size()) {
+                diff(beforeConcat.left, afterConcat.left, offset, consumer);
+                diff(beforeConcat.right, afterConcat.right, offset + beforeConcat.left.size(), consumer);
+                return;
+            }
+        }
+
+        Iterator<String> beforeLines = before.iterator();
+        Iterator<String> afterLines = after.iterator();
+        for (int i = 0; beforeLines.hasNext(); i++) {
+            String beforeLine = beforeLines.next();
+            String afterLine = afterLines.next();
+            if (beforeLine != afterLine && !beforeLine.equals(afterLine))
+                consumer.accept(offset + i, beforeLine, afterLine);
+        }
+    }
+
+    /**
+     * Builder of a rope. Lines are packed into leaves of {@code LEAF_SIZE} lines,
+     * or into compact leaves of {@code PackedLeaf.PACKED_LEAF_SIZE} lines in compact mode.
+     */
+    public static class Builder {
+        private final List<LineRope> leaves = new ArrayList<>();
+        private final boolean compact;
+        private String[] current;
+        private int count = 0;
+
+        public Builder() {
+            this(false);
+        }
+
+        /**
+         * Create a builder.
+         * @param compact true to pack lines into byte arrays. Strings are materialized when they are accessed.
+         */
+        public Builder(boolean compact) {
+            this.compact = compact;
+            this.current = new String[compact ? PackedLeaf.PACKED_LEAF_SIZE : LEAF_SIZE];
+        }
+
+        /**
+         * Append a line.
+         * @param line a line
+         * @return this builder
+         */
+        public Builder add(@NonNull String line) {
+            current[count++] = line;
+            if (count == current.length)
+                flushCurrent();
+            return this;
+        }
+
+        /**
+         * Append all lines of a rope.
+         * @param rope lines to append
+         * @return this builder
+         */
+        public Builder add(@NonNull LineRope rope) {
+            flushCurrent();
+            leaves.add(rope);
+            return this;
+        }
+
+        private void flushCurrent() {
+            if (count == 0)
+                return;
+            if (compact) {
+                leaves.add(PackedLeaf.pack(current, count));
+                Arrays.fill(current, 0, count, null);
+            } else {
+                leaves.add(new ArrayLeaf(Arrays.copyOf(current, count)));
+            }
+            count = 0;
+        }
+
+        /**
+         * Build a rope.
+         * @return a new rope
+         */
+        public LineRope build() {
+            flushCurrent();
+            return joinAll(leaves);
+        }
+    }
+
+    /**
+     * A leaf of a rope.
+     */
+    abstract static class Leaf extends LineRope {
+        abstract String line(int index);
+
+        /**
+         * Lines in [from, to)
+         */
+        abstract Leaf slice(int from, int to);
+
+        /**
+         * Merge with a following leaf.
+         * @return a merged leaf, or null if leaves should not be merged
+         */
+        Leaf tryMerge(Leaf next) {
+            return null;
+        }
+
+        /**
+         * Estimated heap size of this leaf in bytes, excluding the backing store
+         */
+        long estimatedSize() {
+            return 32;
+        }
+
+        /**
+         * Get an array which may be shared with slices of this leaf.
+         * @return a backing store, or null if this leaf has no shared store
+         */
+        Object backingStore() {
+            return null;
+        }
+
+        /**
+         * Estimated heap size of the backing store in bytes
+         */
+        long backingStoreSize() {
+            return 0;
+        }
+
+        @Override
+        int height() {
+            return 0;
+        }
+
+        @Override
+        LineRope prefix(int index) {
+            if (index == size())
+                return this;
+            return index == 0 ? EMPTY : slice(0, index);
+        }
+
+        @Override
+        LineRope suffix(int index) {
+            if (index == 0)
+                return this;
+            return index == size() ? EMPTY : slice(index, size());
+        }
+
+        @Override
+        LineRope setAt(int index, String line) {
+            return join(join(prefix(index), new ArrayLeaf(new String[]{line})), suffix(index + 1));
+        }
+
+        @Override
+        LineRope insertAt(int index, String line) {
+            return join(join(prefix(index), new ArrayLeaf(new String[]{line})), suffix(index));
+        }
+
+        @Override
+        LineRope removeAt(int index) {
+            return join(prefix(index), suffix(index + 1));
+        }
+
+        /**
+         * Apply a function to lines. Runs of unchanged lines are kept as slices of this leaf.
+         */
+        @Override
+        public LineRope map(@NonNull UnaryOperator<String> function) {
+            Builder builder = new Builder();
+            int unchangedFrom = 0;
+            boolean changed = false;
+            for (int i = 0; i < size(); i++) {
+                String line = line(i);
+                String mapped = function.apply(line);
+                if (mapped != line) {
+                    if (unchangedFrom < i)
+                        builder.add(slice(unchangedFrom, i));
+                    builder.add(mapped);
+                    unchangedFrom = i + 1;
+                    changed = true;
+                }
+            }
+            if (!changed)
+                return this;
+            if (unchangedFrom < size())
+                builder.add(slice(unchangedFrom, size()));
+            return builder.build();
+        }
+    }
+
+    /**
+     * A leaf which holds lines in an array.
+     */
+    static final class ArrayLeaf extends Leaf {
+        private final String[] lines;
+
+        ArrayLeaf(String[] lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public int size() {
+            return lines.length;
+        }
+
+        @Override
+        String line(int index) {
+            return lines[index];
+        }
+
+        @Override
+        Leaf slice(int from, int to) {
+            return new ArrayLeaf(Arrays.copyOfRange(lines, from, to));
+        }
+
+        @Override
+        long estimatedSize() {
+            long size = 32 + 4L * lines.length;
+            for (String one : lines) {
+                size += 40 + one.length();
+            }
+            return size;
+        }
+
+        @Override
+        Leaf tryMerge(Leaf next) {
+            if (!(next instanceof ArrayLeaf) || size() + next.size() > MAX_LEAF_SIZE)
+                return null;
+            String[] merged = Arrays.copyOf(lines, size() + next.size());
+            System.arraycopy(((ArrayLeaf) next).lines, 0, merged, size(), next.size());
+            return new ArrayLeaf(merged);
+        }
+
+        @Override
+        LineRope setAt(int index, String line) {
+            String[] newLines = lines.clone();
+            newLines[index] = line;
+            return new ArrayLeaf(newLines);
+        }
+
+        @Override
+        LineRope insertAt(int index, String line) {
+            String[] newLines = new String[lines.length + 1];
+            System.arraycopy(lines, 0, newLines, 0, index);
+            newLines[index] = line;
+            System.arraycopy(lines, index, newLines, index + 1, lines.length - index);
+            if (newLines.length <= MAX_LEAF_SIZE)
+                return new ArrayLeaf(newLines);
+
+            int half = newLines.length / 2;
+            return new Concat(new ArrayLeaf(Arrays.copyOf(newLines, half)),
+                    new ArrayLeaf(Arrays.copyOfRange(newLines, half, newLines.length)));
+        }
+
+        @Override
+        LineRope removeAt(int index) {
+            if (lines.length == 1)
+                return EMPTY;
+            String[] newLines = new String[lines.length - 1];
+            System.arraycopy(lines, 0, newLines, 0, index);
+            System.arraycopy(lines, index + 1, newLines, index, lines.length - index - 1);
+            return new ArrayLeaf(newLines);
+        }
+
+        @Override
+        public LineRope map(@NonNull UnaryOperator<String> function) {
+            String[] newLines = null;
+            for (int i = 0; i < lines.length; i++) {
+                String mapped = function.apply(lines[i]);
+                if (mapped != lines[i]) {
+                    if (newLines == null)
+                        newLines = lines.clone();
+                    newLines[i] = mapped;
+                }
+            }
+            return newLines == null ? this : new ArrayLeaf(newLines);
+        }
+    }
+
+    /**
+     * An internal node which concatenates two ropes.
+     */
+    static final class Concat extends LineRope {
+        final LineRope left;
+        final LineRope right;
+        private final int size;
+        private final int height;
+
+        Concat(LineRope left, LineRope right) {
+            this.left = left;
+            this.right = right;
+            this.size = left.size() + right.size();
+            this.height = Math.max(left.height(), right.height()) + 1;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        int height() {
+            return height;
+        }
+
+        @Override
+        LineRope setAt(int index, String line) {
+            if (index < left.size())
+                return join(left.setAt(index, line), right);
+            return join(left, right.setAt(index - left.size(), line));
+        }
+
+        @Override
+        LineRope insertAt(int index, String line) {
+            if (index < left.size() || (index == left.size() && left.height() <= right.height()))
+                return join(left.insertAt(index, line), right);
+            return join(left, right.insertAt(index - left.size(), line));
+        }
+
+        @Override
+        LineRope removeAt(int index) {
+            if (index < left.size())
+                return join(left.removeAt(index), right);
+            return join(left, right.removeAt(index - left.size()));
+        }
+
+        @Override
+        LineRope prefix(int index) {
+            if (index == size)
+                return this;
+            if (index <= left.size())
+                return left.prefix(index);
+            return join(left, right.prefix(index - left.size()));
+        }
+
+        @Override
+        LineRope suffix(int index) {
+            if (index == 0)
+                return this;
+            if (index >= left.size())
+                return right.suffix(index - left.size());
+            return join(left.suffix(index), right);
+        }
+
+        @Override
+        public LineRope map(@NonNull UnaryOperator<String> function) {
+            LineRope newLeft = left.map(function);
+            LineRope newRight = right.map(function);
+            if (newLeft == left && newRight == right)
+                return this;
+            return join(newLeft, newRight);
+        }
+    }
+
+    /**
+     * Map subtrees in parallel, and leaves sequentially.
+     */
+    private static class MapTask extends RecursiveTask<LineRope> {
+        private final LineRope node;
+        private final UnaryOperator<String> function;
+
+        MapTask(LineRope node, UnaryOperator<String> function) {
+            this.node = node;
+            this.function = function;
+        }
+
+        @Override
+        protected LineRope compute() {
+            if (!(node instanceof Concat) || node.size() < PARALLEL_THRESHOLD)
+                return node.map(function);
+
+            Concat concat = (Concat) node;
+            MapTask leftTask = new MapTask(concat.left, function);
+            leftTask.fork();
+            LineRope newRight = new MapTask(concat.right, function).compute();
+            LineRope newLeft = leftTask.join();
+            if (newLeft == concat.left && newRight == concat.right)
+                return node;
+            return LineRope.join(newLeft, newRight);
+        }
+    }
+
+    /**
+     * Iterate leaves from left to right.
+     */
+    static class LeafIterator implements Iterator<Leaf> {
+        private final Deque<LineRope> stack = new ArrayDeque<>();
+
+        LeafIterator(LineRope root) {
+            if (root.size() > 0)
+                stack.push(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Leaf next() {
+            if (stack.isEmpty())
+                throw new NoSuchElementException();
+            LineRope node = stack.pop();
+            while (node instanceof Concat) {
+                stack.push(((Concat) node).right);
+                node = ((Concat) node).left;
+            }
+            return (Leaf) node;
+        }
+    }
+
+    /**
+     * Iterate lines leaf by leaf.
+     */
+    private static class LineIterator implements Iterator<String> {
+        private final LeafIterator leaves;
+        private Leaf leaf = null;
+        private int position = 0;
+
+        LineIterator(LineRope root) {
+            leaves = new LeafIterator(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (leaf == null || position >= leaf.size()) {
+                if (!leaves.hasNext())
+                    return false;
+                leaf = leaves.next();
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return leaf.line(position++);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.NonNull;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.RandomAccess;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Mutable list of lines backed by {@code LineRope}.
+ *
+ * Positional insertion and removal take O(log n) time, and {@code replaceAll} shares leaves which are not changed.
+ * The current content can be taken as an immutable rope with {@code getRope} at O(1) cost.
+ *
+ * In deferred mode, {@code transform} appends an operator to a pending pipeline instead of applying it.
+ * Pending operators are fused and applied in a single pass when lines are read or modified.
+ *
+ * Methods are synchronized. Commands which only read lines should read them with {@code peekRope},
+ * which never applies pending operators to this store.
+ * @author Yasunobu OKAMURA
+ */
+public class LineStore extends AbstractList<String> implements RandomAccess {
+
+    private LineRope rope = LineRope.empty();
+
+    private UnaryOperator<String> pending = null;
+    private int pendingStages = 0;
+    private boolean deferred = false;
+    private BiConsumer<LineRope, LineRope> transformListener = null;
+
+    /**
+     * Get the current content. Pending operators are applied.
+     * @return an immutable rope
+     */
+    public synchronized LineRope getRope() {
+        flush();
+        return rope;
+    }
+
+    /**
+     * Get the current content without modifying this store.
+     * Pending operators are applied to a new rope every time, so apply them with {@code flush} before reading
+     * lines repeatedly.
+     * @return an immutable rope
+     */
+    public synchronized LineRope peekRope() {
+        return pending == null ? rope : rope.parallelMap(pending);
+    }
+
+    /**
+     * Check whether the rope is the current content and no operators are pending.
+     * @param other a rope to check
+     * @return true if the rope is the current content
+     */
+    public synchronized boolean isCurrent(LineRope other) {
+        return pending == null && rope == other;
+    }
+
+    /**
+     * Replace whole content. Pending operators are discarded.
+     * @param rope new content
+     */
+    public synchronized void setRope(@NonNull LineRope rope) {
+        pending = null;
+        pendingStages = 0;
+        this.rope = rope;
+        modCount++;
+    }
+
+    /**
+     * Apply an operator to all lines in parallel, or append it to the pending pipeline in deferred mode.
+     * @param operator a thread safe operator to apply
+     */
+    public synchronized void transform(@NonNull UnaryOperator<String> operator) {
+        if (deferred) {
+            pending = pending == null ? operator : fuse(pending, operator);
+            pendingStages += 1;
+            modCount++;
+        } else {
+            apply(operator);
+        }
+    }
+
+    /**
+     * Apply pending operators in a single pass.
+     */
+    public synchronized void flush() {
+        if (pending == null)
+            return;
+        UnaryOperator<String> operator = pending;
+        pending = null;
+        pendingStages = 0;
+        apply(operator);
+    }
+
+    private void apply(UnaryOperator<String> operator) {
+        LineRope before = rope;
+        rope = rope.parallelMap(operator);
+        modCount++;
+        if (transformListener != null)
+            transformListener.accept(before, rope);
+    }
+
+    /**
+     * Fuse two operators. The fused operator keeps the ASCII fast path if both operators have it.
+     */
+    static UnaryOperator<String> fuse(UnaryOperator<String> first, UnaryOperator<String> second) {
+        if (first instanceof AsciiLineOperator && second instanceof AsciiLineOperator) {
+            AsciiLineOperator asciiFirst = (AsciiLineOperator) first;
+            AsciiLineOperator asciiSecond = (AsciiLineOperator) second;
+            return new AsciiLineOperator() {
+                @Override
+                public byte[] applyAscii(byte[] data, int from, int to) {
+                    byte[] result = asciiFirst.applyAscii(data, from, to);
+                    if (result == null)
+                        return asciiSecond.applyAscii(data, from, to);
+                    byte[] secondResult = asciiSecond.applyAscii(result, 0, result.length);
+                    return secondResult == null ? result : secondResult;
+                }
+
+                @Override
+                public String apply(String s) {
+                    return asciiSecond.apply(asciiFirst.apply(s));
+                }
+            };
+        }
+        return s -> second.apply(first.apply(s));
+    }
+
+    public synchronized boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Enable or disable deferred mode. Pending operators are applied when deferred mode is disabled.
+     * @param deferred true to defer {@code transform}
+     */
+    public synchronized void setDeferred(boolean deferred) {
+        if (!deferred)
+            flush();
+        this.deferred = deferred;
+    }
+
+    /**
+     * Get a number of operators waiting in the pipeline.
+     * @return a number of pending operators
+     */
+    public synchronized int getPendingStages() {
+        return pendingStages;
+    }
+
+    /**
+     * Set a listener which is called with lines before and after each {@code transform} is applied.
+     * Operators fused in deferred mode are reported as one transformation.
+     * @param transformListener a listener, or null
+     */
+    public synchronized void setTransformListener(BiConsumer<LineRope, LineRope> transformListener) {
+        this.transformListener = transformListener;
+    }
+
+    @Override
+    public synchronized String get(int index) {
+        return getRope().get(index);
+    }
+
+    /**
+     * Get a number of lines. Operators never change a number of lines, so pending operators are not applied.
+     * @return a number of lines
+     */
+    @Override
+    public synchronized int size() {
+        return rope.size();
+    }
+
+    @Override
+    public synchronized String set(int index, @NonNull String element) {
+        String old = getRope().get(index);
+        rope = rope.set(index, element);
+        return old;
+    }
+
+    @Override
+    public synchronized void add(int index, @NonNull String element) {
+        rope = getRope().insert(index, element);
+        modCount++;
+    }
+
+    @Override
+    public synchronized String remove(int index) {
+        String old = getRope().get(index);
+        rope = rope.remove(index);
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends String> c) {
+        return addAll(size(), c);
+    }
+
+    @Override
+    public synchronized boolean addAll(int index, Collection<? extends String> c) {
+        LineRope inserted = c instanceof LineStore ? ((LineStore) c).getRope() : LineRope.of(new ArrayList<>(c));
+        if (inserted.size() == 0)
+            return false;
+        rope = getRope().insert(index, inserted);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        setRope(LineRope.empty());
+    }
+
+    @Override
+    protected synchronized void removeRange(int fromIndex, int toIndex) {
+        rope = getRope().remove(fromIndex, toIndex);
+        modCount++;
+    }
+
+    @Override
+    public synchronized void replaceAll(@NonNull UnaryOperator<String> operator) {
+        rope = getRope().map(operator);
+        modCount++;
+    }
+
+    /**
+     * Replace all lines in parallel. Unchanged leaves are shared, so no full size copy is made.
+     * @param operator a thread safe operator to apply
+     */
+    public synchronized void parallelReplaceAll(@NonNull UnaryOperator<String> operator) {
+        rope = getRope().parallelMap(operator);
+        modCount++;
+    }
+
+    /**
+     * Iterate lines of the current content leaf by leaf.
+     * Later modifications of this list are not visible to the iterator, and {@code remove} is not supported.
+     * @return an iterator
+     */
+    @Override
+    public synchronized Iterator<String> iterator() {
+        return getRope().iterator();
+    }
+}
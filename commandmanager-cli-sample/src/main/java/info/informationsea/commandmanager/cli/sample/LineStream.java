@@ -0,0 +1,154 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Editor commands applied line by line to a file without loading it.
+ *
+ * Transformations are recorded as stages, and lines appended at the end are recorded with the number of stages
+ * at that time. Nothing is read until lines are requested. Then each line of the source file is read and
+ * transformed with the fused stages before the next line is read, so memory use does not depend on the size
+ * of the file. Appended lines follow the source lines, and are transformed only with stages added after them.
+ * The source file is never modified, so lines can be requested many times. A byte order mark is handled as
+ * {@code ParallelLineLoader} does, and is not a part of the first line.
+ * @author Yasunobu OKAMURA
+ */
+public class LineStream {
+
+    static final int READ_BUFFER_SIZE = 1 << 16;
+
+    @Getter
+    private final File source;
+
+    /**
+     * A charset of the source file, or null to detect a byte order mark and use the default charset if there is none
+     */
+    @Getter
+    private final Charset charset;
+
+    private final List<UnaryOperator<String>> stages = new ArrayList<>();
+    private final List<AppendedLine> appendedLines = new ArrayList<>();
+
+    public LineStream(@NonNull File source, Charset charset) {
+        this.source = source;
+        this.charset = charset;
+    }
+
+    /**
+     * Add a transformation applied to all lines, including appended lines.
+     * @param operator a function to apply
+     */
+    public synchronized void transform(@NonNull UnaryOperator<String> operator) {
+        stages.add(operator);
+    }
+
+    /**
+     * Append a line after the lines of the source file.
+     * @param line a line to append
+     */
+    public synchronized void append(@NonNull String line) {
+        appendedLines.add(new AppendedLine(line, stages.size()));
+    }
+
+    public synchronized int getStageCount() {
+        return stages.size();
+    }
+
+    public synchronized int getAppendedCount() {
+        return appendedLines.size();
+    }
+
+    /**
+     * Get transformed lines. The source file is read lazily while the stream is consumed.
+     * The returned stream should be closed to close the source file. Stages added later do not affect it.
+     * @throws IOException failed to open the source file
+     * @return a stream of lines. {@code UncheckedIOException} is thrown if the source file cannot be read.
+     */
+    public synchronized Stream<String> lines() throws IOException {
+        UnaryOperator<String> pipeline = fuse(stages, 0);
+        List<String> tail = new ArrayList<>();
+        for (AppendedLine one : appendedLines) {
+            tail.add(fuse(stages, one.getStage()).apply(one.getLine()));
+        }
+
+        FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        ParallelLineLoader.ByteOrderMark mark;
+        try {
+            mark = ParallelLineLoader.resolveCharset(channel, charset);
+            channel.position(mark.getLength());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                mark.getCharset().newDecoder()), READ_BUFFER_SIZE);
+        return Stream.concat(reader.lines().map(pipeline), tail.stream()).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Write transformed lines to a file. The file may be the source file.
+     * @param file a destination file
+     * @param writer a writer to encode lines
+     * @throws IOException failed to read the source file or to write the file
+     * @return a number of written lines
+     */
+    public long drain(@NonNull File file, @NonNull RopeWriter writer) throws IOException {
+        try (Stream<String> lines = lines()) {
+            return writer.write(lines.iterator(), file);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static UnaryOperator<String> fuse(List<UnaryOperator<String>> stages, int from) {
+        if (from == stages.size())
+            return UnaryOperator.identity();
+        UnaryOperator<String> fused = stages.get(from);
+        for (int i = from + 1; i < stages.size(); i++) {
+            fused = LineStore.fuse(fused, stages.get(i));
+        }
+        return fused;
+    }
+
+    @Value
+    private static class AppendedLine {
+        private String line;
+        private int stage;
+    }
+}
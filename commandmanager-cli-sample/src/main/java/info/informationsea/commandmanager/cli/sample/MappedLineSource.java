@@ -0,0 +1,291 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Lines of a memory mapped file.
+ *
+ * The file is mapped with {@code FileChannel.map} and only an index of line offsets is kept in the heap.
+ * The index is built in parallel chunks. Lines are decoded when they are accessed, so untouched lines
+ * do not cost heap and their pages are never read. Lines are terminated by LF or CRLF, and charsets in which
+ * a line feed byte may be a part of another character, such as UTF-16, are rejected. A byte order mark is handled as {@code ParallelLineLoader} does, and is not
+ * a part of the first line.
+ * @author Yasunobu OKAMURA
+ */
+public class MappedLineSource {
+
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+    /**
+     * Maximum number of lines in a leaf of {@code toRope}
+     */
+    static final int MAPPED_LEAF_SIZE = 4096;
+
+    @Getter
+    private final File file;
+
+    @Getter
+    private final Charset charset;
+
+    @Getter
+    private final long length;
+
+    private final MappedByteBuffer[] segments;
+    private final int segmentSize;
+
+    /**
+     * start offset of each line, followed by the file length
+     */
+    private final long[] offsets;
+
+    private MappedLineSource(File file, Charset charset, int segmentSize, int chunkSize) throws IOException {
+        if (segmentSize % chunkSize != 0)
+            throw new IllegalArgumentException("segment size should be a multiple of chunk size");
+        this.file = file;
+        this.segmentSize = segmentSize;
+
+        long start;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ParallelLineLoader.ByteOrderMark mark = ParallelLineLoader.resolveCharset(channel, charset);
+            this.charset = mark.getCharset();
+            if (!ParallelLineLoader.isLineFeedSafe(this.charset))
+                throw new IOException("Lines cannot be indexed by bytes in " + this.charset.name());
+            start = mark.getLength();
+            length = channel.size();
+            segments = new MappedByteBuffer[(int) ((length + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, length - position));
+            }
+        }
+
+        offsets = buildIndex(start, chunkSize);
+    }
+
+    /**
+     * Map a file and build a line index.
+     * @param file a file to map
+     * @param charset a charset of the file, or null to detect a byte order mark and use the default charset if
+     *                there is none
+     * @return a mapped file
+     * @throws IOException failed to map the file, the file has too many lines, or the charset is not ASCII compatible
+     */
+    public static MappedLineSource open(@NonNull File file, Charset charset) throws IOException {
+        return new MappedLineSource(file, charset, DEFAULT_SEGMENT_SIZE, DEFAULT_CHUNK_SIZE);
+    }
+
+    static MappedLineSource open(File file, Charset charset, int segmentSize, int chunkSize) throws IOException {
+        return new MappedLineSource(file, charset, segmentSize, chunkSize);
+    }
+
+    /**
+     * Build an index of lines after the byte order mark.
+     * @param start an offset of the first line
+     */
+    private long[] buildIndex(long start, int chunkSize) throws IOException {
+        int chunkCount = (int) ((length + chunkSize - 1) / chunkSize);
+        long[][] found = IntStream.range(0, chunkCount).parallel().
+                mapToObj(i -> scanChunk((long) i * chunkSize, Math.min(length, (long) (i + 1) * chunkSize))).
+                toArray(long[][]::new);
+
+        long total = length > start ? 2 : 1;
+        for (long[] one : found) {
+            total += one[0];
+        }
+        if (total - 1 > Integer.MAX_VALUE - 8)
+            throw new IOException("Too many lines in " + file);
+
+        long[] index = new long[(int) total];
+        int count = 0;
+        if (length > start)
+            index[count++] = start;
+        for (long[] one : found) {
+            System.arraycopy(one, 1, index, count, (int) one[0]);
+            count += one[0];
+        }
+        index[count] = length;
+        return index;
+    }
+
+    /**
+     * Find line starts in [start, end).
+     * @return number of line starts, followed by line starts
+     */
+    private long[] scanChunk(long start, long end) {
+        ByteBuffer segment = segments[(int) (start / segmentSize)];
+        int from = (int) (start % segmentSize);
+        int to = from + (int) (end - start);
+
+        long[] found = new long[64];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (segment.get(i) == '\n') {
+                long next = start + (i - from) + 1;
+                if (next >= length)
+                    break;
+                if (count + 1 >= found.length)
+                    found = Arrays.copyOf(found, found.length * 2);
+                found[++count] = next;
+            }
+        }
+        found[0] = count;
+        return found;
+    }
+
+    /**
+     * Get a number of lines.
+     * @return a number of lines
+     */
+    public int getLineCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Get a start offset of a line in the file.
+     * @param index a line index. {@code getLineCount()} to get the file length.
+     * @return an offset in bytes
+     */
+    public long getLineOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Decode a line.
+     * @param index a line index
+     * @return a line without line terminator
+     */
+    public String line(int index) {
+        long start = offsets[index];
+        long end = offsets[index + 1];
+        if (end > start && byteAt(end - 1) == '\n')
+            end -= 1;
+        if (end > start && byteAt(end - 1) == '\r')
+            end -= 1;
+        return new String(bytes(start, end), charset);
+    }
+
+    /**
+     * Create a rope which decodes lines from this file lazily.
+     * @return a new rope
+     */
+    public LineRope toRope() {
+        LineRope.Builder builder = new LineRope.Builder();
+        for (int i = 0; i < getLineCount(); i += MAPPED_LEAF_SIZE) {
+            builder.add(new MappedLeaf(this, i, Math.min(getLineCount(), i + MAPPED_LEAF_SIZE)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Write bytes in [start, end) of the file to a channel without decoding.
+     * @param start start offset, inclusive
+     * @param end end offset, exclusive
+     * @param channel a channel to write
+     * @throws IOException failed to write
+     */
+    void transferTo(long start, long end, WritableByteChannel channel) throws IOException {
+        long position = start;
+        while (position < end) {
+            ByteBuffer segment = segments[(int) (position / segmentSize)].duplicate();
+            int from = (int) (position % segmentSize);
+            int to = (int) Math.min(segment.capacity(), from + (end - position));
+            segment.limit(to);
+            segment.position(from);
+            while (segment.hasRemaining()) {
+                channel.write(segment);
+            }
+            position += to - from;
+        }
+    }
+
+    byte byteAt(long position) {
+        return segments[(int) (position / segmentSize)].get((int) (position % segmentSize));
+    }
+
+    /**
+     * Copy bytes in [start, end). The range may cross segments.
+     */
+    byte[] bytes(long start, long end) {
+        byte[] data = new byte[(int) (end - start)];
+        int copied = 0;
+        while (copied < data.length) {
+            long position = start + copied;
+            ByteBuffer segment = segments[(int) (position / segmentSize)].duplicate();
+            segment.position((int) (position % segmentSize));
+            int count = Math.min(segment.remaining(), data.length - copied);
+            segment.get(data, copied, count);
+            copied += count;
+        }
+        return data;
+    }
+
+    /**
+     * A leaf which decodes lines in [from, to) of a mapped file on access.
+     */
+    static final class MappedLeaf extends LineRope.Leaf {
+        final MappedLineSource source;
+        final int from;
+        final int to;
+
+        MappedLeaf(MappedLineSource source, int from, int to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        String line(int index) {
+            return source.line(from + index);
+        }
+
+        @Override
+        LineRope.Leaf slice(int sliceFrom, int sliceTo) {
+            return new MappedLeaf(source, from + sliceFrom, from + sliceTo);
+        }
+
+        @Override
+        LineRope.Leaf tryMerge(LineRope.Leaf next) {
+            if (!(next instanceof MappedLeaf))
+                return null;
+            MappedLeaf mapped = (MappedLeaf) next;
+            if (mapped.source != source || mapped.from != to || size() + mapped.size() > MAPPED_LEAF_SIZE)
+                return null;
+            return new MappedLeaf(source, from, mapped.to);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.NonNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+/**
+ * A compact leaf which packs lines into a shared byte array with an offset table.
+ *
+ * Lines are encoded with ISO-8859-1 if all characters fit in it, and with UTF-8 otherwise.
+ * Strings are materialized only when a line is accessed. Slices share arrays with the original leaf.
+ * Leaves are written to snapshots as they are, so restoring a snapshot does not encode lines again.
+ * @author Yasunobu OKAMURA
+ */
+final class PackedLeaf extends LineRope.Leaf {
+
+    /**
+     * Number of lines packed into a leaf
+     */
+    static final int PACKED_LEAF_SIZE = 4096;
+
+    final byte[] data;
+
+    /**
+     * start offset of each line in data, followed by the end of the last line
+     */
+    final int[] offsets;
+
+    /**
+     * index of the first line of this leaf in offsets
+     */
+    final int first;
+    final int count;
+    final boolean latin1;
+    final boolean ascii;
+
+    private static final int FLAG_LATIN1 = 1;
+    private static final int FLAG_ASCII = 2;
+
+    private PackedLeaf(byte[] data, int[] offsets, int first, int count, boolean latin1, boolean ascii) {
+        this.data = data;
+        this.offsets = offsets;
+        this.first = first;
+        this.count = count;
+        this.latin1 = latin1;
+        this.ascii = ascii;
+    }
+
+    /**
+     * Pack lines.
+     * @param lines an array of lines
+     * @param count a number of lines to pack from the start of the array
+     * @return a new leaf
+     */
+    static PackedLeaf pack(@NonNull String[] lines, int count) {
+        boolean latin1 = true;
+        boolean ascii = true;
+        for (int i = 0; i < count && latin1; i++) {
+            String line = lines[i];
+            for (int j = 0; j < line.length(); j++) {
+                char ch = line.charAt(j);
+                if (ch >= 0x80)
+                    ascii = false;
+                if (ch > 0xff) {
+                    latin1 = false;
+                    break;
+                }
+            }
+        }
+
+        int[] offsets = new int[count + 1];
+        byte[] data;
+        if (latin1) {
+            long length = 0;
+            for (int i = 0; i < count; i++) {
+                length += lines[i].length();
+            }
+            if (length > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Lines are too long to pack");
+            data = new byte[(int) length];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                String line = lines[i];
+                offsets[i] = position;
+                for (int j = 0; j < line.length(); j++) {
+                    data[position++] = (byte) line.charAt(j);
+                }
+            }
+            offsets[count] = position;
+        } else {
+            byte[][] encoded = new byte[count][];
+            long length = 0;
+            for (int i = 0; i < count; i++) {
+                encoded[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+                length += encoded[i].length;
+            }
+            if (length > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Lines are too long to pack");
+            data = new byte[(int) length];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                offsets[i] = position;
+                System.arraycopy(encoded[i], 0, data, position, encoded[i].length);
+                position += encoded[i].length;
+            }
+            offsets[count] = position;
+        }
+        return new PackedLeaf(data, offsets, 0, count, latin1, ascii);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    String line(int index) {
+        int start = offsets[first + index];
+        int end = offsets[first + index + 1];
+        return new String(data, start, end - start, latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    @Override
+    LineRope.Leaf slice(int from, int to) {
+        return new PackedLeaf(data, offsets, first + from, to - from, latin1, ascii);
+    }
+
+    @Override
+    LineRope.Leaf tryMerge(LineRope.Leaf next) {
+        if (!(next instanceof PackedLeaf))
+            return null;
+        PackedLeaf packed = (PackedLeaf) next;
+        if (packed.data != data || packed.first != first + count || count + packed.count > PACKED_LEAF_SIZE)
+            return null;
+        return new PackedLeaf(data, offsets, first, count + packed.count, latin1, ascii);
+    }
+
+    @Override
+    long estimatedSize() {
+        return 40;
+    }
+
+    @Override
+    Object backingStore() {
+        return data;
+    }
+
+    @Override
+    long backingStoreSize() {
+        return 32 + data.length + 4L * offsets.length;
+    }
+
+    /**
+     * Apply a function to lines, and pack the results again.
+     * ASCII leaves are converted without strings if the function is an {@code AsciiLineOperator}.
+     */
+    @Override
+    public LineRope map(@NonNull UnaryOperator<String> function) {
+        if (ascii && function instanceof AsciiLineOperator)
+            return mapAscii((AsciiLineOperator) function);
+
+        String[] mapped = null;
+        for (int i = 0; i < count; i++) {
+            String line = line(i);
+            String result = function.apply(line);
+            if (result != line && !result.equals(line)) {
+                if (mapped == null) {
+                    mapped = new String[count];
+                    for (int j = 0; j < i; j++) {
+                        mapped[j] = line(j);
+                    }
+                }
+            }
+            if (mapped != null)
+                mapped[i] = result;
+        }
+        return mapped == null ? this : pack(mapped, count);
+    }
+
+    private LineRope mapAscii(AsciiLineOperator operator) {
+        byte[][] results = null;
+        long length = 0;
+        for (int i = 0; i < count; i++) {
+            int start = offsets[first + i];
+            int end = offsets[first + i + 1];
+            byte[] result = operator.applyAscii(data, start, end);
+            if (result != null) {
+                if (results == null)
+                    results = new byte[count][];
+                results[i] = result;
+                length += result.length;
+            } else {
+                length += end - start;
+            }
+        }
+        if (results == null)
+            return this;
+        if (length > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Lines are too long to pack");
+
+        byte[] newData = new byte[(int) length];
+        int[] newOffsets = new int[count + 1];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            newOffsets[i] = position;
+            if (results[i] != null) {
+                System.arraycopy(results[i], 0, newData, position, results[i].length);
+                position += results[i].length;
+            } else {
+                int start = offsets[first + i];
+                int end = offsets[first + i + 1];
+                System.arraycopy(data, start, newData, position, end - start);
+                position += end - start;
+            }
+        }
+        newOffsets[count] = position;
+        return new PackedLeaf(newData, newOffsets, 0, count, latin1, true);
+    }
+
+    /**
+     * Check whether packed bytes are valid in the charset without conversion.
+     * @param charset a charset
+     * @return true if bytes can be written as they are
+     */
+    boolean isEncodedAs(Charset charset) {
+        if (ascii)
+            return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1) ||
+                    charset.equals(StandardCharsets.US_ASCII);
+        return charset.equals(latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get a start offset of a line in {@code data}.
+     * @param index a line index in this leaf
+     * @return start offset, inclusive
+     */
+    int lineStart(int index) {
+        return offsets[first + index];
+    }
+
+    /**
+     * Get an end offset of a line in {@code data}.
+     * @param index a line index in this leaf
+     * @return end offset, exclusive
+     */
+    int lineEnd(int index) {
+        return offsets[first + index + 1];
+    }
+
+    /**
+     * Number of bytes referenced by this leaf.
+     * @return a number of bytes
+     */
+    int byteLength() {
+        return offsets[first + count] - offsets[first];
+    }
+
+    /**
+     * Write this leaf to a snapshot.
+     * A leaf is written as a line count, flags, a byte length, offsets relative to the first line, and bytes.
+     * @param output a snapshot stream
+     * @throws IOException failed to write
+     */
+    void writeTo(@NonNull DataOutputStream output) throws IOException {
+        int base = offsets[first];
+        output.writeInt(count);
+        output.writeByte((latin1 ? FLAG_LATIN1 : 0) | (ascii ? FLAG_ASCII : 0));
+        output.writeInt(byteLength());
+        ByteBuffer relative = ByteBuffer.allocate(4 * (count + 1));
+        for (int i = 0; i <= count; i++) {
+            relative.putInt(offsets[first + i] - base);
+        }
+        output.write(relative.array());
+        output.write(data, base, byteLength());
+    }
+
+    /**
+     * Read a leaf written by {@code writeTo}. Arrays are copied from the buffer.
+     * @param input a snapshot buffer
+     * @return a new leaf
+     * @throws IOException the leaf is broken
+     */
+    static PackedLeaf readFrom(@NonNull ByteBuffer input) throws IOException {
+        int count = input.getInt();
+        int flags = input.get();
+        int length = input.getInt();
+        if (count < 0 || length < 0 || count >= input.remaining() / 4)
+            throw new IOException("Packed lines are broken");
+
+        int[] offsets = new int[count + 1];
+        input.asIntBuffer().get(offsets);
+        input.position(input.position() + 4 * offsets.length);
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] < 0 || offsets[i] > offsets[i + 1])
+                throw new IOException("Packed lines are broken");
+        }
+        if (offsets[count] != length)
+            throw new IOException("Packed lines are broken");
+
+        byte[] data = new byte[length];
+        input.get(data);
+        return new PackedLeaf(data, offsets, 0, count, (flags & FLAG_LATIN1) != 0, (flags & FLAG_ASCII) != 0);
+    }
+}
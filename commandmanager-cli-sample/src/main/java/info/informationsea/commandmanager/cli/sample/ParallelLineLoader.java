@@ -0,0 +1,305 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Load all lines of a file in parallel.
+ *
+ * The file is split into chunks of about {@code chunkSize} bytes at line feeds. Each chunk is mapped and decoded
+ * with its own {@code CharsetDecoder} on the common fork/join pool, and ropes of chunks are joined in order.
+ * Line terminators are same as {@code BufferedReader.readLine}, and malformed input is replaced.
+ * A byte order mark is detected when no charset is specified, and skipped if it matches the charset.
+ * Charsets in which a line feed byte may be a part of another character, such as UTF-16, are decoded as one chunk.
+ * A chunk which is too large to be mapped at once is decoded from a stream.
+ * @author Yasunobu OKAMURA
+ */
+public class ParallelLineLoader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum size of a chunk which is mapped and decoded at once
+     */
+    static final long MAX_MAPPED_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    private static final Set<String> LINE_FEED_SAFE_CHARSETS = new HashSet<>(Arrays.asList(
+            "UTF-8", "Shift_JIS", "windows-31j", "EUC-JP", "EUC-KR", "GBK", "GB18030", "Big5"));
+
+    /**
+     * A charset to decode files. null to detect a byte order mark, and use the default charset if there is none.
+     */
+    @Getter
+    private final Charset charset;
+
+    @Getter
+    private final int chunkSize;
+
+    /**
+     * Pack lines into compact leaves
+     */
+    @Getter
+    private final boolean compact;
+
+    private final long maxMappedChunkSize;
+
+    public ParallelLineLoader(Charset charset) {
+        this(charset, DEFAULT_CHUNK_SIZE, false);
+    }
+
+    public ParallelLineLoader(Charset charset, int chunkSize, boolean compact) {
+        this(charset, chunkSize, compact, MAX_MAPPED_CHUNK_SIZE);
+    }
+
+    ParallelLineLoader(Charset charset, int chunkSize, boolean compact, long maxMappedChunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize should be positive");
+        this.charset = charset;
+        this.chunkSize = chunkSize;
+        this.compact = compact;
+        this.maxMappedChunkSize = maxMappedChunkSize;
+    }
+
+    /**
+     * Load all lines of a file.
+     * @param file a file to load
+     * @throws IOException failed to read the file
+     * @return a rope of lines
+     */
+    public LineRope load(@NonNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteOrderMark mark = resolveCharset(channel, charset);
+            Charset resolved = mark.getCharset();
+            long start = mark.getLength();
+
+            List<Long> boundaries = isLineFeedSafe(resolved) ?
+                    findBoundaries(channel, start, size) : Arrays.asList(start, size);
+            Charset decoding = resolved;
+            List<LineRope> ropes = IntStream.range(0, boundaries.size() - 1).parallel().mapToObj(i -> {
+                try {
+                    return decodeChunk(channel, boundaries.get(i), boundaries.get(i + 1), decoding);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+            return LineRope.joinAll(ropes);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Split the range into chunks which end just after line feeds.
+     * @return offsets of chunk boundaries including both ends
+     */
+    List<Long> findBoundaries(FileChannel channel, long start, long end) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = start;
+        while (end - position > chunkSize) {
+            long scan = position + chunkSize;
+            long found = -1;
+            while (found < 0 && scan < end) {
+                buffer.clear();
+                int read = channel.read(buffer, scan);
+                if (read <= 0)
+                    break;
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        found = scan + i + 1;
+                        break;
+                    }
+                }
+                scan += read;
+            }
+            if (found < 0 || found >= end)
+                break;
+            boundaries.add(found);
+            position = found;
+        }
+        boundaries.add(end);
+        return boundaries;
+    }
+
+    private LineRope decodeChunk(FileChannel channel, long start, long end, Charset decoding) throws IOException {
+        LineRope.Builder builder = new LineRope.Builder(compact);
+        if (start == end)
+            return builder.build();
+
+        CharsetDecoder decoder = decoding.newDecoder().
+                onMalformedInput(CodingErrorAction.REPLACE).
+                onUnmappableCharacter(CodingErrorAction.REPLACE);
+        LineSplitter splitter = new LineSplitter(builder);
+        if (end - start <= maxMappedChunkSize) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            splitter.add(decoder.decode(bytes));
+        } else {
+            decodeStream(channel, start, end, decoder, splitter);
+        }
+        splitter.finish();
+        return builder.build();
+    }
+
+    private static void decodeStream(FileChannel channel, long start, long end, CharsetDecoder decoder,
+                                     LineSplitter splitter) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = start;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + (end - position)));
+            int read = channel.read(bytes, position);
+            if (read > 0)
+                position += read;
+            endOfInput = read < 0 || position >= end;
+
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                chars.flip();
+                splitter.add(chars);
+                chars.clear();
+            } while (result.isOverflow());
+            bytes.compact();
+        }
+
+        CoderResult result;
+        do {
+            result = decoder.flush(chars);
+            chars.flip();
+            splitter.add(chars);
+            chars.clear();
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Split characters into lines. Characters may be added in pieces, and a line or a CRLF may span pieces.
+     */
+    private static final class LineSplitter {
+        private final LineRope.Builder builder;
+        private final StringBuilder partial = new StringBuilder();
+        private boolean pendingCarriageReturn = false;
+
+        LineSplitter(LineRope.Builder builder) {
+            this.builder = builder;
+        }
+
+        void add(CharBuffer chars) {
+            int length = chars.limit();
+            int lineStart = 0;
+            if (pendingCarriageReturn && length > 0) {
+                if (chars.get(0) == '\n')
+                    lineStart = 1;
+                pendingCarriageReturn = false;
+            }
+            for (int i = lineStart; i < length; i++) {
+                char c = chars.get(i);
+                if (c == '\n' || c == '\r') {
+                    if (partial.length() > 0) {
+                        builder.add(partial.append(chars, lineStart, i).toString());
+                        partial.setLength(0);
+                    } else {
+                        builder.add(chars.subSequence(lineStart, i).toString());
+                    }
+                    if (c == '\r') {
+                        if (i + 1 == length)
+                            pendingCarriageReturn = true;
+                        else if (chars.get(i + 1) == '\n')
+                            i++;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            partial.append(chars, lineStart, length);
+        }
+
+        void finish() {
+            if (partial.length() > 0)
+                builder.add(partial.toString());
+        }
+    }
+
+    static boolean isLineFeedSafe(Charset charset) {
+        if (LINE_FEED_SAFE_CHARSETS.contains(charset.name()))
+            return true;
+        // single byte charsets which encode a line feed as 0x0a
+        return charset.newEncoder().maxBytesPerChar() == 1 &&
+                Arrays.equals("\n".getBytes(charset), new byte[]{'\n'});
+    }
+
+    /**
+     * Resolve a charset of a file. A byte order mark is used if no charset is specified, and skipped if it matches
+     * the specified charset. {@code load}, {@code MappedLineSource} and {@code LineStream} share this.
+     * @param channel a file
+     * @param charset a specified charset, or null to detect a byte order mark and use the default charset if
+     *                there is none
+     * @return a resolved charset, and a length of a byte order mark to skip, which is 0 if there is none
+     */
+    static ByteOrderMark resolveCharset(FileChannel channel, Charset charset) throws IOException {
+        ByteOrderMark mark = detectByteOrderMark(channel);
+        if (mark != null && (charset == null || charset.equals(mark.getCharset())))
+            return mark;
+        return new ByteOrderMark(charset == null ? Charset.defaultCharset() : charset, 0);
+    }
+
+    /**
+     * Detect a byte order mark of UTF-8 or UTF-16.
+     * @return a detected mark, or null if there is no mark
+     */
+    static ByteOrderMark detectByteOrderMark(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // read the first bytes
+        }
+        int read = buffer.position();
+        if (read >= 3 && (buffer.get(0) & 0xff) == 0xef && (buffer.get(1) & 0xff) == 0xbb && (buffer.get(2) & 0xff) == 0xbf)
+            return new ByteOrderMark(StandardCharsets.UTF_8, 3);
+        if (read >= 2 && (buffer.get(0) & 0xff) == 0xfe && (buffer.get(1) & 0xff) == 0xff)
+            return new ByteOrderMark(StandardCharsets.UTF_16BE, 2);
+        if (read >= 2 && (buffer.get(0) & 0xff) == 0xff && (buffer.get(1) & 0xff) == 0xfe)
+            return new ByteOrderMark(StandardCharsets.UTF_16LE, 2);
+        return null;
+    }
+
+    @Value
+    static class ByteOrderMark {
+        private Charset charset;
+        private int length;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Least recently used cache of compiled regular expressions.
+ * Compiled patterns are thread safe, so one cache is shared by all commands.
+ * @author Yasunobu OKAMURA
+ */
+public class PatternCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final PatternCache DEFAULT = new PatternCache(DEFAULT_CAPACITY);
+
+    @Getter
+    private final int capacity;
+
+    private final Map<String, Pattern> patterns;
+
+    public PatternCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity should be positive");
+        this.capacity = capacity;
+        this.patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                return size() > PatternCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Get a cache shared in this process.
+     * @return a shared cache
+     */
+    public static PatternCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Get a compiled pattern.
+     * @param regex a regular expression
+     * @return a compiled pattern
+     * @throws java.util.regex.PatternSyntaxException the regular expression is invalid
+     */
+    public Pattern get(@NonNull String regex) {
+        synchronized (patterns) {
+            Pattern pattern = patterns.get(regex);
+            if (pattern == null) {
+                pattern = Pattern.compile(regex);
+                patterns.put(regex, pattern);
+            }
+            return pattern;
+        }
+    }
+
+    /**
+     * Get a number of cached patterns.
+     * @return a number of cached patterns
+     */
+    public int size() {
+        synchronized (patterns) {
+            return patterns.size();
+        }
+    }
+}
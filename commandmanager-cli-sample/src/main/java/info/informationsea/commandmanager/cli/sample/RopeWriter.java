@@ -0,0 +1,265 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Write lines of a rope to a file with NIO.
+ *
+ * Lines are encoded with a reusable {@code CharsetEncoder} into a large direct buffer, and written to a temporary
+ * file in the same directory. The temporary file is moved to the destination atomically when all lines are written,
+ * so the destination is never left half written. A symbolic link is replaced at its target, and permissions of
+ * an existing destination are copied to the temporary file, so a replaced file keeps its permissions.
+ * Leaves which are not modified since they are mapped with {@code MappedLineSource} are copied as raw bytes if
+ * the charset is the same, so only modified ranges are encoded. Compact leaves are also written without decoding
+ * when their bytes are valid in the charset. Unmodified ranges keep their original line terminators.
+ * All lines of a file are encoded as one input, so a byte order mark or a shift state of the charset is written
+ * only where the charset requires.
+ *
+ * A writer is not reentrant. {@code write} is synchronized so that a shared writer can be used from several threads.
+ * @author Yasunobu OKAMURA
+ */
+public class RopeWriter {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private static final Map<Charset, RopeWriter> writers = new ConcurrentHashMap<>();
+
+    @Getter
+    private final Charset charset;
+
+    @Getter
+    private final String lineSeparator;
+
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharBuffer separator;
+    private final byte[] separatorBytes;
+
+    /**
+     * Create a writer.
+     * @param charset a charset to encode lines
+     * @param lineSeparator a line separator appended to encoded lines
+     */
+    public RopeWriter(@NonNull Charset charset, @NonNull String lineSeparator) {
+        this.charset = charset;
+        this.lineSeparator = lineSeparator;
+        this.encoder = charset.newEncoder().
+                onMalformedInput(CodingErrorAction.REPORT).
+                onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.separator = CharBuffer.wrap(lineSeparator);
+        this.separatorBytes = lineSeparator.getBytes(charset);
+    }
+
+    /**
+     * Get a shared writer which uses the system line separator.
+     * @param charset a charset to encode lines
+     * @return a shared writer
+     */
+    public static RopeWriter getInstance(@NonNull Charset charset) {
+        return writers.computeIfAbsent(charset, c -> new RopeWriter(c, System.lineSeparator()));
+    }
+
+    /**
+     * Write all lines to a file, and replace the file atomically.
+     * @param rope lines to write
+     * @param file a destination file
+     * @throws IOException failed to write, or a line cannot be encoded with the charset
+     */
+    public synchronized void write(@NonNull LineRope rope, @NonNull File file) throws IOException {
+        replace(file, channel -> writeLines(rope, channel));
+    }
+
+    /**
+     * Write lines from an iterator to a file, and replace the file atomically.
+     * Each line is encoded when it is taken from the iterator, so lines are never held together.
+     * The destination may be the file which the iterator reads, because it is replaced after all lines are written.
+     * @param lines lines to write
+     * @param file a destination file
+     * @throws IOException failed to write, or a line cannot be encoded with the charset
+     * @return a number of written lines
+     */
+    public synchronized long write(@NonNull Iterator<String> lines, @NonNull File file) throws IOException {
+        long[] count = {0};
+        replace(file, channel -> {
+            begin();
+            while (lines.hasNext()) {
+                encode(CharBuffer.wrap(lines.next()), channel);
+                encode(separator.duplicate(), channel);
+                count[0]++;
+            }
+            finish(channel);
+        });
+        return count[0];
+    }
+
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    private void replace(File file, ChannelWriter writer) throws IOException {
+        Path destination = file.toPath().toAbsolutePath();
+        boolean exists = Files.exists(destination);
+        if (exists)
+            destination = destination.toRealPath();
+        Path temporary = createTemporary(destination);
+        try {
+            if (exists)
+                copyPermissions(destination, temporary);
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.write(channel);
+                channel.force(false);
+            }
+            try {
+                Files.move(temporary, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Create an empty file next to the destination. Unlike {@code Files.createTempFile}, the file is created with
+     * the default permissions, as a new destination written directly would be.
+     */
+    private static Path createTemporary(Path destination) throws IOException {
+        while (true) {
+            Path temporary = destination.resolveSibling(
+                    String.format(".%s.%016x.tmp", destination.getFileName(), ThreadLocalRandom.current().nextLong()));
+            try {
+                return Files.createFile(temporary);
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (Files.getFileAttributeView(from, PosixFileAttributeView.class) == null)
+            return;
+        Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+    }
+
+    private void writeLines(LineRope rope, FileChannel channel) throws IOException {
+        begin();
+        for (Iterator<LineRope.Leaf> it = rope.leafIterator(); it.hasNext(); ) {
+            LineRope.Leaf leaf = it.next();
+            if (leaf instanceof MappedLineSource.MappedLeaf &&
+                    ((MappedLineSource.MappedLeaf) leaf).source.getCharset().equals(charset)) {
+                copyRaw((MappedLineSource.MappedLeaf) leaf, channel);
+            } else if (leaf instanceof PackedLeaf && ((PackedLeaf) leaf).isEncodedAs(charset)) {
+                PackedLeaf packed = (PackedLeaf) leaf;
+                for (int i = 0; i < packed.size(); i++) {
+                    put(packed.data, packed.lineStart(i), packed.lineEnd(i), channel);
+                    put(separatorBytes, 0, separatorBytes.length, channel);
+                }
+            } else {
+                for (int i = 0; i < leaf.size(); i++) {
+                    encode(CharBuffer.wrap(leaf.line(i)), channel);
+                    encode(separator.duplicate(), channel);
+                }
+            }
+        }
+        finish(channel);
+    }
+
+    private void copyRaw(MappedLineSource.MappedLeaf leaf, FileChannel channel) throws IOException {
+        flush(channel);
+        MappedLineSource source = leaf.source;
+        long start = source.getLineOffset(leaf.from);
+        long end = source.getLineOffset(leaf.to);
+        source.transferTo(start, end, channel);
+
+        // the last line of the source file may not have a line terminator
+        if (end > start && source.byteAt(end - 1) != '\n')
+            encode(separator.duplicate(), channel);
+    }
+
+    private void begin() {
+        buffer.clear();
+        encoder.reset();
+    }
+
+    /**
+     * Encode characters as a part of the file. The encoder is reset only by {@code begin}.
+     */
+    private void encode(CharBuffer chars, FileChannel channel) throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, buffer, false);
+            if (result.isOverflow())
+                flush(channel);
+            else if (result.isError())
+                result.throwException();
+        } while (!result.isUnderflow());
+        // a line or a separator should not end with a partial character such as a lone high surrogate
+        if (chars.hasRemaining())
+            throw new MalformedInputException(chars.remaining());
+    }
+
+    private void finish(FileChannel channel) throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(CharBuffer.allocate(0), buffer, true);
+            if (result.isOverflow())
+                flush(channel);
+        } while (!result.isUnderflow());
+        do {
+            result = encoder.flush(buffer);
+            if (result.isOverflow())
+                flush(channel);
+        } while (!result.isUnderflow());
+        flush(channel);
+    }
+
+    private void put(byte[] data, int from, int to, FileChannel channel) throws IOException {
+        while (from < to) {
+            if (!buffer.hasRemaining())
+                flush(channel);
+            int length = Math.min(buffer.remaining(), to - from);
+            buffer.put(data, from, length);
+            from += length;
+        }
+    }
+
+    private void flush(FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,579 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Trigram index of lines for substring and regular expression search.
+ *
+ * Every line has an id, and the id is recorded in posting lists of case folded trigrams in the line.
+ * Posting lists are sorted int arrays kept in an open addressing hash table, so no object is allocated per posting.
+ * A query intersects posting lists of trigrams in literals which matching lines must contain,
+ * and verifies only the remaining candidates. Queries without trigrams scan all lines.
+ *
+ * The index is updated incrementally. An updated line gets a new id, and its old id becomes stale.
+ * Stale ids are skipped by queries, and are removed from posting lists when they outnumber live lines.
+ * @author Yasunobu OKAMURA
+ */
+public class TrigramIndex {
+
+    /**
+     * Number of lines indexed by a task while building an index
+     */
+    static final int BUILD_CHUNK_SIZE = 1 << 16;
+
+    private LineRope rope;
+    private PostingTable postings;
+
+    /**
+     * Ids of lines by position
+     */
+    private int[] ids;
+
+    /**
+     * Positions of lines by id, -1 for stale ids. null if positions should be computed again.
+     */
+    private int[] positions;
+
+    private int nextId;
+    private int staleIds;
+
+    private TrigramIndex(LineRope rope) {
+        reset(rope);
+    }
+
+    /**
+     * Build an index of lines. Chunks of lines are indexed in parallel.
+     * @param rope lines to index
+     * @return a new index
+     */
+    public static TrigramIndex build(@NonNull LineRope rope) {
+        return new TrigramIndex(rope);
+    }
+
+    private void reset(LineRope rope) {
+        int size = rope.size();
+        int chunks = (size + BUILD_CHUNK_SIZE - 1) / BUILD_CHUNK_SIZE;
+        List<PostingTable> tables = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            int from = chunk * BUILD_CHUNK_SIZE;
+            PostingTable table = new PostingTable();
+            int id = from;
+            for (String line : rope.subRope(from, Math.min(size, from + BUILD_CHUNK_SIZE))) {
+                table.addLine(line, id++);
+            }
+            return table;
+        }).collect(Collectors.toList());
+
+        if (tables.size() == 1) {
+            postings = tables.get(0);
+        } else {
+            // chunks are merged in order, so posting lists stay sorted
+            postings = new PostingTable();
+            for (PostingTable one : tables) {
+                postings.addAll(one);
+            }
+        }
+        postings.trim();
+
+        this.rope = rope;
+        ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+        }
+        positions = null;
+        nextId = size;
+        staleIds = 0;
+    }
+
+    /**
+     * Get lines reflected in this index.
+     * @return indexed lines
+     */
+    public synchronized LineRope getRope() {
+        return rope;
+    }
+
+    public synchronized int getTrigramCount() {
+        return postings.count;
+    }
+
+    /**
+     * Get a number of ids in all posting lists, including stale ids.
+     * @return a number of postings
+     */
+    public synchronized long getPostingCount() {
+        return postings.postings;
+    }
+
+    synchronized int getStaleIds() {
+        return staleIds;
+    }
+
+    /**
+     * Update this index to lines of the rope.
+     * Only lines which differ from the indexed lines are indexed again, and subtrees shared with the indexed
+     * rope are skipped. If the number of lines differs, the index is rebuilt.
+     * @param newRope lines to index
+     */
+    public synchronized void update(@NonNull LineRope newRope) {
+        if (newRope == rope)
+            return;
+        if (newRope.size() != rope.size() || nextId > Integer.MAX_VALUE - newRope.size()) {
+            reset(newRope);
+            return;
+        }
+
+        LineRope.diff(rope, newRope, (index, before, after) -> {
+            if (!equalsFolded(before, after))
+                reindex(index, after);
+        });
+        rope = newRope;
+    }
+
+    /**
+     * Update this index for a line inserted into lines.
+     * If the lines before insertion are not the indexed lines, the index is updated to the new lines instead.
+     * @param index position of the inserted line
+     * @param previous lines before insertion
+     * @param newRope lines with the inserted line
+     */
+    public synchronized void insert(int index, @NonNull LineRope previous, @NonNull LineRope newRope) {
+        int size = rope.size();
+        if (previous != rope || newRope.size() != size + 1 || nextId == Integer.MAX_VALUE) {
+            update(newRope);
+            return;
+        }
+
+        if (ids.length == size)
+            ids = Arrays.copyOf(ids, size + (size >> 1) + 16);
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        int id = nextId++;
+        ids[index] = id;
+        postings.addLine(newRope.get(index), id);
+        positions = null;
+        rope = newRope;
+    }
+
+    private void reindex(int index, String line) {
+        int oldId = ids[index];
+        int id = nextId++;
+        ids[index] = id;
+        postings.addLine(line, id);
+        staleIds++;
+
+        if (positions != null) {
+            if (positions.length <= id) {
+                int oldLength = positions.length;
+                positions = Arrays.copyOf(positions, id + (id >> 1) + 16);
+                Arrays.fill(positions, oldLength, positions.length, -1);
+            }
+            positions[oldId] = -1;
+            positions[id] = index;
+        }
+    }
+
+    private int[] positions() {
+        if (positions == null) {
+            positions = new int[nextId + 16];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < rope.size(); i++) {
+                positions[ids[i]] = i;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Find lines which contain all literals and match the predicate.
+     * @param literals strings which all matching lines contain. Case is ignored to select candidates.
+     * @param matcher a predicate to verify candidate lines
+     * @return sorted positions of matching lines
+     */
+    public synchronized int[] search(@NonNull Collection<String> literals, @NonNull Predicate<String> matcher) {
+        long[] trigrams = trigrams(literals);
+        if (trigrams.length == 0)
+            return scan(rope, matcher);
+
+        if (staleIds > rope.size()) {
+            int[] current = positions();
+            postings.retain(id -> current[id] >= 0);
+            staleIds = 0;
+        }
+
+        int[] slots = new int[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            slots[i] = postings.find(trigrams[i]);
+            if (slots[i] < 0)
+                return new int[0];
+        }
+        Integer[] order = new Integer[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            order[i] = slots[i];
+        }
+        Arrays.sort(order, Comparator.comparingInt(slot -> postings.sizes[slot]));
+
+        int count = postings.sizes[order[0]];
+        int[] candidates = Arrays.copyOf(postings.lists[order[0]], count);
+        for (int i = 1; i < order.length && count > 0; i++) {
+            count = intersect(candidates, count, postings.lists[order[i]], postings.sizes[order[i]]);
+        }
+
+        int[] current = positions();
+        int[] found = new int[count];
+        int foundCount = 0;
+        for (int i = 0; i < count; i++) {
+            int position = current[candidates[i]];
+            if (position >= 0)
+                found[foundCount++] = position;
+        }
+        Arrays.sort(found, 0, foundCount);
+
+        int matched = 0;
+        for (int i = 0; i < foundCount; i++) {
+            if (matcher.test(rope.get(found[i])))
+                found[matched++] = found[i];
+        }
+        return Arrays.copyOf(found, matched);
+    }
+
+    /**
+     * Find lines which match the predicate without an index.
+     * @param rope lines to scan
+     * @param matcher a predicate to test lines
+     * @return sorted positions of matching lines
+     */
+    public static int[] scan(@NonNull LineRope rope, @NonNull Predicate<String> matcher) {
+        int[] found = new int[16];
+        int count = 0;
+        int index = 0;
+        for (String line : rope) {
+            if (matcher.test(line)) {
+                if (count == found.length)
+                    found = Arrays.copyOf(found, count * 2);
+                found[count++] = index;
+            }
+            index++;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Keep ids in the sorted array which are also in the other sorted array.
+     * @return a number of kept ids
+     */
+    static int intersect(int[] ids, int size, int[] other, int otherSize) {
+        int count = 0;
+        int from = 0;
+        for (int i = 0; i < size && from < otherSize; i++) {
+            int found = Arrays.binarySearch(other, from, otherSize, ids[i]);
+            if (found >= 0) {
+                ids[count++] = ids[i];
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Extract literals which every match of the regular expression contains.
+     * Only top level literals outside of groups and character classes are extracted, and an empty list is
+     * returned for expressions with alternations or flags, so the result may be incomplete but never wrong.
+     * @param regex a regular expression
+     * @return required literals
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.indexOf('|') >= 0 || regex.contains("(?"))
+            return literals;
+
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= regex.length())
+                        return new ArrayList<>();
+                    char next = regex.charAt(++i);
+                    if (next == 'Q') {
+                        int end = regex.indexOf("\\E", i + 1);
+                        if (end < 0)
+                            end = regex.length();
+                        if (depth == 0)
+                            current.append(regex, i + 1, end);
+                        i = end + 1;
+                    } else if (!Character.isLetterOrDigit(next)) {
+                        if (depth == 0)
+                            current.append(next);
+                    } else if ("dDsSwWbBAGZzRXhHvVtnrfae".indexOf(next) >= 0) {
+                        flush(current, literals);
+                    } else {
+                        // escapes with arguments such as \x41, \p{L} and back references
+                        return new ArrayList<>();
+                    }
+                    break;
+                case '[':
+                    flush(current, literals);
+                    int j = i + 1;
+                    if (j < regex.length() && regex.charAt(j) == '^')
+                        j++;
+                    if (j < regex.length() && regex.charAt(j) == ']')
+                        j++;
+                    while (j < regex.length() && regex.charAt(j) != ']') {
+                        if (regex.charAt(j) == '[')
+                            return new ArrayList<>();
+                        j += regex.charAt(j) == '\\' ? 2 : 1;
+                    }
+                    i = j;
+                    break;
+                case '?':
+                case '*':
+                case '{':
+                    // the previous character is optional
+                    if (current.length() > 0)
+                        current.setLength(current.length() - 1);
+                    flush(current, literals);
+                    if (c == '{') {
+                        int end = regex.indexOf('}', i);
+                        i = end < 0 ? regex.length() : end;
+                    }
+                    break;
+                case '(':
+                    flush(current, literals);
+                    depth++;
+                    break;
+                case ')':
+                    flush(current, literals);
+                    depth--;
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    flush(current, literals);
+                    break;
+                default:
+                    if (depth == 0)
+                        current.append(c);
+            }
+        }
+        flush(current, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder current, List<String> literals) {
+        if (current.length() > 0)
+            literals.add(current.toString());
+        current.setLength(0);
+    }
+
+    static char fold(char c) {
+        if (c < 0x80)
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    static boolean equalsFolded(String a, String b) {
+        if (a.length() != b.length())
+            return false;
+        for (int i = 0; i < a.length(); i++) {
+            if (fold(a.charAt(i)) != fold(b.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static long trigram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static long[] trigrams(Collection<String> literals) {
+        Set<Long> trigrams = new LinkedHashSet<>();
+        for (String one : literals) {
+            for (int i = 2; i < one.length(); i++) {
+                trigrams.add(trigram(fold(one.charAt(i - 2)), fold(one.charAt(i - 1)), fold(one.charAt(i))));
+            }
+        }
+        long[] result = new long[trigrams.size()];
+        int i = 0;
+        for (long one : trigrams) {
+            result[i++] = one;
+        }
+        return result;
+    }
+
+    /**
+     * Open addressing hash table from trigrams to posting lists.
+     */
+    private static final class PostingTable {
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final int INITIAL_LIST_SIZE = 4;
+
+        /**
+         * Trigrams plus one. 0 means an empty slot.
+         */
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[][] lists = new int[INITIAL_CAPACITY][];
+        private int[] sizes = new int[INITIAL_CAPACITY];
+        private int count = 0;
+        private long postings = 0;
+
+        private static int hash(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key + 1)
+                    return slot;
+                if (keys[slot] == 0)
+                    return -1;
+            }
+        }
+
+        private int findOrInsert(long key) {
+            if ((count + 1) * 2 > keys.length)
+                rehash(keys.length * 2);
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key + 1)
+                    return slot;
+                if (keys[slot] == 0) {
+                    keys[slot] = key + 1;
+                    count++;
+                    return slot;
+                }
+            }
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[][] oldLists = lists;
+            int[] oldSizes = sizes;
+            keys = new long[capacity];
+            lists = new int[capacity][];
+            sizes = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                int slot = hash(oldKeys[i] - 1) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                lists[slot] = oldLists[i];
+                sizes[slot] = oldSizes[i];
+            }
+        }
+
+        /**
+         * Add an id to posting lists of trigrams in the line. The id should be larger than ids already added.
+         */
+        void addLine(String line, int id) {
+            if (line.length() < 3)
+                return;
+            char a = fold(line.charAt(0));
+            char b = fold(line.charAt(1));
+            for (int i = 2; i < line.length(); i++) {
+                char c = fold(line.charAt(i));
+                add(trigram(a, b, c), id);
+                a = b;
+                b = c;
+            }
+        }
+
+        private void add(long key, int id) {
+            int slot = findOrInsert(key);
+            int size = sizes[slot];
+            int[] list = lists[slot];
+            if (size > 0 && list[size - 1] == id)
+                return;
+            if (list == null) {
+                list = lists[slot] = new int[INITIAL_LIST_SIZE];
+            } else if (size == list.length) {
+                list = lists[slot] = Arrays.copyOf(list, size + (size >> 1) + 1);
+            }
+            list[size] = id;
+            sizes[slot] = size + 1;
+            postings++;
+        }
+
+        /**
+         * Append posting lists of the other table. Ids in the other table should be larger than ids in this table.
+         */
+        void addAll(PostingTable other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] == 0)
+                    continue;
+                int slot = findOrInsert(other.keys[i] - 1);
+                int size = sizes[slot];
+                int otherSize = other.sizes[i];
+                if (lists[slot] == null) {
+                    lists[slot] = new int[otherSize];
+                } else if (size + otherSize > lists[slot].length) {
+                    lists[slot] = Arrays.copyOf(lists[slot], size + otherSize);
+                }
+                System.arraycopy(other.lists[i], 0, lists[slot], size, otherSize);
+                sizes[slot] = size + otherSize;
+                postings += otherSize;
+            }
+        }
+
+        /**
+         * Release unused capacity of posting lists.
+         */
+        void trim() {
+            for (int i = 0; i < keys.length; i++) {
+                if (lists[i] != null && lists[i].length > sizes[i])
+                    lists[i] = Arrays.copyOf(lists[i], sizes[i]);
+            }
+        }
+
+        /**
+         * Remove ids which do not satisfy the predicate from all posting lists.
+         */
+        void retain(IntPredicate predicate) {
+            postings = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (lists[i] == null)
+                    continue;
+                int[] list = lists[i];
+                int kept = 0;
+                for (int j = 0; j < sizes[i]; j++) {
+                    if (predicate.test(list[j]))
+                        list[kept++] = list[j];
+                }
+                sizes[i] = kept;
+                postings += kept;
+            }
+            trim();
+        }
+    }
+}
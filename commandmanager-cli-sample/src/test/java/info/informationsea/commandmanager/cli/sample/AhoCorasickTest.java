@@ -0,0 +1,100 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class AhoCorasickTest {
+
+    private static AhoCorasick create(String... pairs) {
+        Map<String, String> mapping = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            mapping.put(pairs[i], pairs[i + 1]);
+        }
+        return new AhoCorasick(mapping);
+    }
+
+    @Test
+    public void testReplace() {
+        AhoCorasick automaton = create("colour", "color", "centre", "center", "\u00e9", "e");
+        Assert.assertEquals(3, automaton.getSize());
+        Assert.assertEquals("the color of the center cafe", automaton.replace("the colour of the centre caf\u00e9"));
+        Assert.assertEquals("colorcolor", automaton.replace("colourcolour"));
+
+        String unchanged = "nothing to replace";
+        Assert.assertSame(unchanged, automaton.replace(unchanged));
+        Assert.assertEquals("", automaton.replace(""));
+    }
+
+    @Test
+    public void testLeftmostLongest() {
+        Assert.assertEquals("u2rs", create("he", "1", "she", "2", "hers", "3").replace("ushers"));
+        Assert.assertEquals("xLONGy", create("bc", "SHORT", "abcd", "LONG").replace("xabcdy"));
+        Assert.assertEquals("[abc]d", create("ab", "[ab]", "abc", "[abc]").replace("abcd"));
+        Assert.assertEquals("XXa", create("aa", "X").replace("aaaaa"));
+    }
+
+    @Test
+    public void testSameAsSequentialScan() {
+        Random random = new Random(42);
+        Map<String, String> mapping = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            mapping.put(randomString(random, 1 + random.nextInt(3)), "<" + i + ">");
+        }
+        AhoCorasick automaton = new AhoCorasick(mapping);
+
+        for (int i = 0; i < 200; i++) {
+            String text = randomString(random, random.nextInt(40));
+            Assert.assertEquals(naiveReplace(mapping, text), automaton.replace(text));
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+
+    private static String naiveReplace(Map<String, String> mapping, String text) {
+        StringBuilder builder = new StringBuilder();
+        int position = 0;
+        while (position < text.length()) {
+            String longest = null;
+            for (String target : mapping.keySet()) {
+                if (text.startsWith(target, position) && (longest == null || target.length() > longest.length()))
+                    longest = target;
+            }
+            if (longest == null) {
+                builder.append(text.charAt(position));
+                position += 1;
+            } else {
+                builder.append(mapping.get(longest));
+                position += longest.length();
+            }
+        }
+        return builder.toString();
+    }
+}
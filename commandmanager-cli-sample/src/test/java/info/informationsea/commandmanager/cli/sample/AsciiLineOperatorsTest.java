@@ -0,0 +1,70 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+public class AsciiLineOperatorsTest {
+
+    private static void assertSameResult(UnaryOperator<String> operator, String line) {
+        String expected = operator.apply(line);
+        byte[] data = ("##" + line + "##").getBytes(StandardCharsets.US_ASCII);
+        byte[] result = ((AsciiLineOperator) operator).applyAscii(data, 2, data.length - 2);
+        if (expected.equals(line))
+            Assert.assertNull(result);
+        else
+            Assert.assertEquals(expected, new String(result, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testOperators() {
+        Random random = new Random(7);
+        UnaryOperator<String>[] operators = new UnaryOperator[]{
+                AsciiLineOperators.toUpperCase(Locale.ENGLISH),
+                AsciiLineOperators.toLowerCase(Locale.ENGLISH),
+                AsciiLineOperators.replace("ab", "X"),
+                AsciiLineOperators.replace("a", "long replacement"),
+                AsciiLineOperators.replace("aba", "")
+        };
+
+        for (int i = 0; i < 500; i++) {
+            StringBuilder line = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                line.append("abAB #".charAt(random.nextInt(6)));
+            }
+            for (UnaryOperator<String> operator : operators) {
+                assertSameResult(operator, line.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testFallback() {
+        Assert.assertFalse(AsciiLineOperators.toUpperCase(new Locale("tr")) instanceof AsciiLineOperator);
+        Assert.assertFalse(AsciiLineOperators.replace("a", "\u3042") instanceof AsciiLineOperator);
+        Assert.assertFalse(AsciiLineOperators.replace("", "a") instanceof AsciiLineOperator);
+        Assert.assertEquals("\u3042b", AsciiLineOperators.replace("a", "\u3042").apply("ab"));
+    }
+}
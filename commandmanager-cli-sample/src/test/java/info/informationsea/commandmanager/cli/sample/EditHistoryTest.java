@@ -0,0 +1,103 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EditHistoryTest {
+
+    private static LineRope createRope(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + i);
+        }
+        return LineRope.of(lines);
+    }
+
+    @Test
+    public void testUndoRedo() {
+        EditHistory history = new EditHistory();
+        LineRope first = createRope(100);
+        LineRope second = first.insert(10, "second");
+        LineRope third = second.remove(0);
+        history.record(first, second);
+        history.record(second, third);
+        history.record(third, third);
+        Assert.assertEquals(2, history.getUndoCount());
+
+        Assert.assertSame(second, history.undo(third));
+        Assert.assertSame(first, history.undo(second));
+        Assert.assertFalse(history.canUndo());
+        Assert.assertEquals(2, history.getRedoCount());
+        Assert.assertSame(second, history.redo(first));
+
+        LineRope branch = second.set(0, "branch");
+        history.record(second, branch);
+        Assert.assertFalse(history.canRedo());
+        Assert.assertSame(second, history.undo(branch));
+        Assert.assertSame(first, history.undo(second));
+
+        history.clear();
+        Assert.assertEquals(0, history.getUsedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNothingToUndo() {
+        new EditHistory().undo(LineRope.empty());
+    }
+
+    @Test
+    public void testRetainedSize() {
+        LineRope large = createRope(100000);
+        LineRope edited = large.set(50000, "edited");
+
+        long whole = EditHistory.retainedSize(large, LineRope.empty());
+        long edit = EditHistory.retainedSize(large, edited);
+        Assert.assertTrue(whole > 100000 * 40);
+        Assert.assertTrue(edit > 0);
+        Assert.assertTrue(edit < 20000);
+        Assert.assertEquals(0, EditHistory.retainedSize(large, large));
+    }
+
+    @Test
+    public void testBudget() {
+        EditHistory history = new EditHistory();
+        LineRope current = createRope(100000);
+        for (int i = 0; i < 100; i++) {
+            LineRope next = current.set(i * 1000, "edited " + i);
+            history.record(current, next);
+            current = next;
+        }
+        Assert.assertEquals(100, history.getUndoCount());
+
+        long perEdit = history.getUsedBytes() / 100;
+        history.setBudget(perEdit * 10);
+        Assert.assertTrue(history.getUsedBytes() <= perEdit * 10);
+        Assert.assertTrue(history.getUndoCount() >= 8);
+        Assert.assertTrue(history.getUndoCount() < 12);
+
+        // the newest entries are kept
+        LineRope undone = history.undo(current);
+        Assert.assertEquals("line 99000", undone.get(99000));
+        Assert.assertEquals("edited 98", undone.get(98000));
+    }
+}
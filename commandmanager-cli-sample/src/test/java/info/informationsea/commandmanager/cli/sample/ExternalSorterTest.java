@@ -0,0 +1,127 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class ExternalSorterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> createLines(int count, int distinct, long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + random.nextInt(distinct));
+        }
+        return lines;
+    }
+
+    private static List<String> sort(ExternalSorter sorter, List<String> lines) throws IOException {
+        List<String> sorted = new ArrayList<>();
+        sorter.sort(lines.iterator(), sorted::add);
+        return sorted;
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        List<String> lines = createLines(10000, 1000, 1);
+        ExternalSorter sorter = new ExternalSorter(Comparator.naturalOrder(), ExternalSorter.DEFAULT_MEMORY_LIMIT, false, 2, directory);
+
+        List<String> sorted = new ArrayList<>();
+        ExternalSorter.Statistics statistics = sorter.sort(lines.iterator(), sorted::add);
+        Assert.assertEquals(10000, statistics.getInputLines());
+        Assert.assertEquals(10000, statistics.getOutputLines());
+        Assert.assertEquals(0, statistics.getRuns());
+
+        List<String> expected = new ArrayList<>(lines);
+        Collections.sort(expected);
+        Assert.assertEquals(expected, sorted);
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        List<String> lines = createLines(20000, 5000, 2);
+        ExternalSorter sorter = new ExternalSorter(Comparator.reverseOrder(), 100 * 1024, false, 3, directory);
+
+        List<String> sorted = new ArrayList<>();
+        ExternalSorter.Statistics statistics = sorter.sort(lines.iterator(), sorted::add);
+        Assert.assertTrue(statistics.getRuns() > 1);
+        Assert.assertEquals(20000, statistics.getOutputLines());
+
+        List<String> expected = new ArrayList<>(lines);
+        expected.sort(Comparator.reverseOrder());
+        Assert.assertEquals(expected, sorted);
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testMultiPassMerge() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        List<String> lines = createLines(3 * ExternalSorter.MAX_MERGE_WIDTH * 4, 100, 3);
+        // a few lines per run
+        ExternalSorter sorter = new ExternalSorter(Comparator.naturalOrder(), 1000, true, 2, directory);
+
+        List<String> sorted = new ArrayList<>();
+        ExternalSorter.Statistics statistics = sorter.sort(lines.iterator(), sorted::add);
+        Assert.assertTrue(statistics.getRuns() > ExternalSorter.MAX_MERGE_WIDTH);
+        Assert.assertEquals(new ArrayList<>(new TreeSet<>(lines)), sorted);
+        Assert.assertEquals(sorted.size(), statistics.getOutputLines());
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testStableAndUnique() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            lines.add((char) ('a' + i % 7) + " " + i);
+        }
+        Comparator<String> firstCharacter = Comparator.comparing(s -> s.charAt(0));
+
+        for (long memory : new long[]{ExternalSorter.DEFAULT_MEMORY_LIMIT, 10 * 1024}) {
+            List<String> expected = new ArrayList<>(lines);
+            expected.sort(firstCharacter);
+            Assert.assertEquals(expected, sort(new ExternalSorter(firstCharacter, memory, false), lines));
+            Assert.assertEquals(Arrays.asList("a 0", "b 1", "c 2", "d 3", "e 4", "f 5", "g 6"),
+                    sort(new ExternalSorter(firstCharacter, memory, true), lines));
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ExternalSorter sorter = new ExternalSorter(Comparator.naturalOrder(), 1024, true);
+        Assert.assertEquals(Collections.emptyList(), sort(sorter, Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMemory() {
+        new ExternalSorter(Comparator.naturalOrder(), 0, false);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import info.informationsea.commandmanager.cli.CLIPager;
+import info.informationsea.commandmanager.core.CommandManager;
+import info.informationsea.commandmanager.core.CommandResult;
+import info.informationsea.commandmanager.core.ContextSnapshot;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LineEditorCommandsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CommandManager commandManager;
+    private LineStore lines;
+
+    @Before
+    public void setUp() {
+        commandManager = new CommandManager();
+        LineEditorCommands.registerCommands(commandManager);
+        lines = ((LineEditorCommands.LineEditorContext) commandManager.getContext()).lines;
+        lines.addAll(Arrays.asList("Hello World", "foo 123", "bar 45"));
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        commandManager.invoke("replace").set("-target", "o").set("-replacement", "0").execute();
+        Assert.assertEquals(Arrays.asList("Hell0 W0rld", "f00 123", "bar 45"), lines);
+    }
+
+    @Test
+    public void testReplaceRegexp() throws Exception {
+        commandManager.invoke("replace").set("-target", "([a-z]+) ([0-9]+)").
+                set("-replacement", "$2 $1").set("-regexp").execute();
+        Assert.assertEquals(Arrays.asList("Hello World", "123 foo", "45 bar"), lines);
+    }
+
+    @Test
+    public void testConvert() throws Exception {
+        commandManager.invoke("convert").arg(0, "UPPER").execute();
+        Assert.assertEquals(Arrays.asList("HELLO WORLD", "FOO 123", "BAR 45"), lines);
+        commandManager.invoke("convert").arg(0, "LOWER").execute();
+        Assert.assertEquals(Arrays.asList("hello world", "foo 123", "bar 45"), lines);
+    }
+
+    @Test
+    public void testBulkReplace() throws Exception {
+        File mapping = temporaryFolder.newFile();
+        Files.write(mapping.toPath(), Arrays.asList("# comment", "Hello\tGood bye", "foo\tbaz"), Charset.defaultCharset());
+
+        // replaced texts are not replaced again
+        commandManager.invoke("bulkreplace").set("-mapping", mapping).arg(0, Arrays.asList("bar=qux", "baz=foo")).execute();
+        Assert.assertEquals(Arrays.asList("Good bye World", "baz 123", "qux 45"), lines);
+
+        commandManager.invoke("bulkreplace").arg(0, Arrays.asList("baz=foo")).execute();
+        Assert.assertEquals(Arrays.asList("Good bye World", "foo 123", "qux 45"), lines);
+        Assert.assertSame(LineEditorCommands.BulkReplace.loadAutomaton(mapping),
+                LineEditorCommands.BulkReplace.loadAutomaton(mapping));
+    }
+
+    @Test
+    public void testUndoRedo() throws Exception {
+        commandManager.invoke("convert").arg(0, "UPPER").execute();
+        commandManager.invoke("insert").arg(0, "new line").execute();
+        Assert.assertEquals(Arrays.asList("HELLO WORLD", "FOO 123", "BAR 45", "new line"), lines);
+
+        commandManager.invoke("undo").execute();
+        Assert.assertEquals(Arrays.asList("HELLO WORLD", "FOO 123", "BAR 45"), lines);
+        commandManager.invoke("undo").execute();
+        Assert.assertEquals(Arrays.asList("Hello World", "foo 123", "bar 45"), lines);
+        Assert.assertEquals(CommandResult.ResultState.WARN, commandManager.invoke("undo").execute().getState());
+
+        commandManager.invoke("redo").arg(0, 2).execute();
+        Assert.assertEquals(Arrays.asList("HELLO WORLD", "FOO 123", "BAR 45", "new line"), lines);
+
+        commandManager.invoke("edithistory").set("-clear").execute();
+        Assert.assertEquals(CommandResult.ResultState.WARN, commandManager.invoke("undo").execute().getState());
+    }
+
+    @Test
+    public void testDeferred() throws Exception {
+        commandManager.invoke("defer").arg(0, "ON").execute();
+        commandManager.invoke("convert").arg(0, "UPPER").execute();
+        commandManager.invoke("replace").set("-target", "O").set("-replacement", "0").execute();
+        Assert.assertEquals(2, lines.getPendingStages());
+
+        Assert.assertEquals("HELL0 W0RLD\nF00 123\nBAR 45\n", commandManager.invoke("print").execute().getResult());
+        Assert.assertEquals(0, lines.getPendingStages());
+
+        // fused stages are undone together
+        commandManager.invoke("undo").execute();
+        Assert.assertEquals(Arrays.asList("Hello World", "foo 123", "bar 45"), lines);
+    }
+
+    @Test
+    public void testPrintRange() throws Exception {
+        Assert.assertEquals("Hello World\nfoo 123\nbar 45\n", commandManager.invoke("print").execute().getResult());
+        Assert.assertEquals("foo 123\n", commandManager.invoke("print").set("-from", 1).set("-count", 1).execute().getResult());
+        Assert.assertEquals("Hello World\nfoo 123\n", commandManager.invoke("print").set("-to", 2).execute().getResult());
+        Assert.assertEquals("bar 45\n", commandManager.invoke("print").set("-from", 2).set("-to", 10).execute().getResult());
+        Assert.assertEquals("", commandManager.invoke("print").set("-from", 5).execute().getResult());
+        Assert.assertEquals(CommandResult.ResultState.ERROR,
+                commandManager.invoke("print").set("-from", 2).set("-to", 1).execute().getState());
+    }
+
+    @Test
+    public void testPrintStream() throws Exception {
+        LineEditorCommands.Print print = (LineEditorCommands.Print) commandManager.invoke("print").set("-stream").set("-from", 1).build();
+        StringWriter writer = new StringWriter();
+        print.setOutput(new PrintWriter(writer));
+        CommandResult result = print.execute();
+        Assert.assertNull(result.getResult());
+        Assert.assertEquals(String.format("foo 123%nbar 45%n"), writer.toString());
+        Assert.assertNull(print.getPageSource());
+
+        print = (LineEditorCommands.Print) commandManager.invoke("print").set("-from", 1).build();
+        CLIPager.PageSource source = print.getPageSource();
+        Assert.assertEquals(2, source.size());
+        Assert.assertEquals(Arrays.asList("bar 45"), source.lines(1, 2));
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        Assert.assertEquals("1: foo 123\n", commandManager.invoke("find").arg(0, "foo").execute().getResult());
+        Assert.assertEquals("index: on, lines: 3", commandManager.invoke("index").arg(0, "ON").execute().getResult().substring(0, 19));
+
+        Assert.assertEquals("1: foo 123\n", commandManager.invoke("find").arg(0, "foo").execute().getResult());
+        Assert.assertEquals("0: Hello World\n", commandManager.invoke("find").arg(0, "WORLD").set("-ignorecase").execute().getResult());
+        Assert.assertEquals("", commandManager.invoke("find").arg(0, "WORLD").execute().getResult());
+
+        commandManager.invoke("convert").arg(0, "UPPER").execute();
+        commandManager.invoke("insert").arg(0, "another foo").set("-l", 0).execute();
+        Assert.assertEquals("0: another foo\n", commandManager.invoke("find").arg(0, "foo").execute().getResult());
+        Assert.assertEquals("2", commandManager.invoke("find").arg(0, "foo").set("-ignorecase").set("-count").execute().getResult());
+
+        Assert.assertEquals("2: FOO 123\n3: BAR 45\n", commandManager.invoke("grep").arg(0, "[A-Z]+ [0-9]+$").execute().getResult());
+        Assert.assertEquals("1: HELLO WORLD\n", commandManager.invoke("grep").arg(0, "hel+o").set("-ignorecase").execute().getResult());
+
+        commandManager.invoke("undo").execute();
+        Assert.assertEquals("0", commandManager.invoke("find").arg(0, "another").set("-count").execute().getResult());
+        Assert.assertEquals("index: off", commandManager.invoke("index").arg(0, "OFF").execute().getResult());
+    }
+
+    @Test
+    public void testLoadByteOrderMark() throws Exception {
+        File source = temporaryFolder.newFile("bom.txt");
+        Files.write(source.toPath(), "\ufeffalpha\nbeta\n".getBytes(StandardCharsets.UTF_8));
+
+        commandManager.invoke("load").arg(0, source).execute();
+        Assert.assertEquals("alpha\nbeta\n", commandManager.invoke("print").execute().getResult());
+        commandManager.invoke("load").arg(0, source).set("-mapped").execute();
+        Assert.assertEquals("alpha\nbeta\n", commandManager.invoke("print").execute().getResult());
+        commandManager.invoke("load").arg(0, source).set("-stream").execute();
+        Assert.assertEquals("alpha\nbeta\n", commandManager.invoke("print").execute().getResult());
+    }
+
+    @Test
+    public void testFindAfterSort() throws Exception {
+        File source = temporaryFolder.newFile("source.txt");
+        Files.write(source.toPath(), Arrays.asList("zulu foo", "alpha", "mike"), Charset.defaultCharset());
+
+        commandManager.invoke("index").arg(0, "ON").execute();
+        commandManager.invoke("load").arg(0, source).execute();
+        commandManager.invoke("sort").execute();
+        commandManager.invoke("insert").arg(0, "echo").execute();
+        Assert.assertEquals("2: zulu foo\n", commandManager.invoke("find").arg(0, "foo").execute().getResult());
+        Assert.assertEquals("", commandManager.invoke("find").arg(0, "123").execute().getResult());
+    }
+
+    @Test
+    public void testFindAfterUndo() throws Exception {
+        commandManager.invoke("index").arg(0, "ON").execute();
+        commandManager.invoke("replace").set("-target", "foo").set("-replacement", "baz").execute();
+        Assert.assertEquals("1: baz 123\n", commandManager.invoke("find").arg(0, "baz").execute().getResult());
+
+        commandManager.invoke("undo").execute();
+        commandManager.invoke("insert").arg(0, "echo").execute();
+        Assert.assertEquals("1: foo 123\n", commandManager.invoke("find").arg(0, "foo").execute().getResult());
+        Assert.assertEquals("", commandManager.invoke("find").arg(0, "baz").execute().getResult());
+    }
+
+    @Test
+    public void testSort() throws Exception {
+        commandManager.invoke("insert").arg(0, "foo 123").execute();
+        Assert.assertEquals("sorted 4 lines into 4 lines, spilled runs: 0", commandManager.invoke("sort").execute().getResult());
+        Assert.assertEquals(Arrays.asList("Hello World", "bar 45", "foo 123", "foo 123"), lines);
+
+        commandManager.invoke("uniq").set("-ignorecase").set("-reverse").execute();
+        Assert.assertEquals(Arrays.asList("foo 123", "Hello World", "bar 45"), lines);
+
+        commandManager.invoke("undo").execute();
+        Assert.assertEquals(4, lines.size());
+
+        File output = temporaryFolder.newFile("sorted.txt");
+        commandManager.invoke("sort").set("-unique").set("-output", output).execute();
+        Assert.assertEquals(Arrays.asList("Hello World", "bar 45", "foo 123"), Files.readAllLines(output.toPath()));
+        Assert.assertEquals(4, lines.size());
+
+        File sortedAgain = temporaryFolder.newFile("sorted-again.txt");
+        commandManager.invoke("sort").set("-input", output).set("-output", sortedAgain).set("-reverse").execute();
+        Assert.assertEquals(Arrays.asList("foo 123", "bar 45", "Hello World"), Files.readAllLines(sortedAgain.toPath()));
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        File source = temporaryFolder.newFile("source.txt");
+        Files.write(source.toPath(), Arrays.asList("alpha", "beta", "gamma"), Charset.defaultCharset());
+        File output = new File(temporaryFolder.getRoot(), "output.txt");
+
+        commandManager.invoke("load").arg(0, source).set("-stream").execute();
+        Assert.assertEquals(0, lines.size());
+        commandManager.invoke("convert").arg(0, "UPPER").execute();
+        commandManager.invoke("insert").arg(0, "delta").execute();
+        commandManager.invoke("replace").set("-target", "A").set("-replacement", "4").execute();
+        Assert.assertEquals(CommandResult.ResultState.ERROR,
+                commandManager.invoke("insert").arg(0, "x").set("-l", 0).execute().getState());
+
+        Assert.assertEquals("BET4\nG4MM4\n", commandManager.invoke("print").set("-from", 1).set("-count", 2).execute().getResult());
+
+        // commands which read lines scan the bound file
+        Assert.assertEquals("0: 4LPH4\n1: BET4\n2: G4MM4\n", commandManager.invoke("find").arg(0, "4").execute().getResult());
+        Assert.assertEquals("1", commandManager.invoke("grep").arg(0, "^[a-z]+$").set("-count").execute().getResult());
+        Assert.assertEquals(CommandResult.ResultState.ERROR,
+                commandManager.invoke("index").arg(0, "ON").execute().getState());
+        Assert.assertEquals(CommandResult.ResultState.ERROR, commandManager.invoke("sort").execute().getState());
+        File sorted = new File(temporaryFolder.getRoot(), "sorted.txt");
+        commandManager.invoke("sort").set("-reverse").set("-output", sorted).execute();
+        Assert.assertEquals(Arrays.asList("delta", "G4MM4", "BET4", "4LPH4"), Files.readAllLines(sorted.toPath(), Charset.defaultCharset()));
+        Assert.assertEquals(0, lines.size());
+
+        commandManager.invoke("save").arg(0, output).execute();
+        Assert.assertEquals(Arrays.asList("4LPH4", "BET4", "G4MM4", "delta"), Files.readAllLines(output.toPath(), Charset.defaultCharset()));
+        Assert.assertEquals(Arrays.asList("alpha", "beta", "gamma"), Files.readAllLines(source.toPath(), Charset.defaultCharset()));
+
+        commandManager.invoke("load").arg(0, output).execute();
+        Assert.assertEquals(4, lines.size());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            expected.add(i % 3 == 0 ? "caf\u00e9 " + i : "line " + i);
+        }
+        LineEditorCommands.LineEditorContext context = (LineEditorCommands.LineEditorContext) commandManager.getContext();
+        lines.clear();
+        lines.addAll(expected);
+        commandManager.invoke("index").arg(0, "ON").execute();
+        commandManager.invoke("defer").arg(0, "ON").execute();
+
+        File file = temporaryFolder.newFile("snapshot.bin");
+        ContextSnapshot.write(context, file, true);
+
+        LineEditorCommands.LineEditorContext restored = new LineEditorCommands.LineEditorContext();
+        ContextSnapshot.restore(restored, file);
+        Assert.assertEquals(expected, restored.lines);
+        Assert.assertTrue(restored.lines.isDeferred());
+        Assert.assertNotNull(restored.getIndex());
+        Assert.assertFalse(restored.history.canUndo());
+
+        commandManager.invoke("convert").arg(0, "UPPER").execute();
+        ContextSnapshot.write(context, file, false);
+        ContextSnapshot.restore(restored, file);
+        Assert.assertEquals("LINE 1", restored.lines.get(1));
+        Assert.assertEquals(expected.size(), restored.lines.size());
+    }
+}
@@ -0,0 +1,180 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class LineRopeTest {
+
+    private static List<String> createLines(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + i);
+        }
+        return lines;
+    }
+
+    private static void assertBalanced(LineRope rope) {
+        if (rope instanceof LineRope.Concat) {
+            LineRope.Concat concat = (LineRope.Concat) rope;
+            Assert.assertTrue(Math.abs(concat.left.height() - concat.right.height()) <= 1);
+            assertBalanced(concat.left);
+            assertBalanced(concat.right);
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        List<String> lines = createLines(1000);
+        LineRope rope = LineRope.of(lines);
+        Assert.assertEquals(1000, rope.size());
+        Assert.assertEquals(lines, rope.toList());
+        Assert.assertEquals("line 567", rope.get(567));
+        assertBalanced(rope);
+        Assert.assertEquals(0, LineRope.empty().size());
+    }
+
+    @Test
+    public void testRandomEdit() {
+        Random random = new Random(1234);
+        List<String> expected = createLines(500);
+        LineRope rope = LineRope.of(expected);
+
+        for (int i = 0; i < 5000; i++) {
+            switch (random.nextInt(4)) {
+                case 0: {
+                    int index = random.nextInt(expected.size() + 1);
+                    expected.add(index, "new " + i);
+                    rope = rope.insert(index, "new " + i);
+                    break;
+                }
+                case 1:
+                    if (expected.size() > 0) {
+                        int index = random.nextInt(expected.size());
+                        expected.remove(index);
+                        rope = rope.remove(index);
+                    }
+                    break;
+                case 2:
+                    if (expected.size() > 0) {
+                        int index = random.nextInt(expected.size());
+                        expected.set(index, "set " + i);
+                        rope = rope.set(index, "set " + i);
+                    }
+                    break;
+                case 3: {
+                    int from = random.nextInt(expected.size() + 1);
+                    int to = from + random.nextInt(expected.size() - from + 1);
+                    List<String> sub = new ArrayList<>(expected.subList(from, to));
+                    Assert.assertEquals(sub, rope.subRope(from, to).toList());
+                    break;
+                }
+            }
+        }
+        Assert.assertEquals(expected, rope.toList());
+        assertBalanced(rope);
+        Assert.assertTrue(rope.height() <= 2 * (32 - Integer.numberOfLeadingZeros(rope.size())));
+    }
+
+    @Test
+    public void testPersistent() {
+        LineRope original = LineRope.of(createLines(300));
+        LineRope inserted = original.insert(150, "inserted");
+        LineRope removed = original.remove(10, 290);
+
+        Assert.assertEquals(createLines(300), original.toList());
+        Assert.assertEquals(301, inserted.size());
+        Assert.assertEquals("inserted", inserted.get(150));
+        Assert.assertEquals("line 150", inserted.get(151));
+        Assert.assertEquals(20, removed.size());
+        Assert.assertEquals("line 290", removed.get(10));
+    }
+
+    @Test
+    public void testConcat() {
+        LineRope small = LineRope.of(Arrays.asList("a", "b"));
+        LineRope large = LineRope.of(createLines(10000));
+        LineRope joined = small.concat(large).concat(small);
+        Assert.assertEquals(10004, joined.size());
+        Assert.assertEquals("b", joined.get(1));
+        Assert.assertEquals("line 0", joined.get(2));
+        Assert.assertEquals("a", joined.get(10002));
+        assertBalanced(joined);
+
+        LineRope inserted = large.insert(5000, small);
+        Assert.assertEquals("a", inserted.get(5000));
+        Assert.assertEquals("line 5000", inserted.get(5002));
+        assertBalanced(inserted);
+    }
+
+    @Test
+    public void testMapSharesUnchangedLeaves() {
+        List<String> lines = createLines(1000);
+        lines.set(999, "LAST");
+        LineRope rope = LineRope.of(lines);
+        Assert.assertSame(rope, rope.map(s -> s));
+        LineRope upper = rope.map(String::toUpperCase);
+        Assert.assertEquals("LINE 10", upper.get(10));
+        Assert.assertSame(upper, upper.map(String::toUpperCase));
+
+        LineRope mapped = rope.map(s -> s.equals("LAST") ? "last" : s);
+        Assert.assertEquals("last", mapped.get(999));
+        Assert.assertSame(((LineRope.Concat) rope).left, ((LineRope.Concat) mapped).left);
+    }
+
+    @Test
+    public void testParallelMap() {
+        List<String> lines = createLines(100000);
+        LineRope rope = LineRope.of(lines);
+
+        LineRope mapped = rope.parallelMap(s -> s.endsWith("7") ? s + "!" : s);
+        lines.replaceAll(s -> s.endsWith("7") ? s + "!" : s);
+        Assert.assertEquals(lines, mapped.toList());
+        assertBalanced(mapped);
+
+        Assert.assertSame(mapped, mapped.parallelMap(s -> s));
+    }
+
+    @Test
+    public void testDiff() {
+        LineRope rope = LineRope.of(createLines(10000));
+        LineRope mapped = rope.map(s -> s.endsWith("7") ? s.toUpperCase() : s).set(5000, "changed");
+
+        List<Integer> changed = new ArrayList<>();
+        List<Integer> compared = new ArrayList<>();
+        LineRope.diff(rope, mapped, (index, before, after) -> {
+            Assert.assertEquals(rope.get(index), before);
+            Assert.assertEquals(mapped.get(index), after);
+            changed.add(index);
+        });
+        for (int i = 0; i < rope.size(); i++) {
+            if (!rope.get(i).equals(mapped.get(i)))
+                compared.add(i);
+        }
+        Assert.assertEquals(compared, changed);
+
+        LineRope.diff(rope, rope, (index, before, after) -> Assert.fail());
+        LineRope.diff(rope, LineRope.of(createLines(10000)), (index, before, after) -> Assert.fail());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+public class LineStoreTest {
+
+    @Test
+    public void testListOperations() {
+        LineStore store = new LineStore();
+        List<String> expected = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            store.add("line " + i);
+            expected.add("line " + i);
+        }
+        store.add(10, "inserted");
+        expected.add(10, "inserted");
+        Assert.assertEquals("line 20", store.remove(21));
+        expected.remove(21);
+        store.subList(100, 200).clear();
+        expected.subList(100, 200).clear();
+        store.addAll(50, Arrays.asList("x", "y"));
+        expected.addAll(50, Arrays.asList("x", "y"));
+
+        Assert.assertEquals(expected, store);
+        Assert.assertEquals(expected.hashCode(), store.hashCode());
+
+        store.replaceAll(s -> s.replace("line", "LINE"));
+        expected.replaceAll(s -> s.replace("line", "LINE"));
+        Assert.assertEquals(expected, store);
+
+        store.clear();
+        Assert.assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void testSnapshot() {
+        LineStore store = new LineStore();
+        store.addAll(Arrays.asList("a", "b", "c"));
+        LineRope snapshot = store.getRope();
+
+        store.set(1, "B");
+        store.remove(0);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), snapshot.toList());
+        Assert.assertEquals(Arrays.asList("B", "c"), store);
+
+        store.setRope(snapshot);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), store);
+    }
+
+    @Test
+    public void testDeferred() {
+        LineStore store = new LineStore();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            store.add("Line " + i);
+            expected.add("Line " + i);
+        }
+        AtomicInteger calls = new AtomicInteger();
+        List<LineRope> transformed = new ArrayList<>();
+        store.setTransformListener((before, after) -> transformed.add(before));
+        LineRope original = store.getRope();
+
+        store.setDeferred(true);
+        store.transform(s -> {
+            calls.incrementAndGet();
+            return s.toUpperCase();
+        });
+        store.transform(AsciiLineOperators.replace("LINE", "row"));
+        store.transform(AsciiLineOperators.toLowerCase(Locale.ENGLISH));
+        Assert.assertEquals(3, store.getPendingStages());
+        Assert.assertEquals(10000, store.size());
+        Assert.assertEquals(0, calls.get());
+        Assert.assertTrue(transformed.isEmpty());
+
+        expected.replaceAll(s -> s.toUpperCase().replace("LINE", "row").toLowerCase(Locale.ENGLISH));
+        Assert.assertEquals(expected.get(0), store.get(0));
+        Assert.assertEquals(10000, calls.get());
+        Assert.assertEquals(0, store.getPendingStages());
+        Assert.assertEquals(expected, store);
+        Assert.assertEquals(Arrays.asList(original), transformed);
+
+        store.setDeferred(false);
+        store.transform(s -> s + "!");
+        Assert.assertEquals("row 1!", store.get(1));
+        Assert.assertEquals(2, transformed.size());
+    }
+
+    @Test
+    public void testFuseAscii() {
+        UnaryOperator<String> fused = LineStore.fuse(AsciiLineOperators.toUpperCase(Locale.ENGLISH),
+                AsciiLineOperators.replace("AB", "x"));
+        Assert.assertTrue(fused instanceof AsciiLineOperator);
+        Assert.assertEquals("xC", fused.apply("abc"));
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertArrayEquals("xC".getBytes(StandardCharsets.US_ASCII),
+                ((AsciiLineOperator) fused).applyAscii(data, 0, 3));
+        Assert.assertNull(((AsciiLineOperator) fused).applyAscii("#$".getBytes(StandardCharsets.US_ASCII), 0, 2));
+
+        Assert.assertFalse(LineStore.fuse(String::trim, AsciiLineOperators.replace("a", "b")) instanceof AsciiLineOperator);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LineStreamTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createSource(int count) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + i);
+        }
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        File source = createSource(100000);
+        LineStream stream = new LineStream(source, StandardCharsets.UTF_8);
+        stream.append("first appended");
+        stream.transform(AsciiLineOperators.toUpperCase(Locale.ENGLISH));
+        stream.append("second appended");
+        stream.transform(AsciiLineOperators.replace("LINE", "row"));
+        Assert.assertEquals(2, stream.getStageCount());
+        Assert.assertEquals(2, stream.getAppendedCount());
+
+        File output = temporaryFolder.newFile();
+        Assert.assertEquals(100002, stream.drain(output, new RopeWriter(StandardCharsets.UTF_8, "\n")));
+
+        List<String> written = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(100002, written.size());
+        Assert.assertEquals("row 0", written.get(0));
+        Assert.assertEquals("row 99999", written.get(99999));
+        Assert.assertEquals("FIRST APPENDED", written.get(100000));
+        Assert.assertEquals("second appended", written.get(100001));
+
+        // the source is not modified, and can be drained again in place
+        Assert.assertEquals("line 0", Files.readAllLines(source.toPath(), StandardCharsets.UTF_8).get(0));
+        stream.drain(source, new RopeWriter(StandardCharsets.UTF_8, "\n"));
+        Assert.assertEquals(written, Files.readAllLines(source.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        File source = temporaryFolder.newFile();
+        Files.write(source.toPath(), "\ufeffa\nb\n".getBytes(StandardCharsets.UTF_8));
+        for (LineStream stream : new LineStream[]{new LineStream(source, null), new LineStream(source, StandardCharsets.UTF_8)}) {
+            try (Stream<String> lines = stream.lines()) {
+                Assert.assertEquals(Arrays.asList("a", "b"), lines.collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        LineStream stream = new LineStream(createSource(10), StandardCharsets.UTF_8);
+        try (Stream<String> lines = stream.lines()) {
+            Assert.assertEquals(10, lines.count());
+        }
+
+        stream.transform(s -> s + "!");
+        try (Stream<String> lines = stream.lines()) {
+            stream.transform(s -> s + "?");
+            Assert.assertEquals(Arrays.asList("line 2!", "line 3!"), lines.skip(2).limit(2).collect(Collectors.toList()));
+        }
+        try (Stream<String> lines = stream.lines()) {
+            Assert.assertEquals("line 0!?", lines.findFirst().get());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MappedLineSourceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File write(String content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> readLines(String content) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        String[] contents = {"", "\n", "a", "a\n", "a\nb", "a\r\nb\r\n\n", "\u3042\u3044\nHello\n\nWorld"};
+        for (String content : contents) {
+            MappedLineSource source = MappedLineSource.open(write(content), StandardCharsets.UTF_8);
+            Assert.assertEquals(readLines(content), source.toRope().toList());
+            Assert.assertEquals(content.getBytes(StandardCharsets.UTF_8).length, source.getLength());
+        }
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        String[] contents = {"\ufeff", "\ufeffa", "\ufeffa\r\nb\n"};
+        for (String content : contents) {
+            File file = write(content);
+            Assert.assertEquals(readLines(content.substring(1)), MappedLineSource.open(file, null).toRope().toList());
+            Assert.assertEquals(readLines(content.substring(1)),
+                    MappedLineSource.open(file, StandardCharsets.UTF_8).toRope().toList());
+        }
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), "\u3042\n\u3044".getBytes(StandardCharsets.UTF_16LE));
+        try {
+            MappedLineSource.open(file, StandardCharsets.UTF_16LE);
+            Assert.fail();
+        } catch (IOException e) {
+            // 0x0a bytes are not line feeds in UTF-16
+        }
+
+        Files.write(file.toPath(), new byte[]{(byte) 0xfe, (byte) 0xff, 0, 'a', 0, '\n', 0, 'b'});
+        try {
+            MappedLineSource.open(file, null);
+            Assert.fail();
+        } catch (IOException e) {
+            // a byte order mark of UTF-16 is detected
+        }
+
+        Charset shiftJis = Charset.forName("Shift_JIS");
+        Files.write(file.toPath(), "\u3042\n\u3044".getBytes(shiftJis));
+        Assert.assertEquals(Arrays.asList("\u3042", "\u3044"), MappedLineSource.open(file, shiftJis).toRope().toList());
+    }
+
+    @Test
+    public void testSegmentsAndChunks() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.append("line \u00e9 ").append(i).append('\n');
+        }
+        String content = builder.toString();
+        MappedLineSource source = MappedLineSource.open(write(content), StandardCharsets.UTF_8, 1 << 12, 1 << 8);
+
+        Assert.assertEquals(20000, source.getLineCount());
+        Assert.assertEquals(readLines(content), source.toRope().toList());
+        Assert.assertEquals("line \u00e9 12345", source.line(12345));
+    }
+
+    @Test
+    public void testEditMappedRope() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("line ").append(i).append('\n');
+        }
+        LineRope rope = MappedLineSource.open(write(builder.toString()), StandardCharsets.UTF_8).toRope();
+
+        LineRope edited = rope.insert(5000, "inserted").remove(0).set(9999, "last");
+        Assert.assertEquals(10000, edited.size());
+        Assert.assertEquals("line 1", edited.get(0));
+        Assert.assertEquals("inserted", edited.get(4999));
+        Assert.assertEquals("line 5000", edited.get(5000));
+        Assert.assertEquals("last", edited.get(9999));
+
+        LineRope mapped = rope.map(s -> s.equals("line 7") ? "seven" : s);
+        Assert.assertEquals("seven", mapped.get(7));
+        Assert.assertEquals("line 8", mapped.get(8));
+        Assert.assertSame(((LineRope.Concat) rope).right, ((LineRope.Concat) mapped).right);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class PackedLeafTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static LineRope compact(List<String> lines) {
+        LineRope.Builder builder = new LineRope.Builder(true);
+        for (String one : lines) {
+            builder.add(one);
+        }
+        return builder.build();
+    }
+
+    private static List<String> createLines(int count, String extra) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("Line " + extra + i);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testPack() {
+        String[] lines = {"ascii", "", "caf\u00e9"};
+        PackedLeaf latin1 = PackedLeaf.pack(lines, 3);
+        Assert.assertTrue(latin1.latin1);
+        Assert.assertFalse(latin1.ascii);
+        Assert.assertEquals(9, latin1.byteLength());
+        Assert.assertEquals("caf\u00e9", latin1.line(2));
+
+        PackedLeaf utf8 = PackedLeaf.pack(new String[]{"\u3042\u3044", "x"}, 2);
+        Assert.assertFalse(utf8.latin1);
+        Assert.assertEquals("\u3042\u3044", utf8.line(0));
+        Assert.assertEquals("x", utf8.line(1));
+
+        PackedLeaf ascii = PackedLeaf.pack(new String[]{"abc", "def", "unused"}, 2);
+        Assert.assertTrue(ascii.ascii);
+        Assert.assertEquals(2, ascii.size());
+        Assert.assertTrue(ascii.isEncodedAs(StandardCharsets.UTF_8));
+        Assert.assertFalse(latin1.isEncodedAs(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        PackedLeaf latin1 = PackedLeaf.pack(new String[]{"skip", "ascii", "", "caf\u00e9"}, 4);
+        PackedLeaf utf8 = PackedLeaf.pack(new String[]{"\u3042\u3044", "x"}, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        ((PackedLeaf) latin1.slice(1, 4)).writeTo(output);
+        utf8.writeTo(output);
+
+        ByteBuffer input = ByteBuffer.wrap(bytes.toByteArray());
+        PackedLeaf restored = PackedLeaf.readFrom(input);
+        Assert.assertEquals(3, restored.size());
+        Assert.assertEquals(9, restored.data.length);
+        Assert.assertTrue(restored.latin1);
+        Assert.assertFalse(restored.ascii);
+        Assert.assertEquals(Arrays.asList("ascii", "", "caf\u00e9"), Arrays.asList(restored.line(0), restored.line(1), restored.line(2)));
+
+        restored = PackedLeaf.readFrom(input);
+        Assert.assertFalse(restored.latin1);
+        Assert.assertEquals("\u3042\u3044", restored.line(0));
+        Assert.assertEquals("x", restored.line(1));
+        Assert.assertFalse(input.hasRemaining());
+
+        try {
+            PackedLeaf.readFrom(ByteBuffer.wrap(Arrays.copyOf(bytes.toByteArray(), 12)));
+            Assert.fail();
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testEditCompactRope() {
+        List<String> expected = createLines(10000, "\u00e9");
+        LineRope rope = compact(expected);
+        Assert.assertEquals(expected, rope.toList());
+
+        rope = rope.insert(4095, "inserted").remove(100, 5000).set(0, "\u3042");
+        expected.add(4095, "inserted");
+        expected.subList(100, 5000).clear();
+        expected.set(0, "\u3042");
+        Assert.assertEquals(expected, rope.toList());
+    }
+
+    @Test
+    public void testMap() {
+        List<String> expected = createLines(10000, "");
+        LineRope rope = compact(expected);
+
+        LineRope upper = rope.parallelMap(AsciiLineOperators.toUpperCase(Locale.ENGLISH));
+        expected.replaceAll(s -> s.toUpperCase(Locale.ENGLISH));
+        Assert.assertEquals(expected, upper.toList());
+        Assert.assertSame(upper, upper.map(AsciiLineOperators.toUpperCase(Locale.ENGLISH)));
+
+        LineRope replaced = upper.map(AsciiLineOperators.replace("LINE 1", "\u3042"));
+        expected.replaceAll(s -> s.replace("LINE 1", "\u3042"));
+        Assert.assertEquals(expected, replaced.toList());
+
+        // the string path packs the results again
+        LineRope.Concat concat = (LineRope.Concat) replaced;
+        while (concat.left instanceof LineRope.Concat) {
+            concat = (LineRope.Concat) concat.left;
+        }
+        Assert.assertTrue(concat.left instanceof PackedLeaf);
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        List<String> lines = createLines(5000, "");
+        lines.addAll(createLines(5000, "\u00e9"));
+        File file = temporaryFolder.newFile();
+        new RopeWriter(StandardCharsets.UTF_8, "\n").write(compact(lines), file);
+        Assert.assertEquals(lines, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+
+        new RopeWriter(StandardCharsets.ISO_8859_1, "\n").write(compact(Arrays.asList("caf\u00e9", "abc")), file);
+        Assert.assertArrayEquals(new byte[]{'c', 'a', 'f', (byte) 0xe9, '\n', 'a', 'b', 'c', '\n'},
+                Files.readAllBytes(file.toPath()));
+    }
+}
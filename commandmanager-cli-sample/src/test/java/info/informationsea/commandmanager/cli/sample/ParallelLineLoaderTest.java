@@ -0,0 +1,181 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+@Slf4j
+public class ParallelLineLoaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String[] TERMINATORS = {"\n", "\r\n", "\r"};
+
+    private File createFile(int count, long seed, Charset charset, boolean terminated) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                builder.append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+            if (random.nextInt(10) > 0)
+                builder.append("line \u3042\u00e9 ").append(i).append(" ").append(random.nextInt());
+        }
+        if (terminated)
+            builder.append("\n");
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), builder.toString().getBytes(charset));
+        return file;
+    }
+
+    private static List<String> readLines(File file, Charset charset) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        for (boolean terminated : new boolean[]{true, false}) {
+            File file = createFile(20000, 1, StandardCharsets.UTF_8, terminated);
+            List<String> expected = readLines(file, StandardCharsets.UTF_8);
+
+            Assert.assertEquals(expected, new ParallelLineLoader(StandardCharsets.UTF_8, 1000, false).load(file).toList());
+            Assert.assertEquals(expected, new ParallelLineLoader(StandardCharsets.UTF_8, 1000, true).load(file).toList());
+            Assert.assertEquals(expected, new ParallelLineLoader(StandardCharsets.UTF_8).load(file).toList());
+        }
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        Charset shiftJis = Charset.forName("Shift_JIS");
+        File file = createFile(5000, 2, shiftJis, true);
+        Assert.assertEquals(readLines(file, shiftJis), new ParallelLineLoader(shiftJis, 500, false).load(file).toList());
+
+        File utf16 = createFile(5000, 3, StandardCharsets.UTF_16BE, true);
+        Assert.assertFalse(ParallelLineLoader.isLineFeedSafe(StandardCharsets.UTF_16BE));
+        Assert.assertEquals(readLines(utf16, StandardCharsets.UTF_16BE),
+                new ParallelLineLoader(StandardCharsets.UTF_16BE, 500, false).load(utf16).toList());
+    }
+
+    @Test
+    public void testDecodeStream() throws Exception {
+        // chunks larger than the limit are decoded from a stream in pieces
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16BE}) {
+            for (boolean terminated : new boolean[]{true, false}) {
+                File file = createFile(30000, 6, charset, terminated);
+                Assert.assertEquals(readLines(file, charset),
+                        new ParallelLineLoader(charset, 100000, false, 1000).load(file).toList());
+            }
+        }
+
+        // CRLF split between pieces is one line terminator
+        char[] longLine = new char[ParallelLineLoader.SCAN_BUFFER_SIZE - 1];
+        Arrays.fill(longLine, 'a');
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), (new String(longLine) + "\r\nb").getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(Arrays.asList(new String(longLine), "b"),
+                new ParallelLineLoader(StandardCharsets.UTF_8, 100000, false, 1000).load(file).toList());
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        File utf8 = temporaryFolder.newFile();
+        Files.write(utf8.toPath(), new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'a', '\n', 'b'});
+        Assert.assertEquals(Arrays.asList("a", "b"), new ParallelLineLoader(null).load(utf8).toList());
+        Assert.assertEquals(Arrays.asList("a", "b"), new ParallelLineLoader(StandardCharsets.UTF_8).load(utf8).toList());
+
+        File utf16 = temporaryFolder.newFile();
+        Files.write(utf16.toPath(), new byte[]{(byte) 0xff, (byte) 0xfe, 'a', 0, '\n', 0, 'b', 0});
+        Assert.assertEquals(Arrays.asList("a", "b"), new ParallelLineLoader(null).load(utf16).toList());
+
+        File empty = temporaryFolder.newFile();
+        Assert.assertEquals(0, new ParallelLineLoader(null).load(empty).size());
+    }
+
+    @Test
+    public void testBoundaries() throws Exception {
+        File file = createFile(10000, 4, StandardCharsets.UTF_8, false);
+        byte[] data = Files.readAllBytes(file.toPath());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<Long> boundaries = new ParallelLineLoader(null, 4096, false).findBoundaries(channel, 0, data.length);
+            Assert.assertEquals(Long.valueOf(0), boundaries.get(0));
+            Assert.assertEquals(Long.valueOf(data.length), boundaries.get(boundaries.size() - 1));
+            Assert.assertTrue(boundaries.size() > 10);
+            for (int i = 1; i < boundaries.size() - 1; i++) {
+                Assert.assertEquals('\n', data[(int) (long) boundaries.get(i) - 1]);
+                Assert.assertTrue(boundaries.get(i) - boundaries.get(i - 1) >= 4096);
+            }
+        }
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+
+        File file = createFile(3000000, 5, StandardCharsets.UTF_8, true);
+        double megabytes = file.length() / 1024.0 / 1024.0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            LineRope.Builder builder = new LineRope.Builder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    builder.add(line);
+                }
+            }
+            LineRope sequential = builder.build();
+            double sequentialSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            LineRope parallel = new ParallelLineLoader(StandardCharsets.UTF_8).load(file);
+            double parallelSeconds = (System.nanoTime() - start) / 1e9;
+
+            log.info("round {}: BufferedReader {} MB/s, ParallelLineLoader {} MB/s", round,
+                    String.format("%.1f", megabytes / sequentialSeconds), String.format("%.1f", megabytes / parallelSeconds));
+            Assert.assertEquals(sequential.size(), parallel.size());
+            Iterator<String> expected = sequential.iterator();
+            for (String one : parallel) {
+                Assert.assertEquals(expected.next(), one);
+            }
+        }
+    }
+}
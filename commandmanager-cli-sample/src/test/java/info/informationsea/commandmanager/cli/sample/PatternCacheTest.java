@@ -0,0 +1,40 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+public class PatternCacheTest {
+
+    @Test
+    public void testCache() {
+        PatternCache cache = new PatternCache(2);
+        Pattern a = cache.get("a+");
+        Assert.assertSame(a, cache.get("a+"));
+
+        cache.get("b+");
+        cache.get("a+");
+        cache.get("c+"); // b+ is evicted
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(a, cache.get("a+"));
+        Assert.assertTrue(cache.get("b+").matcher("bbb").matches());
+    }
+}
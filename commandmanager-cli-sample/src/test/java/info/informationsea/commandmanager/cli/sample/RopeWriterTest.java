@@ -0,0 +1,159 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RopeWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        List<String> lines = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            lines.add("line \u3042 " + i);
+            expected.append("line \u3042 ").append(i).append('\n');
+        }
+
+        File file = temporaryFolder.newFile();
+        new RopeWriter(StandardCharsets.UTF_8, "\n").write(LineRope.of(lines), file);
+        Assert.assertEquals(expected.toString(), read(file));
+        Assert.assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testWriteMapped() throws Exception {
+        StringBuilder original = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            original.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        original.append("last");
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), original.toString().getBytes(StandardCharsets.UTF_8));
+
+        LineStore store = new LineStore();
+        store.setRope(MappedLineSource.open(file, StandardCharsets.UTF_8).toRope());
+        store.set(5000, "modified");
+        store.add(0, "first");
+
+        RopeWriter writer = new RopeWriter(StandardCharsets.UTF_8, "\n");
+        writer.write(store.getRope(), file);
+
+        String expected = "first\n" + original.toString().
+                replace("line 5000\n", "modified\n") + "\n";
+        Assert.assertEquals(expected, read(file));
+
+        // lines are still readable after the mapped file is replaced
+        Assert.assertEquals("line 9999", store.get(10000));
+
+        writer.write(store.getRope(), file);
+        Assert.assertEquals(expected, read(file));
+    }
+
+    @Test
+    public void testWriteUTF16() throws Exception {
+        List<String> lines = Arrays.asList("line \u3042", "", "\ud842\udfb7 last");
+        File file = temporaryFolder.newFile();
+        RopeWriter writer = new RopeWriter(StandardCharsets.UTF_16, "\n");
+
+        writer.write(LineRope.of(lines), file);
+        Assert.assertEquals(lines, Files.readAllLines(file.toPath(), StandardCharsets.UTF_16));
+        // only one byte order mark at the start of the file
+        Assert.assertEquals(2 + (String.join("\n", lines).length() + 1) * 2, file.length());
+
+        Assert.assertEquals(3, writer.write(lines.iterator(), file));
+        Assert.assertEquals(lines, Files.readAllLines(file.toPath(), StandardCharsets.UTF_16));
+        Assert.assertEquals(2 + (String.join("\n", lines).length() + 1) * 2, file.length());
+    }
+
+    @Test
+    public void testUnmappable() throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), Arrays.asList("original"), StandardCharsets.UTF_8);
+        try {
+            new RopeWriter(StandardCharsets.US_ASCII, "\n").write(LineRope.of(Arrays.asList("ok", "\u3042")), file);
+            Assert.fail();
+        } catch (UnmappableCharacterException e) {
+            // the original file is kept
+            Assert.assertEquals("original\n", read(file));
+            Assert.assertEquals(1, temporaryFolder.getRoot().list().length);
+        }
+    }
+
+    @Test
+    public void testWriteIterator() throws Exception {
+        File file = temporaryFolder.newFile();
+        RopeWriter writer = new RopeWriter(StandardCharsets.UTF_8, "\r\n");
+        Assert.assertEquals(3, writer.write(Arrays.asList("a", "\u3042", "").iterator(), file));
+        Assert.assertEquals("a\r\n\u3042\r\n\r\n", read(file));
+
+        Assert.assertEquals(0, writer.write(new ArrayList<String>().iterator(), file));
+        Assert.assertEquals("", read(file));
+        Assert.assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testKeepPermissions() throws Exception {
+        File file = temporaryFolder.newFile();
+        Assume.assumeNotNull(Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class));
+        Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+
+        new RopeWriter(StandardCharsets.UTF_8, "\n").write(LineRope.of(Arrays.asList("a", "b")), file);
+        Assert.assertEquals("a\nb\n", read(file));
+        Assert.assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+    }
+
+    @Test
+    public void testSymbolicLink() throws Exception {
+        File target = temporaryFolder.newFile();
+        Path link = temporaryFolder.getRoot().toPath().resolve("link");
+        try {
+            Files.createSymbolicLink(link, target.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            Assume.assumeNoException(e);
+        }
+
+        new RopeWriter(StandardCharsets.UTF_8, "\n").write(Arrays.asList("a", "b").iterator(), link.toFile());
+        Assert.assertTrue(Files.isSymbolicLink(link));
+        Assert.assertEquals("a\nb\n", read(target));
+        Assert.assertEquals(2, temporaryFolder.getRoot().list().length);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+public class TrigramIndexTest {
+
+    private static final String[] WORDS = {"apple", "Banana", "cherry", "durian", "elder", "fig", "grape", "\u00c4pfel"};
+
+    private static LineRope createRope(int count, long seed) {
+        Random random = new Random(seed);
+        LineRope.Builder builder = new LineRope.Builder(seed % 2 == 0);
+        for (int i = 0; i < count; i++) {
+            builder.add(WORDS[random.nextInt(WORDS.length)] + " " + i + " " + WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.build();
+    }
+
+    private static void assertSearch(TrigramIndex index, String literal, Predicate<String> matcher) {
+        Assert.assertArrayEquals(TrigramIndex.scan(index.getRope(), matcher),
+                index.search(Collections.singletonList(literal), matcher));
+    }
+
+    @Test
+    public void testSearch() {
+        TrigramIndex index = TrigramIndex.build(createRope(200000, 1));
+        Assert.assertEquals(200000, index.getRope().size());
+        Assert.assertTrue(index.getTrigramCount() > 0);
+
+        assertSearch(index, "cherry 1234", s -> s.contains("cherry 1234"));
+        assertSearch(index, "anana", s -> s.contains("anana"));
+        assertSearch(index, "APPLE", s -> s.toLowerCase().contains("apple"));
+        assertSearch(index, "\u00e4pf", s -> s.contains("\u00c4pf"));
+        assertSearch(index, "ap", s -> s.contains("ap"));
+        assertSearch(index, "kiwi", s -> s.contains("kiwi"));
+
+        int[] found = index.search(Collections.singletonList("fig 777 "), s -> s.contains("fig 777 "));
+        for (int one : found) {
+            Assert.assertTrue(index.getRope().get(one).contains("fig 777 "));
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        LineRope rope = createRope(50000, 2);
+        TrigramIndex index = TrigramIndex.build(rope);
+
+        LineRope upper = rope.parallelMap(s -> s.toUpperCase(Locale.ENGLISH));
+        index.update(upper);
+        Assert.assertEquals(0, index.getStaleIds());
+        Assert.assertSame(upper, index.getRope());
+        assertSearch(index, "ELDER 4", s -> s.contains("ELDER 4"));
+
+        LineRope replaced = upper.parallelMap(s -> s.replace("GRAPE", "kiwi"));
+        index.update(replaced);
+        Assert.assertTrue(index.getStaleIds() > 0);
+        assertSearch(index, "kiwi", s -> s.contains("kiwi"));
+        assertSearch(index, "GRAPE", s -> s.contains("GRAPE"));
+
+        LineRope inserted = replaced.insert(100, "a new kiwi line");
+        index.insert(100, replaced, inserted);
+        assertSearch(index, "kiwi", s -> s.contains("kiwi"));
+        Assert.assertEquals(100, index.search(Collections.singletonList("new kiwi"), s -> s.contains("new kiwi"))[0]);
+
+        // lines which are not indexed are reflected by the insertion
+        LineRope other = inserted.set(0, "an unindexed kiwi line");
+        LineRope insertedToOther = other.insert(0, "first");
+        index.insert(0, other, insertedToOther);
+        Assert.assertSame(insertedToOther, index.getRope());
+        assertSearch(index, "kiwi", s -> s.contains("kiwi"));
+
+        LineRope removed = insertedToOther.remove(0, 10);
+        index.update(removed);
+        Assert.assertEquals(0, index.getStaleIds());
+        assertSearch(index, "kiwi", s -> s.contains("kiwi"));
+    }
+
+    @Test
+    public void testCompaction() {
+        LineRope rope = createRope(1000, 3);
+        TrigramIndex index = TrigramIndex.build(rope);
+        long postings = index.getPostingCount();
+
+        for (int i = 0; i < 3; i++) {
+            int round = i;
+            rope = rope.map(s -> s + round);
+            index.update(rope);
+        }
+        Assert.assertEquals(3000, index.getStaleIds());
+        Assert.assertTrue(index.getPostingCount() > postings * 2);
+
+        assertSearch(index, "cherry", s -> s.contains("cherry"));
+        Assert.assertEquals(0, index.getStaleIds());
+        Assert.assertTrue(index.getPostingCount() < postings * 2);
+        assertSearch(index, "12", s -> s.contains("12"));
+    }
+
+    @Test
+    public void testIntersect() {
+        int[] ids = {1, 3, 5, 7, 9, 11};
+        Assert.assertEquals(3, TrigramIndex.intersect(ids, ids.length, new int[]{0, 3, 4, 9, 11, 12}, 6));
+        Assert.assertArrayEquals(new int[]{3, 9, 11}, Arrays.copyOf(ids, 3));
+        Assert.assertEquals(0, TrigramIndex.intersect(ids, 3, new int[]{4}, 1));
+    }
+
+    @Test
+    public void testRequiredLiterals() {
+        Assert.assertEquals(Arrays.asList("hello world"), TrigramIndex.requiredLiterals("hello world"));
+        Assert.assertEquals(Arrays.asList("foo", "bar"), TrigramIndex.requiredLiterals("^foo[0-9]+bar$"));
+        Assert.assertEquals(Arrays.asList("ab", "de"), TrigramIndex.requiredLiterals("abc?de"));
+        Assert.assertEquals(Arrays.asList("abc", "d"), TrigramIndex.requiredLiterals("abc\\d+d"));
+        Assert.assertEquals(Arrays.asList("a.b"), TrigramIndex.requiredLiterals("a\\.b"));
+        Assert.assertEquals(Arrays.asList("x*y"), TrigramIndex.requiredLiterals("\\Qx*y\\E"));
+        Assert.assertEquals(Arrays.asList("ab", "c"), TrigramIndex.requiredLiterals("ab(cd)?c"));
+        Assert.assertEquals(Arrays.asList("abc"), TrigramIndex.requiredLiterals("abcd{0,2}"));
+        Assert.assertEquals(Collections.emptyList(), TrigramIndex.requiredLiterals("foo|bar"));
+        Assert.assertEquals(Collections.emptyList(), TrigramIndex.requiredLiterals("(?i)foo"));
+        Assert.assertEquals(Collections.emptyList(), TrigramIndex.requiredLiterals("\\x41BC"));
+    }
+
+    @Test
+    public void testFold() {
+        Assert.assertTrue(TrigramIndex.equalsFolded("Hello", "hELLO"));
+        Assert.assertTrue(TrigramIndex.equalsFolded("\u00c4pfel", "\u00e4PFEL"));
+        Assert.assertFalse(TrigramIndex.equalsFolded("Hello", "Hell0"));
+        Assert.assertFalse(TrigramIndex.equalsFolded("Hello", "Hell"));
+    }
+}
@@ -30,10 +30,13 @@ import org.kohsuke.args4j.spi.OptionHandler;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 
 /**
- * Command Completer for JLine
+ * Command Completer for JLine.
+ * Command names, options and candidates are matched with {@code FuzzyMatcher},
+ * and command names are ranked with the usage statistics of the console.
  * @author Yasunobu OKAMURA
  */
 @Slf4j
@@ -42,8 +45,8 @@ public class CLICommandCompleter implements Completer {
     @Getter
     private CLICommandConsole commandConsole;
 
-    private Map<String, StringsCompleter> optionCompleter = new HashMap<>();
-    private StringsCompleter firstCommandCompleter;
+    private Map<String, Completer> optionCompleter = new HashMap<>();
+    private Completer firstCommandCompleter;
 
     public CLICommandCompleter(CLICommandConsole manager) {
         commandConsole = manager;
@@ -52,11 +55,11 @@ public class CLICommandCompleter implements Completer {
         for (Map.Entry<String, Class> entry : map.entrySet()) {
 
             CommandManager.OptionInfo optionInfo = commandConsole.getCommandManager().getOptionInfoForName(entry.getKey());
-            optionCompleter.put(entry.getKey(), new StringsCompleter(optionInfo.getOptions().values().stream().map(o -> o.option.toString()).toArray(String[]::new)));
+            optionCompleter.put(entry.getKey(), new FuzzyCompleter(optionInfo.getOptions().values().stream().map(o -> o.option.toString()).collect(Collectors.toList())));
         }
 
         //log.info("keys {}", (Object)map.keySet().stream().toArray(String[]::new));
-        firstCommandCompleter = new StringsCompleter(map.keySet().stream().toArray(String[]::new));
+        firstCommandCompleter = new FuzzyCompleter(map.keySet(), commandConsole.getUsageStatistics());
     }
 
     @Override
@@ -93,7 +96,7 @@ public class CLICommandCompleter implements Completer {
                     }
 
                     if (optionCandidates != null) {
-                        c = new StringsCompleter(optionCandidates);
+                        c = new FuzzyCompleter(optionCandidates);
                     }
                 }
 
@@ -129,7 +132,7 @@ public class CLICommandCompleter implements Completer {
                     argumentCandidates = CommandManager.OptionInfo.candidateOptions(info.getArguments().get(argIndex));
                 }
                 if (argumentCandidates != null) {
-                    c = new StringsCompleter(argumentCandidates);
+                    c = new FuzzyCompleter(argumentCandidates);
                 }
             }
         } catch (IndexOutOfBoundsException e) {
@@ -20,23 +20,30 @@ package info.informationsea.commandmanager.cli;
 
 import info.informationsea.commandmanager.core.CommandManager;
 import info.informationsea.commandmanager.core.CommandResult;
+import info.informationsea.commandmanager.core.ContextSnapshot;
 import info.informationsea.commandmanager.core.ManagedCommand;
+import info.informationsea.commandmanager.core.SnapshotableContext;
 import jline.console.ConsoleReader;
+import jline.console.history.History;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.ListIterator;
 
 /**
  * Command Manager for Command Line Interface.
  *
- * This command manager provides two built-in commands, "help" and "source". "help" command shows usage of commands.
- * "source" command read a script file and run commands.
+ * This command manager provides five built-in commands, "help", "source", "snapshot", "restore" and "history".
+ * "help" command shows usage of commands. "source" command read a script file and run commands.
+ * "snapshot" and "restore" commands save and restore the context with {@code ContextSnapshot}
+ * if the context is a {@code SnapshotableContext}. "history" command lists and searches the command history.
  * @author Yasunobu OKAMURA
  */
 @Slf4j
@@ -45,6 +52,55 @@ public class CLICommandConsole {
     @Getter
     private CommandManager commandManager;
 
+    @Getter
+    private CommandUsageStatistics usageStatistics = new CommandUsageStatistics();
+
+    /**
+     * A file to persist usage statistics between sessions.
+     * If this file is set, {@code startConsole} loads statistics at start and saves them at exit.
+     */
+    @Getter @Setter
+    private File usageStatisticsFile = null;
+
+    /**
+     * A snapshot file to restore the context automatically.
+     * If this file is set and exists, {@code startConsole} restores the context from it at start.
+     */
+    @Getter @Setter
+    private File snapshotFile = null;
+
+    /**
+     * A directory to persist command history between sessions.
+     * If this directory is set, {@code startConsole} uses {@code CommandHistory} stored in it.
+     */
+    @Getter @Setter
+    private File historyDirectory = null;
+
+    /**
+     * Command history of the console. This is only available while the console is running with a history directory.
+     */
+    @Getter
+    private CommandHistory history = null;
+
+    /**
+     * A recorder to record executed commands, or null not to record.
+     * The recorder is not closed by the console.
+     */
+    @Getter @Setter
+    private SessionRecorder sessionRecorder = null;
+
+    /**
+     * A writer to print results of commands. {@code startConsole} replaces it with the writer of the console.
+     */
+    @Getter @Setter
+    private PrintWriter output = new PrintWriter(System.out, true);
+
+    /**
+     * A pager for {@code CLIPageableCommand}. This is only available while the console is running.
+     */
+    @Getter
+    private CLIPager pager = null;
+
     /**
      * Create CLICommandConsole to start console prompt.
      * @param commandManager A command manager object.
@@ -53,6 +109,9 @@ public class CLICommandConsole {
         this.commandManager = commandManager;
         commandManager.addCommand("help", CLIHelpCommand.class);
         commandManager.addCommand("source", CLISourceCommand.class);
+        commandManager.addCommand("snapshot", CLISnapshotCommand.class);
+        commandManager.addCommand("restore", CLIRestoreCommand.class);
+        commandManager.addCommand("history", CLIHistoryCommand.class);
     }
 
     /**
@@ -109,10 +168,28 @@ public class CLICommandConsole {
         if (managedCommand == null) {
             throw new IllegalArgumentException("Command is not found");
         }
-        CommandResult result = managedCommand.execute();
+        usageStatistics.record(args[0]);
+        if (sessionRecorder != null) {
+            sessionRecorder.record(args);
+        }
+
+        if (pager != null && managedCommand instanceof CLIPageableCommand) {
+            CLIPager.PageSource source = commandManager.callWithLock(managedCommand,
+                    ((CLIPageableCommand) managedCommand)::getPageSource);
+            if (source != null) {
+                pager.show(source);
+                return;
+            }
+        }
+        if (managedCommand instanceof CLIStreamingCommand) {
+            ((CLIStreamingCommand) managedCommand).setOutput(output);
+        }
+
+        CommandResult result = commandManager.execute(managedCommand);
         if (result.getResult() != null) {
-            System.out.println(result.getResult());
+            output.println(result.getResult());
         }
+        output.flush();
     }
 
     /**
@@ -177,24 +254,68 @@ public class CLICommandConsole {
      * @throws IOException console reade may throw IOException
      */
     public void startConsole(ConsoleReader consoleReader) throws IOException {
+        if (usageStatisticsFile != null && usageStatisticsFile.isFile()) {
+            usageStatistics.load(usageStatisticsFile);
+        }
+        if (snapshotFile != null && snapshotFile.isFile()) {
+            restoreSnapshot();
+        }
+
         consoleReader.addCompleter(new CLICommandCompleter(this));
-        String line;
-        out : while ((line = consoleReader.readLine("> ")) != null) {
-            List<String> args = ShellParser.parseShellLine(line);
-            if (args.size() == 0) continue;
-            switch (args.get(0)) {
-                case "clear":
-                    consoleReader.clearScreen();
-                    break;
-                case "exit":
-                    break out;
-                default:
-                    try {
-                        execute(args.toArray(new String[args.size()]));
-                    } catch (Exception e) {
-                        log.info("Execute Error", e);
-                    }
+        consoleReader.setCompletionHandler(new FuzzyCompletionHandler());
+        if (historyDirectory != null) {
+            history = new CommandHistory(historyDirectory);
+            consoleReader.setHistory(history);
+        }
+        PrintWriter originalOutput = output;
+        output = new PrintWriter(consoleReader.getOutput(), true);
+        pager = new CLIPager(consoleReader);
+        try {
+            String line;
+            out:
+            while ((line = consoleReader.readLine("> ")) != null) {
+                List<String> args = ShellParser.parseShellLine(line);
+                if (args.size() == 0) continue;
+                switch (args.get(0)) {
+                    case "clear":
+                        consoleReader.clearScreen();
+                        break;
+                    case "exit":
+                        break out;
+                    default:
+                        try {
+                            execute(args.toArray(new String[args.size()]));
+                        } catch (Exception e) {
+                            log.info("Execute Error", e);
+                        }
+                }
+            }
+        } finally {
+            output.flush();
+            output = originalOutput;
+            pager = null;
+            if (history != null) {
+                history.close();
+                history = null;
             }
+            if (usageStatisticsFile != null) {
+                usageStatistics.save(usageStatisticsFile);
+            }
+        }
+    }
+
+    private void restoreSnapshot() {
+        Object context = commandManager.getContext();
+        if (!(context instanceof SnapshotableContext)) {
+            log.warn("Context does not support snapshot");
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            ContextSnapshot.restore((SnapshotableContext) context, snapshotFile);
+            log.info("Restored {} in {} ms", snapshotFile, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.warn("Cannot restore snapshot", e);
         }
     }
 
@@ -262,6 +383,10 @@ public class CLICommandConsole {
         }
     }
 
+    /**
+     * Execute a script. Commands in the script are executed while this command holds the context lock,
+     * so a script is not interleaved with other commands.
+     */
     public static class CLISourceCommand extends CLIBuiltinCommand {
 
         @Argument (required = true)
@@ -273,4 +398,80 @@ public class CLICommandConsole {
             return new CommandResult(null, CommandResult.ResultState.SUCCESS);
         }
     }
+
+    public static class CLISnapshotCommand extends CLIBuiltinCommand {
+
+        @Argument (required = true, usage = "Snapshot file")
+        private File file;
+
+        @Option(name = "-compress", usage = "Compress the snapshot")
+        private boolean compress = false;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            Object context = commandConsole.getCommandManager().getContext();
+            if (!(context instanceof SnapshotableContext))
+                return new CommandResult("Context does not support snapshot", CommandResult.ResultState.ERROR);
+            ContextSnapshot.Header header = ContextSnapshot.write((SnapshotableContext) context, file, compress);
+            return new CommandResult(String.format("saved %d bytes", header.getStoredLength()), CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    public static class CLIRestoreCommand extends CLIBuiltinCommand {
+
+        @Argument (required = true, usage = "Snapshot file")
+        private File file;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            Object context = commandConsole.getCommandManager().getContext();
+            if (!(context instanceof SnapshotableContext))
+                return new CommandResult("Context does not support snapshot", CommandResult.ResultState.ERROR);
+            ContextSnapshot.Header header = ContextSnapshot.restore((SnapshotableContext) context, file);
+            return new CommandResult(String.format("restored %d bytes", header.getLength()), CommandResult.ResultState.SUCCESS);
+        }
+    }
+
+    public static class CLIHistoryCommand extends CLIBuiltinCommand {
+
+        @Argument(usage = "A string to search")
+        private String query = null;
+
+        @Option(name = "-prefix", usage = "Search commands starting with the string")
+        private boolean prefix = false;
+
+        @Option(name = "-count", usage = "Maximum number of commands to show")
+        private int count = 20;
+
+        @Option(name = "-clear", usage = "Remove all commands")
+        private boolean clear = false;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            CommandHistory history = commandConsole.getHistory();
+            if (history == null)
+                return new CommandResult("History is not enabled", CommandResult.ResultState.ERROR);
+            if (clear) {
+                history.clear();
+                return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+            }
+
+            List<History.Entry> entries;
+            if (query == null) {
+                entries = new ArrayList<>();
+                ListIterator<History.Entry> iterator = history.entries(history.index());
+                while (iterator.hasPrevious() && entries.size() < count) {
+                    entries.add(iterator.previous());
+                }
+            } else {
+                entries = history.search(query, prefix, count);
+            }
+
+            StringBuilder builder = new StringBuilder();
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                builder.append(entries.get(i)).append("\n");
+            }
+            return new CommandResult(builder.toString(), CommandResult.ResultState.SUCCESS);
+        }
+    }
 }
@@ -0,0 +1,38 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import info.informationsea.commandmanager.core.ManagedCommand;
+
+/**
+ * A command whose output can be shown page by page in the interactive console.
+ * {@code CLICommandConsole} asks the command for a page source instead of executing it, and shows the source
+ * with {@code CLIPager}. Only visible pages are fetched from the source.
+ * The source is prepared with the lock declared by the command, and pages are fetched after the lock is released,
+ * so the source should only refer to immutable data.
+ * @author Yasunobu OKAMURA
+ */
+public interface CLIPageableCommand extends ManagedCommand {
+    /**
+     * Get lines to show with the pager.
+     * @throws Exception failed to prepare lines
+     * @return a page source, or null to execute this command as usual
+     */
+    CLIPager.PageSource getPageSource() throws Exception;
+}
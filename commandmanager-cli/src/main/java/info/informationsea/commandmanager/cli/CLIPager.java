@@ -0,0 +1,115 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import jline.console.ConsoleReader;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A simple pager for the console like "more".
+ *
+ * Lines are fetched from a {@code PageSource} one page at a time, so lines which are never shown are never
+ * fetched. Space shows the next page, Enter shows the next line, and q quits.
+ * @author Yasunobu OKAMURA
+ */
+public class CLIPager {
+
+    static final String PROMPT = "--More--";
+    static final int DEFAULT_PAGE_HEIGHT = 24;
+
+    /**
+     * Lines shown by the pager.
+     */
+    public interface PageSource {
+        /**
+         * @return a number of lines
+         */
+        int size();
+
+        /**
+         * Get lines in the range.
+         * @param from first line of the range, inclusive
+         * @param to last line of the range, exclusive
+         * @return lines in the range
+         */
+        List<String> lines(int from, int to);
+    }
+
+    private final ConsoleReader consoleReader;
+
+    /**
+     * A number of lines in a page. If zero or negative, the terminal height is used.
+     */
+    @Getter @Setter
+    private int pageHeight = 0;
+
+    public CLIPager(ConsoleReader consoleReader) {
+        this.consoleReader = consoleReader;
+    }
+
+    /**
+     * Show lines page by page.
+     * @param source lines to show
+     * @throws IOException failed to read or write the console
+     * @return a number of shown lines
+     */
+    public int show(PageSource source) throws IOException {
+        int size = source.size();
+        int height = resolvePageHeight();
+        int shown = 0;
+        int next = Math.min(height, size);
+
+        while (true) {
+            for (String line : source.lines(shown, next)) {
+                consoleReader.println(line);
+            }
+            shown = next;
+            if (shown >= size)
+                break;
+
+            String prompt = String.format("%s (%d%%)", PROMPT, (int) (100L * shown / size));
+            consoleReader.print(prompt);
+            consoleReader.flush();
+            int key = consoleReader.readCharacter();
+            consoleReader.print("\r" + String.format("%" + prompt.length() + "s", "") + "\r");
+
+            if (key == ' ') {
+                next = Math.min(shown + height, size);
+            } else if (key == '\r' || key == '\n') {
+                next = shown + 1;
+            } else {
+                break;
+            }
+        }
+        consoleReader.flush();
+        return shown;
+    }
+
+    private int resolvePageHeight() {
+        if (pageHeight > 0)
+            return pageHeight;
+        int height = consoleReader.getTerminal() == null ? 0 : consoleReader.getTerminal().getHeight();
+        // leave a line for the prompt
+        return height > 1 ? height - 1 : DEFAULT_PAGE_HEIGHT - 1;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import info.informationsea.commandmanager.core.StreamingCommand;
+
+import java.io.PrintWriter;
+
+/**
+ * A command which writes its output directly to the console instead of returning it in {@code CommandResult}.
+ * {@code CLICommandConsole} sets the console writer before the command is executed.
+ * Commands should fall back to returning their output if the writer is not set.
+ * @author Yasunobu OKAMURA
+ */
+public interface CLIStreamingCommand extends StreamingCommand {
+    /**
+     * Set a writer of the console.
+     * @param output a console writer
+     */
+    @Override
+    void setOutput(PrintWriter output);
+}
@@ -0,0 +1,774 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import jline.console.history.History;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent command history for JLine backed by append-only segment files.
+ *
+ * Each entry is written to the active segment as a length-prefixed UTF-8 record. When the active segment
+ * reaches the segment size, it is sealed with an index file of record offsets and a new segment is started.
+ * Segments of previous sessions are mapped read-only, so entries are decoded only when they are accessed.
+ * Entries are written in batches by a background thread, and {@code add} never waits for the disk.
+ *
+ * Entries can be searched by prefix or substring with an index of trigrams, which is built on the first search
+ * and updated as entries are added. Entries cannot be modified or removed except by {@code clear}.
+ * @author Yasunobu OKAMURA
+ */
+@Slf4j
+public class CommandHistory implements History, Closeable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 16L << 20;
+    public static final int DEFAULT_MAX_SEGMENTS = 64;
+
+    static final String SEGMENT_PREFIX = "history-";
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * Marks the start of an entry in the search index, so prefixes are searched as trigrams
+     */
+    private static final char START_MARK = '\n';
+
+    @Getter
+    private final File directory;
+
+    @Getter
+    private final long segmentSize;
+
+    /**
+     * Segments written by previous sessions
+     */
+    private final List<Segment> segments = new ArrayList<>();
+    private int[] segmentStarts = new int[0];
+    private int loadedCount = 0;
+
+    /**
+     * Entries added in this session
+     */
+    private final List<String> recent = new ArrayList<>();
+
+    /**
+     * Absolute index of the first entry
+     */
+    private int offset = 0;
+
+    /**
+     * Position of the cursor relative to the first entry
+     */
+    private int cursor = 0;
+
+    private PostingTable searchIndex = null;
+
+    // accessed by the writer thread only
+    private final ExecutorService writer;
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private int activeNumber;
+    private FileChannel activeChannel = null;
+    private long activeSize = 0;
+    private int[] activeOffsets = new int[0];
+    private int activeCount = 0;
+
+    public CommandHistory(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Open a history directory. Segments exceeding {@code maxSegments} are deleted from the oldest.
+     * @param directory a directory to store segments
+     * @param segmentSize size of a segment in bytes to start a new segment
+     * @param maxSegments maximum number of segments to keep
+     * @throws IOException failed to open segments
+     */
+    public CommandHistory(@NonNull File directory, long segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("segmentSize should be positive and smaller than 2 GiB");
+        if (maxSegments <= 0)
+            throw new IllegalArgumentException("maxSegments should be positive");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create history directory: " + directory);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        List<Integer> numbers = listSegments();
+        while (numbers.size() > maxSegments) {
+            deleteSegment(numbers.remove(0));
+        }
+
+        activeNumber = numbers.isEmpty() ? 0 : numbers.get(numbers.size() - 1) + 1;
+        for (int i = 0; i < numbers.size(); i++) {
+            boolean last = i == numbers.size() - 1;
+            Segment segment = openSegment(numbers.get(i), last);
+            if (segment.count > 0)
+                segments.add(segment);
+            if (last && segment.validSize == segment.log.limit() && segment.validSize < segmentSize) {
+                // continue appending to the last segment
+                activeNumber = numbers.get(i);
+                activeSize = segment.validSize;
+                activeOffsets = new int[segment.count];
+                segment.offsets.duplicate().get(activeOffsets);
+                activeCount = segment.count;
+            }
+        }
+
+        segmentStarts = new int[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            segmentStarts[i] = loadedCount;
+            loadedCount += segments.get(i).count;
+        }
+        cursor = loadedCount;
+
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "command-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private List<Integer> listSegments() {
+        List<Integer> numbers = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null)
+            return numbers;
+        for (String name : names) {
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(LOG_SUFFIX))
+                continue;
+            try {
+                numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // not a segment
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private File logFile(int number) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, number, LOG_SUFFIX));
+    }
+
+    private File indexFile(int number) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, number, INDEX_SUFFIX));
+    }
+
+    private void deleteSegment(int number) throws IOException {
+        Files.deleteIfExists(logFile(number).toPath());
+        Files.deleteIfExists(indexFile(number).toPath());
+    }
+
+    /**
+     * Map a segment. The index file of a sealed segment is mapped if it is consistent with the log,
+     * otherwise offsets are recovered by scanning the log.
+     */
+    private Segment openSegment(int number, boolean last) throws IOException {
+        ByteBuffer records;
+        try (FileChannel channel = FileChannel.open(logFile(number).toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("History segment is too large: " + logFile(number));
+            records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        File indexFile = indexFile(number);
+        if (!last && indexFile.isFile()) {
+            try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() % 4 == 0 && channel.size() <= Integer.MAX_VALUE) {
+                    IntBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+                    if (isConsistent(records, offsets))
+                        return new Segment(records, offsets, records.limit());
+                }
+            }
+        }
+
+        int[] offsets = new int[64];
+        int count = 0;
+        int position = 0;
+        while (position + 4 <= records.limit()) {
+            int length = records.getInt(position);
+            if (length < 0 || length > records.limit() - position - 4)
+                break;
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = position;
+            position += 4 + length;
+        }
+        if (position != records.limit())
+            log.warn("Ignore broken history records in {}", logFile(number));
+        if (!last)
+            writeIndex(number, offsets, count);
+        return new Segment(records, IntBuffer.wrap(offsets, 0, count).slice(), position);
+    }
+
+    private static boolean isConsistent(ByteBuffer records, IntBuffer offsets) {
+        int count = offsets.limit();
+        if (count == 0)
+            return records.limit() == 0;
+        int last = offsets.get(count - 1);
+        return offsets.get(0) == 0 && last >= 0 && last + 4 <= records.limit() &&
+                last + 4 + records.getInt(last) == records.limit();
+    }
+
+    private void writeIndex(int number, int[] offsets, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * count);
+        buffer.asIntBuffer().put(offsets, 0, count);
+        Files.write(indexFile(number).toPath(), buffer.array());
+    }
+
+    /**
+     * Add an entry. The entry is ignored if it is same as the last entry.
+     * The entry is written to the disk later by the writer thread.
+     * @param item a command line
+     */
+    @Override
+    public synchronized void add(@NonNull CharSequence item) {
+        String line = item.toString();
+        int size = size();
+        if (size == 0 || !line.equals(entry(size - 1))) {
+            recent.add(line);
+            if (searchIndex != null)
+                searchIndex.addEntry(size, line);
+            pending.add(line);
+            if (scheduled.compareAndSet(false, true))
+                writer.execute(this::drain);
+        }
+        moveToEnd();
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        List<byte[]> batch = new ArrayList<>();
+        String line;
+        while ((line = pending.poll()) != null) {
+            batch.add(line.getBytes(StandardCharsets.UTF_8));
+        }
+        if (batch.isEmpty())
+            return;
+
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(buffer);
+            for (byte[] record : batch) {
+                if (activeSize > 0 && activeSize + 4 + record.length > segmentSize) {
+                    writeActive(buffer);
+                    seal();
+                }
+                if (activeCount == activeOffsets.length)
+                    activeOffsets = Arrays.copyOf(activeOffsets, Math.max(64, activeCount * 2));
+                activeOffsets[activeCount++] = (int) activeSize;
+                output.writeInt(record.length);
+                output.write(record);
+                activeSize += 4 + record.length;
+            }
+            writeActive(buffer);
+        } catch (IOException e) {
+            log.warn("Cannot write history", e);
+        }
+    }
+
+    private void writeActive(ByteArrayOutputStream buffer) throws IOException {
+        if (buffer.size() == 0)
+            return;
+        if (activeChannel == null)
+            activeChannel = FileChannel.open(logFile(activeNumber).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            activeChannel.write(bytes);
+        }
+        buffer.reset();
+    }
+
+    private void seal() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeChannel = null;
+        }
+        writeIndex(activeNumber, activeOffsets, activeCount);
+        activeNumber += 1;
+        activeSize = 0;
+        activeCount = 0;
+    }
+
+    /**
+     * Wait until added entries are written.
+     * @throws IOException interrupted while waiting
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(this::drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing history");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Write remaining entries and stop the writer thread.
+     * @throws IOException failed to close the active segment
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeChannel = null;
+        }
+    }
+
+    /**
+     * Search entries from the newest.
+     * @param query a string to search
+     * @param prefix true to match entries starting with the query, false to match entries containing it
+     * @param limit maximum number of entries to return
+     * @return matched entries from the newest
+     */
+    public synchronized List<Entry> search(@NonNull String query, boolean prefix, int limit) {
+        List<Entry> found = new ArrayList<>();
+        int index = offset + size();
+        while (found.size() < limit && (index = searchBackwards(query, index, prefix)) >= 0) {
+            found.add(new IndexedEntry(index, entry(index - offset)));
+        }
+        return found;
+    }
+
+    /**
+     * Search the newest entry before the index.
+     * Candidates are taken from the rarest trigram of the query, or all entries if the query is shorter than a trigram.
+     * @param query a string to search
+     * @param index an absolute index to start search, exclusive
+     * @param prefix true to match entries starting with the query, false to match entries containing it
+     * @return an absolute index of the matched entry, or -1 if not found
+     */
+    public synchronized int searchBackwards(@NonNull String query, int index, boolean prefix) {
+        int end = Math.min(index - offset, size());
+        if (end <= 0)
+            return -1;
+        if (searchIndex == null) {
+            searchIndex = new PostingTable();
+            for (int i = 0; i < size(); i++) {
+                searchIndex.addEntry(i, entry(i));
+            }
+        }
+
+        String key = prefix ? START_MARK + query : query;
+        int[] candidates = null;
+        int candidateCount = Integer.MAX_VALUE;
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            int slot = searchIndex.find(trigram(key, i));
+            if (slot < 0)
+                return -1;
+            if (searchIndex.sizes[slot] < candidateCount) {
+                candidates = searchIndex.lists[slot];
+                candidateCount = searchIndex.sizes[slot];
+            }
+        }
+
+        if (candidates == null) {
+            for (int i = end - 1; i >= 0; i--) {
+                if (matches(entry(i), query, prefix))
+                    return offset + i;
+            }
+            return -1;
+        }
+        int from = Arrays.binarySearch(candidates, 0, candidateCount, end);
+        for (int i = (from < 0 ? -from - 1 : from) - 1; i >= 0; i--) {
+            if (matches(entry(candidates[i]), query, prefix))
+                return offset + candidates[i];
+        }
+        return -1;
+    }
+
+    private static boolean matches(String entry, String query, boolean prefix) {
+        return prefix ? entry.startsWith(query) : entry.contains(query);
+    }
+
+    private static long trigram(CharSequence text, int index) {
+        return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+
+    private String entry(int position) {
+        if (position >= loadedCount)
+            return recent.get(position - loadedCount);
+        int segment = Arrays.binarySearch(segmentStarts, position);
+        if (segment < 0)
+            segment = -segment - 2;
+        return segments.get(segment).get(position - segmentStarts[segment]);
+    }
+
+    /**
+     * Remove all entries and delete all segments.
+     */
+    @Override
+    public synchronized void clear() {
+        offset += size();
+        segments.clear();
+        segmentStarts = new int[0];
+        loadedCount = 0;
+        recent.clear();
+        cursor = 0;
+        searchIndex = null;
+        pending.clear();
+        writer.execute(() -> {
+            try {
+                if (activeChannel != null) {
+                    activeChannel.close();
+                    activeChannel = null;
+                }
+                for (int number : listSegments()) {
+                    deleteSegment(number);
+                }
+                activeNumber += 1;
+                activeSize = 0;
+                activeCount = 0;
+            } catch (IOException e) {
+                log.warn("Cannot clear history", e);
+            }
+        });
+    }
+
+    @Override
+    public synchronized int size() {
+        return loadedCount + recent.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public synchronized int index() {
+        return offset + cursor;
+    }
+
+    @Override
+    public synchronized CharSequence get(int index) {
+        int position = index - offset;
+        if (position < 0 || position >= size())
+            throw new IndexOutOfBoundsException("History index out of range: " + index);
+        return entry(position);
+    }
+
+    @Override
+    public void set(int index, CharSequence item) {
+        throw new UnsupportedOperationException("Command history is append-only");
+    }
+
+    @Override
+    public CharSequence remove(int i) {
+        throw new UnsupportedOperationException("Command history is append-only");
+    }
+
+    @Override
+    public CharSequence removeFirst() {
+        throw new UnsupportedOperationException("Command history is append-only");
+    }
+
+    @Override
+    public CharSequence removeLast() {
+        throw new UnsupportedOperationException("Command history is append-only");
+    }
+
+    @Override
+    public void replace(CharSequence item) {
+        throw new UnsupportedOperationException("Command history is append-only");
+    }
+
+    @Override
+    public synchronized ListIterator<Entry> entries(int index) {
+        return new EntryIterator(index - offset);
+    }
+
+    @Override
+    public synchronized ListIterator<Entry> entries() {
+        return entries(offset);
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return entries();
+    }
+
+    @Override
+    public synchronized CharSequence current() {
+        if (cursor >= size())
+            return "";
+        return entry(cursor);
+    }
+
+    @Override
+    public synchronized boolean previous() {
+        if (cursor <= 0)
+            return false;
+        cursor--;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean next() {
+        if (cursor >= size())
+            return false;
+        cursor++;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean moveToFirst() {
+        if (size() > 0 && cursor != 0) {
+            cursor = 0;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean moveToLast() {
+        int last = size() - 1;
+        if (last >= 0 && last != cursor) {
+            cursor = last;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean moveTo(int index) {
+        int position = index - offset;
+        if (position >= 0 && position < size()) {
+            cursor = position;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void moveToEnd() {
+        cursor = size();
+    }
+
+    /**
+     * A mapped segment. Offsets point to length-prefixed records in the log.
+     */
+    private static class Segment {
+        final ByteBuffer log;
+        final IntBuffer offsets;
+        final int count;
+
+        /**
+         * Length of records which are not broken
+         */
+        final int validSize;
+
+        Segment(ByteBuffer log, IntBuffer offsets, int validSize) {
+            this.log = log;
+            this.offsets = offsets;
+            this.count = offsets.limit();
+            this.validSize = validSize;
+        }
+
+        String get(int index) {
+            int position = offsets.get(index);
+            int length = log.getInt(position);
+            byte[] bytes = new byte[length];
+            ByteBuffer record = log.duplicate();
+            record.position(position + 4);
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Open addressing table from a trigram to sorted positions of entries containing it.
+     */
+    private static class PostingTable {
+        long[] keys = new long[1024];
+        int[][] lists = new int[1024][];
+        int[] sizes = new int[1024];
+        int used = 0;
+
+        void addEntry(int position, String entry) {
+            String text = START_MARK + entry;
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                add(trigram(text, i), position);
+            }
+        }
+
+        private void add(long key, int position) {
+            if (used * 2 >= keys.length)
+                grow();
+            int slot = slot(keys, key);
+            if (keys[slot] == 0) {
+                keys[slot] = key + 1;
+                lists[slot] = new int[4];
+                used += 1;
+            }
+            int size = sizes[slot];
+            // positions are added in order, so a repeated trigram in an entry is the last element
+            if (size > 0 && lists[slot][size - 1] == position)
+                return;
+            if (size == lists[slot].length)
+                lists[slot] = Arrays.copyOf(lists[slot], size * 2);
+            lists[slot][size] = position;
+            sizes[slot] = size + 1;
+        }
+
+        int find(long key) {
+            int slot = slot(keys, key);
+            return keys[slot] == 0 ? -1 : slot;
+        }
+
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (keys[slot] != 0 && keys[slot] != key + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[][] oldLists = lists;
+            int[] oldSizes = sizes;
+            keys = new long[oldKeys.length * 2];
+            lists = new int[keys.length][];
+            sizes = new int[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                int slot = slot(keys, oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                lists[slot] = oldLists[i];
+                sizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    private static class IndexedEntry implements Entry {
+        private final int index;
+        private final CharSequence value;
+
+        IndexedEntry(int index, CharSequence value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public CharSequence value() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d: %s", index, value);
+        }
+    }
+
+    private class EntryIterator implements ListIterator<Entry> {
+        private int position;
+
+        EntryIterator(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            synchronized (CommandHistory.this) {
+                Entry entry = new IndexedEntry(offset + position, entry(position));
+                position++;
+                return entry;
+            }
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return position > 0;
+        }
+
+        @Override
+        public Entry previous() {
+            if (!hasPrevious())
+                throw new NoSuchElementException();
+            synchronized (CommandHistory.this) {
+                position--;
+                return new IndexedEntry(offset + position, entry(position));
+            }
+        }
+
+        @Override
+        public int nextIndex() {
+            return offset + position;
+        }
+
+        @Override
+        public int previousIndex() {
+            return offset + position - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Command history is append-only");
+        }
+
+        @Override
+        public void set(Entry entry) {
+            throw new UnsupportedOperationException("Command history is append-only");
+        }
+
+        @Override
+        public void add(Entry entry) {
+            throw new UnsupportedOperationException("Command history is append-only");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How often and how recently each command was used.
+ * The statistics are used to rank completion candidates, and can be persisted between sessions.
+ * @author Yasunobu OKAMURA
+ */
+@Slf4j
+public class CommandUsageStatistics {
+
+    static final double FREQUENCY_WEIGHT = 4;
+    static final double RECENCY_WEIGHT = 10;
+    static final long RECENCY_HALF_LIFE = 24 * 60 * 60 * 1000L;
+
+    private Map<String, Usage> usages = new ConcurrentHashMap<>();
+
+    /**
+     * Record that the command is used now.
+     * @param command a command name
+     */
+    public void record(String command) {
+        record(command, System.currentTimeMillis());
+    }
+
+    /**
+     * Record that the command is used at the time.
+     * @param command a command name
+     * @param time used time in milliseconds
+     */
+    public void record(String command, long time) {
+        usages.merge(command, new Usage(1, time), CommandUsageStatistics::merge);
+    }
+
+    /**
+     * Get a number of times the command was used.
+     * @param command a command name
+     * @return count of usage
+     */
+    public long getCount(String command) {
+        Usage usage = usages.get(command);
+        return usage == null ? 0 : usage.getCount();
+    }
+
+    /**
+     * Get a weight of the command to rank completion candidates.
+     * Frequently and recently used commands get larger weight. Unused commands get 0.
+     * @param command a command name
+     * @param now current time in milliseconds
+     * @return weight of the command
+     */
+    public double weight(String command, long now) {
+        Usage usage = usages.get(command);
+        if (usage == null)
+            return 0;
+        double elapsed = Math.max(0, now - usage.getLastUsed());
+        return FREQUENCY_WEIGHT * Math.log(1 + usage.getCount()) / Math.log(2) +
+                RECENCY_WEIGHT * Math.pow(0.5, elapsed / RECENCY_HALF_LIFE);
+    }
+
+    /**
+     * Load statistics from the file, and merge them into this object.
+     * @param file a file saved by {@code save}
+     * @throws IOException failed to read the file
+     */
+    public void load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        for (String command : properties.stringPropertyNames()) {
+            String[] values = properties.getProperty(command).split(",");
+            try {
+                Usage usage = new Usage(Long.parseLong(values[0]), Long.parseLong(values[1]));
+                usages.merge(command, usage, CommandUsageStatistics::merge);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                log.warn("Ignore broken usage statistics for {}", command);
+            }
+        }
+    }
+
+    /**
+     * Save statistics to the file.
+     * @param file a file to save
+     * @throws IOException failed to write the file
+     */
+    public void save(File file) throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().getCount() + "," + entry.getValue().getLastUsed());
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            properties.store(writer, "CommandManager usage statistics");
+        }
+    }
+
+    private static Usage merge(Usage a, Usage b) {
+        return new Usage(a.getCount() + b.getCount(), Math.max(a.getLastUsed(), b.getLastUsed()));
+    }
+
+    @Value
+    private static class Usage {
+        private long count;
+        private long lastUsed;
+    }
+}
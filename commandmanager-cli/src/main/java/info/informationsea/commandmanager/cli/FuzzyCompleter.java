@@ -0,0 +1,120 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import jline.console.completer.Completer;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.*;
+
+/**
+ * Completer for JLine which ranks candidates with {@code FuzzyMatcher} and {@code CommandUsageStatistics}.
+ *
+ * Prefix matches are always ranked above other matches, and usage statistics only order candidates within
+ * these two tiers. Only the best {@code limit} candidates are kept with a bounded heap, so the whole candidate
+ * list is never sorted. Candidates of the same rank are ordered alphabetically.
+ * Use it with {@code FuzzyCompletionHandler}, so that fuzzy candidates do not replace typed text.
+ * @author Yasunobu OKAMURA
+ */
+public class FuzzyCompleter implements Completer {
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    private static final Comparator<ScoredCandidate> WORST_FIRST =
+            Comparator.comparing(ScoredCandidate::isPrefix).
+                    thenComparingDouble(ScoredCandidate::getRank).
+                    thenComparing(ScoredCandidate::getCandidate, Comparator.reverseOrder());
+
+    private final String[] strings;
+    private final CommandUsageStatistics statistics;
+
+    @Getter
+    private final int limit;
+
+    public FuzzyCompleter(Collection<String> strings) {
+        this(strings, null);
+    }
+
+    /**
+     * Create a completer.
+     * @param strings candidates
+     * @param statistics usage statistics to rank candidates. null to rank with match score only.
+     */
+    public FuzzyCompleter(Collection<String> strings, CommandUsageStatistics statistics) {
+        this(strings, statistics, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Create a completer.
+     * @param strings candidates
+     * @param statistics usage statistics to rank candidates. null to rank with match score only.
+     * @param limit maximum number of candidates to return
+     */
+    public FuzzyCompleter(Collection<String> strings, CommandUsageStatistics statistics, int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("limit should be positive");
+        this.strings = new TreeSet<>(strings).toArray(new String[0]);
+        this.statistics = statistics;
+        this.limit = limit;
+    }
+
+    @Override
+    public int complete(String buffer, int cursor, List<CharSequence> candidates) {
+        String query = buffer == null ? "" : buffer;
+        long now = System.currentTimeMillis();
+
+        PriorityQueue<ScoredCandidate> heap = new PriorityQueue<>(Math.min(limit, strings.length) + 1, WORST_FIRST);
+        for (String one : strings) {
+            int score = FuzzyMatcher.score(query, one);
+            if (score == FuzzyMatcher.NO_MATCH)
+                continue;
+
+            double rank = statistics == null ? score : score + statistics.weight(one, now);
+            ScoredCandidate scored = new ScoredCandidate(FuzzyMatcher.isPrefix(query, one), rank, one);
+            if (heap.size() < limit) {
+                heap.add(scored);
+            } else if (WORST_FIRST.compare(scored, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(scored);
+            }
+        }
+
+        ScoredCandidate[] ranked = new ScoredCandidate[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = heap.poll();
+        }
+        for (ScoredCandidate one : ranked) {
+            candidates.add(one.getCandidate());
+        }
+
+        if (candidates.size() == 1) {
+            candidates.set(0, candidates.get(0) + " ");
+        }
+
+        return candidates.isEmpty() ? -1 : 0;
+    }
+
+    @Value
+    private static class ScoredCandidate {
+        private boolean prefix;
+        private double rank;
+        private String candidate;
+    }
+}
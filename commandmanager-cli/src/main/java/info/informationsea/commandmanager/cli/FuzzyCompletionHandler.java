@@ -0,0 +1,53 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import jline.console.ConsoleReader;
+import jline.console.CursorBuffer;
+import jline.console.completer.CandidateListCompletionHandler;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Completion handler for candidates of {@code FuzzyCompleter}.
+ *
+ * {@code CandidateListCompletionHandler} replaces typed text with the common prefix of candidates,
+ * which deletes typed text if some candidates are fuzzy matches. This handler only lists candidates
+ * in that case, and keeps the buffer as typed. A single candidate still replaces typed text.
+ * @author Yasunobu OKAMURA
+ */
+public class FuzzyCompletionHandler extends CandidateListCompletionHandler {
+
+    @Override
+    public boolean complete(ConsoleReader reader, List<CharSequence> candidates, int pos) throws IOException {
+        CursorBuffer buffer = reader.getCursorBuffer();
+        if (candidates.size() > 1 && pos <= buffer.cursor) {
+            String typed = buffer.buffer.substring(pos, buffer.cursor);
+            for (CharSequence one : candidates) {
+                if (!one.toString().startsWith(typed)) {
+                    printCandidates(reader, candidates);
+                    reader.drawLine();
+                    return true;
+                }
+            }
+        }
+        return super.complete(reader, candidates, pos);
+    }
+}
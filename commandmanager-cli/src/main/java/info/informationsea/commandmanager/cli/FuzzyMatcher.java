@@ -0,0 +1,113 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+/**
+ * Subsequence based fuzzy matcher for completion.
+ *
+ * A query matches a candidate when all characters of the query appear in the candidate in the same order,
+ * and the first character of the query matches the first character of the candidate.
+ * Prefix matches, ignoring case as other matches do, always score higher than other matches of the same query.
+ * @author Yasunobu OKAMURA
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class FuzzyMatcher {
+
+    /**
+     * Returned by {@code score} if the query does not match the candidate.
+     */
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+
+    static final int PREFIX_BONUS = 20;
+    static final int PREFIX_CHAR_SCORE = 10;
+    static final int MATCH_SCORE = 4;
+    static final int CONSECUTIVE_BONUS = 4;
+    static final int BOUNDARY_BONUS = 3;
+    static final int GAP_PENALTY = 1;
+    static final int MAX_GAP_PENALTY = 3;
+
+    /**
+     * Score a candidate for the query.
+     * @param query a typed string
+     * @param candidate a completion candidate
+     * @return match score. Larger is better. {@code NO_MATCH} if the query does not match.
+     */
+    public static int score(@NonNull String query, @NonNull String candidate) {
+        if (query.length() == 0)
+            return 0;
+        if (isPrefix(query, candidate))
+            return PREFIX_BONUS + PREFIX_CHAR_SCORE * query.length();
+        if (query.length() > candidate.length() || !sameCharacter(query.charAt(0), candidate.charAt(0)))
+            return NO_MATCH;
+
+        int score = MATCH_SCORE + BOUNDARY_BONUS;
+        int last = 0;
+        for (int i = 1; i < query.length(); i++) {
+            char ch = query.charAt(i);
+            int found = -1;
+            for (int j = last + 1; j < candidate.length(); j++) {
+                if (sameCharacter(ch, candidate.charAt(j))) {
+                    found = j;
+                    break;
+                }
+            }
+            if (found < 0)
+                return NO_MATCH;
+
+            score += MATCH_SCORE;
+            if (found == last + 1)
+                score += CONSECUTIVE_BONUS;
+            else
+                score -= Math.min(GAP_PENALTY * (found - last - 1), MAX_GAP_PENALTY);
+            if (isBoundary(candidate, found))
+                score += BOUNDARY_BONUS;
+            last = found;
+        }
+
+        // keep every fuzzy match below the exact prefix matches
+        return Math.min(score, PREFIX_BONUS + PREFIX_CHAR_SCORE * query.length() - 1);
+    }
+
+    /**
+     * Check whether the candidate starts with the query, ignoring case.
+     * @param query a typed string
+     * @param candidate a completion candidate
+     * @return true if the candidate starts with the query
+     */
+    public static boolean isPrefix(@NonNull String query, @NonNull String candidate) {
+        return candidate.regionMatches(true, 0, query, 0, query.length());
+    }
+
+    private static boolean sameCharacter(char a, char b) {
+        return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
+    private static boolean isBoundary(String candidate, int position) {
+        if (position == 0)
+            return true;
+        char previous = candidate.charAt(position - 1);
+        char current = candidate.charAt(position);
+        return !Character.isLetterOrDigit(previous) ||
+                (Character.isLowerCase(previous) && Character.isUpperCase(current));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Record commands of a console session with timestamps.
+ *
+ * A recorded session is a text file with one command per line. Each line starts with milliseconds elapsed
+ * since the start of the session and a tab, followed by the command quoted for {@code ShellParser}.
+ * Lines starting with '#' are comments. Lines without a timestamp are read as commands issued at the time of
+ * the previous command, so plain scripts for the "source" command can be replayed as well.
+ * @see SessionReplayer
+ * @author Yasunobu OKAMURA
+ */
+@Slf4j
+public class SessionRecorder implements Closeable {
+
+    /**
+     * A recorded command.
+     */
+    @Value
+    public static class RecordedCommand {
+        /**
+         * Milliseconds elapsed since the start of the session
+         */
+        private long time;
+        private List<String> args;
+    }
+
+    private final Writer writer;
+    private final long start;
+
+    public SessionRecorder(File file) throws IOException {
+        this(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Start recording a session.
+     * @param writer a writer to write commands. The writer is closed with this recorder.
+     */
+    public SessionRecorder(@NonNull Writer writer) {
+        this.writer = new BufferedWriter(writer);
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Record a command issued now.
+     * @param args a command and its arguments
+     * @throws IOException failed to write
+     */
+    public synchronized void record(@NonNull String[] args) throws IOException {
+        for (String one : args) {
+            if (one.indexOf('\n') >= 0 || one.indexOf('\r') >= 0) {
+                log.warn("Skip recording a command with a line break");
+                return;
+            }
+        }
+        writer.write(String.format("%d\t%s\n", (System.nanoTime() - start) / 1000000, ShellParser.join(Arrays.asList(args))));
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    public static List<RecordedCommand> read(File file) throws IOException {
+        return read(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read a recorded session. Commands separated by ';' in a line are read as separate commands.
+     * @param reader a reader of a recorded session or a script. The reader is closed.
+     * @return recorded commands in order
+     * @throws IOException failed to read
+     */
+    public static List<RecordedCommand> read(@NonNull Reader reader) throws IOException {
+        List<RecordedCommand> commands = new ArrayList<>();
+        long time = 0;
+        try (BufferedReader bufferedReader = new BufferedReader(reader)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.startsWith("#"))
+                    continue;
+                int tab = line.indexOf('\t');
+                if (tab > 0 && isNumber(line, tab)) {
+                    time = Math.max(time, Long.parseLong(line.substring(0, tab)));
+                    line = line.substring(tab + 1);
+                }
+
+                List<String> args = ShellParser.parseShellLine(line);
+                int from = 0;
+                for (int i = 0; i <= args.size(); i++) {
+                    if (i == args.size() || args.get(i).equals(";")) {
+                        if (i > from)
+                            commands.add(new RecordedCommand(time, new ArrayList<>(args.subList(from, i))));
+                        from = i + 1;
+                    }
+                }
+            }
+        }
+        return commands;
+    }
+
+    private static boolean isNumber(String line, int end) {
+        for (int i = 0; i < end; i++) {
+            if (line.charAt(i) < '0' || line.charAt(i) > '9')
+                return false;
+        }
+        return end <= 18;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import info.informationsea.commandmanager.core.CommandManager;
+import info.informationsea.commandmanager.core.CommandResult;
+import info.informationsea.commandmanager.core.CommandSession;
+import info.informationsea.commandmanager.core.ManagedCommand;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Replay recorded sessions against a command manager to measure throughput and latency.
+ *
+ * Sessions run concurrently, one thread per session. Each session opens a {@code CommandSession} with its own
+ * context from the context factory, so sessions do not share state.
+ * Commands are issued at recorded times divided by the speed, or as fast as possible with {@code MAXIMUM_SPEED}.
+ * Built-in commands of {@code CLICommandConsole} need a console, so they fail in replay.
+ * @see SessionRecorder
+ * @author Yasunobu OKAMURA
+ */
+@Slf4j
+public class SessionReplayer {
+
+    /**
+     * Issue commands without waiting for recorded times.
+     */
+    public static final double MAXIMUM_SPEED = Double.POSITIVE_INFINITY;
+
+    private final CommandManager commandManager;
+    private final Supplier<?> contextFactory;
+
+    /**
+     * Number of concurrent sessions
+     */
+    @Getter
+    private final int sessions;
+
+    /**
+     * Speed relative to recorded times. 1 replays at the original speed.
+     */
+    @Getter
+    private final double speed;
+
+    /**
+     * Create a replayer.
+     * @param commandManager a command manager to create commands
+     * @param contextFactory a factory to create a context for each session
+     * @param sessions number of concurrent sessions
+     * @param speed speed relative to recorded times, or {@code MAXIMUM_SPEED}
+     */
+    public SessionReplayer(@NonNull CommandManager commandManager, @NonNull Supplier<?> contextFactory, int sessions, double speed) {
+        if (sessions <= 0)
+            throw new IllegalArgumentException("sessions should be positive");
+        if (!(speed > 0))
+            throw new IllegalArgumentException("speed should be positive");
+        this.commandManager = commandManager;
+        this.contextFactory = contextFactory;
+        this.sessions = sessions;
+        this.speed = speed;
+    }
+
+    /**
+     * Statistics of a command.
+     * Latencies are in nanoseconds, and include parsing arguments and executing the command.
+     */
+    @Value
+    public static class CommandStatistics {
+        private String command;
+        private long count;
+        private long errors;
+        private long mean;
+        private long median;
+        private long percentile90;
+        private long percentile99;
+        private long max;
+    }
+
+    /**
+     * Result of a replay.
+     */
+    @Value
+    public static class Report {
+        private int sessions;
+        private long commands;
+        private long errors;
+        private long elapsedNanos;
+
+        /**
+         * Statistics of each command sorted by command name
+         */
+        private List<CommandStatistics> statistics;
+
+        /**
+         * Get executed commands per second.
+         * @return throughput
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : commands * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Format the report as a table. Latencies are shown in milliseconds.
+         * @return formatted report
+         */
+        public String format() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format("sessions: %d, commands: %d, errors: %d, elapsed: %.1f ms, throughput: %.1f commands/s\n",
+                    sessions, commands, errors, elapsedNanos / 1e6, getThroughput()));
+            builder.append(String.format("%-16s %8s %8s %10s %10s %10s %10s %10s\n",
+                    "command", "count", "errors", "mean", "p50", "p90", "p99", "max"));
+            for (CommandStatistics one : statistics) {
+                builder.append(String.format("%-16s %8d %8d %10.3f %10.3f %10.3f %10.3f %10.3f\n",
+                        one.getCommand(), one.getCount(), one.getErrors(), one.getMean() / 1e6, one.getMedian() / 1e6,
+                        one.getPercentile90() / 1e6, one.getPercentile99() / 1e6, one.getMax() / 1e6));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Replay a recorded session in all sessions.
+     * @param recording recorded commands
+     * @return a report
+     * @throws InterruptedException interrupted while waiting for sessions
+     */
+    public Report replay(@NonNull List<SessionRecorder.RecordedCommand> recording) throws InterruptedException {
+        return replayMany(Collections.singletonList(recording));
+    }
+
+    /**
+     * Replay recorded sessions. Session i replays {@code recordings.get(i % recordings.size())}.
+     * @param recordings recorded sessions
+     * @return a report
+     * @throws InterruptedException interrupted while waiting for sessions
+     */
+    public Report replayMany(@NonNull List<List<SessionRecorder.RecordedCommand>> recordings) throws InterruptedException {
+        if (recordings.isEmpty())
+            throw new IllegalArgumentException("No recording to replay");
+
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        CountDownLatch ready = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Map<String, Latencies>>> results = new ArrayList<>();
+        List<CommandSession> openSessions = new ArrayList<>();
+        long start;
+        try {
+            for (int i = 0; i < sessions; i++) {
+                List<SessionRecorder.RecordedCommand> recording = recordings.get(i % recordings.size());
+                CommandSession session = commandManager.openSession(contextFactory.get());
+                openSessions.add(session);
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    return replaySession(recording, session);
+                }));
+            }
+            ready.await();
+            start = System.nanoTime();
+            go.countDown();
+
+            Map<String, Latencies> merged = new TreeMap<>();
+            for (Future<Map<String, Latencies>> one : results) {
+                try {
+                    for (Map.Entry<String, Latencies> entry : one.get().entrySet()) {
+                        merged.computeIfAbsent(entry.getKey(), key -> new Latencies()).addAll(entry.getValue());
+                    }
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Session failed", e.getCause());
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            List<CommandStatistics> statistics = new ArrayList<>();
+            long commands = 0;
+            long errors = 0;
+            for (Map.Entry<String, Latencies> entry : merged.entrySet()) {
+                CommandStatistics one = entry.getValue().summarize(entry.getKey());
+                statistics.add(one);
+                commands += one.getCount();
+                errors += one.getErrors();
+            }
+            return new Report(sessions, commands, errors, elapsed, statistics);
+        } finally {
+            executor.shutdownNow();
+            for (CommandSession one : openSessions) {
+                one.close();
+            }
+        }
+    }
+
+    private Map<String, Latencies> replaySession(List<SessionRecorder.RecordedCommand> recording, CommandSession session) {
+        Map<String, Latencies> latencies = new HashMap<>();
+        PrintWriter output = new PrintWriter(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        });
+        long sessionStart = System.nanoTime();
+
+        for (SessionRecorder.RecordedCommand one : recording) {
+            if (speed != MAXIMUM_SPEED) {
+                long target = sessionStart + (long) (one.getTime() * 1e6 / speed);
+                long wait;
+                while ((wait = target - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted())
+                        return latencies;
+                }
+            }
+
+            String name = one.getArgs().get(0);
+            long commandStart = System.nanoTime();
+            boolean success;
+            try {
+                success = execute(one.getArgs(), session, output);
+            } catch (Exception e) {
+                log.debug("Failed to replay {}", one.getArgs(), e);
+                success = false;
+            }
+            latencies.computeIfAbsent(name, key -> new Latencies()).add(System.nanoTime() - commandStart, success);
+        }
+        return latencies;
+    }
+
+    private boolean execute(List<String> args, CommandSession session, PrintWriter output) throws Exception {
+        ManagedCommand command = session.getCommandInstance(args.get(0));
+        if (command == null)
+            return false;
+        new CmdLineParser(command).parseArgument(args.subList(1, args.size()).toArray(new String[args.size() - 1]));
+        if (command instanceof CLIStreamingCommand)
+            ((CLIStreamingCommand) command).setOutput(output);
+        CommandResult result = session.execute(command);
+        return result.getState() != CommandResult.ResultState.ERROR;
+    }
+
+    /**
+     * Latencies of a command in a session
+     */
+    private static class Latencies {
+        private long[] values = new long[16];
+        private int count = 0;
+        private long errors = 0;
+
+        void add(long latency, boolean success) {
+            if (count == values.length)
+                values = Arrays.copyOf(values, count * 2);
+            values[count++] = latency;
+            if (!success)
+                errors++;
+        }
+
+        void addAll(Latencies other) {
+            if (count + other.count > values.length)
+                values = Arrays.copyOf(values, Math.max(count + other.count, values.length * 2));
+            System.arraycopy(other.values, 0, values, count, other.count);
+            count += other.count;
+            errors += other.errors;
+        }
+
+        CommandStatistics summarize(String command) {
+            Arrays.sort(values, 0, count);
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += values[i];
+            }
+            return new CommandStatistics(command, count, errors, count == 0 ? 0 : total / count,
+                    percentile(0.5), percentile(0.9), percentile(0.99), count == 0 ? 0 : values[count - 1]);
+        }
+
+        /**
+         * Nearest rank percentile of sorted values
+         */
+        private long percentile(double rank) {
+            if (count == 0)
+                return 0;
+            int index = (int) Math.ceil(rank * count) - 1;
+            return values[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -140,4 +140,37 @@ public class ShellParser {
 
         return result;
     }
+
+    /**
+     * Quote an argument so that {@code parseShellLine} returns it as one argument.
+     * @param arg an argument
+     * @return the argument as it is if it does not need quoting, or a quoted argument
+     */
+    public static String quote(@NonNull String arg) {
+        boolean plain = arg.length() > 0;
+        for (int i = 0; i < arg.length() && plain; i++) {
+            char ch = arg.charAt(i);
+            plain = !Character.isWhitespace(ch) && ch != '"' && ch != '\\';
+        }
+        if (plain)
+            return arg;
+
+        StringBuilder builder = new StringBuilder(arg.length() + 2).append('"');
+        for (int i = 0; i < arg.length(); i++) {
+            char ch = arg.charAt(i);
+            if (ch == '"' || ch == '\\')
+                builder.append('\\');
+            builder.append(ch);
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Join arguments into a shell line.
+     * @param args arguments
+     * @return a shell line which is parsed to the same arguments
+     */
+    public static String join(@NonNull List<String> args) {
+        return args.stream().map(ShellParser::quote).collect(Collectors.joining(" "));
+    }
 }
@@ -64,6 +64,26 @@ public class CLICommandCompleterTest {
         assertCompleter(Arrays.asList("argument1", "argument2"), 7, completer, "acacia a", 8);
     }
 
+    @Test
+    public void testFuzzyComplete() throws Exception {
+        CLICommandCompleter completer = new CLICommandCompleter(commandConsole);
+        assertCompleter(Arrays.<CharSequence>asList("access "), 0, completer, "acs", 3);
+        assertCompleter(Arrays.<CharSequence>asList("-method "), 7, completer, "acacia -mt", 10);
+        assertCompleter(Arrays.asList("TEST2 "), 15, completer, "acacia -method T2", 17);
+        assertCompleter(Arrays.asList(), -1, completer, "xyz", 3);
+    }
+
+    @Test
+    public void testHistoryRanking() throws Exception {
+        commandConsole.execute("access");
+        commandConsole.execute("access");
+        commandConsole.getUsageStatistics().record("source");
+
+        CLICommandCompleter completer = new CLICommandCompleter(commandConsole);
+        assertCompleter(Arrays.<CharSequence>asList("access", "source", "acacia", "help"), 0, completer, "", 0);
+        assertCompleter(Arrays.<CharSequence>asList("access", "acacia"), 0, completer, "ac", 2);
+    }
+
     public void assertCompleter(List<CharSequence> expectedList, int expectedPosition, Completer completer, String buffer, int cursor) {
         ArrayList<CharSequence> list = new ArrayList<>();
         Assert.assertEquals(expectedPosition, completer.complete(buffer, cursor, list));
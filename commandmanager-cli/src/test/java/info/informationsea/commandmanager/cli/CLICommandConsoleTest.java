@@ -21,6 +21,7 @@ package info.informationsea.commandmanager.cli;
 import info.informationsea.commandmanager.core.CommandManager;
 import info.informationsea.commandmanager.core.CommandResult;
 import info.informationsea.commandmanager.core.ManagedCommand;
+import info.informationsea.commandmanager.core.SnapshotableContext;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -30,7 +31,10 @@ import org.junit.Test;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
-import java.io.InputStreamReader;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -90,12 +94,51 @@ public class CLICommandConsoleTest {
         Assert.assertEquals("true", context.map.get("2"));
     }
 
+    @Test(timeout = 10000)
+    public void testSource() throws Exception {
+        File file = File.createTempFile("samplerun", ".txt");
+        file.deleteOnExit();
+        try (InputStream input = getClass().getResourceAsStream("samplerun.txt")) {
+            Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // commands in the script are executed while the source command holds the lock
+        commandConsole.execute(new String[]{"source", file.getPath()});
+        Assert.assertEquals("23", context.map.get("a"));
+        Assert.assertEquals("hello", context.map.get("s"));
+        Assert.assertEquals("true", context.map.get("2"));
+    }
+
     @Test
     public void testHelp() throws Exception {
         commandConsole.execute("help");
         commandConsole.execute("help 1");
     }
 
+    @Test
+    public void testSnapshot() throws Exception {
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+
+        StringWriter writer = new StringWriter();
+        commandConsole.setOutput(new PrintWriter(writer));
+        commandConsole.execute(new String[]{"snapshot", file.getPath()});
+        Assert.assertEquals("Context does not support snapshot", writer.toString().trim());
+
+        SnapshotContext snapshotContext = new SnapshotContext();
+        snapshotContext.value = "saved";
+        commandManager.setContext(snapshotContext);
+        commandConsole.execute(new String[]{"snapshot", file.getPath(), "-compress"});
+        snapshotContext.value = "changed";
+        commandConsole.execute(new String[]{"restore", file.getPath()});
+        Assert.assertEquals("saved", snapshotContext.value);
+
+        SnapshotContext restoredContext = new SnapshotContext();
+        commandManager.setContext(restoredContext);
+        commandConsole.execute(new String[]{"restore", file.getPath()});
+        Assert.assertEquals("saved", restoredContext.value);
+    }
+
     @NoArgsConstructor
     public static class Command1 implements ManagedCommand {
 
@@ -144,4 +187,20 @@ public class CLICommandConsoleTest {
     private class Context {
         public Map<String, String> map = new HashMap<>();
     }
-}
\ No newline at end of file
+
+    public static class SnapshotContext implements SnapshotableContext {
+        String value = null;
+
+        @Override
+        public void writeSnapshot(DataOutputStream output) throws IOException {
+            output.writeUTF(value);
+        }
+
+        @Override
+        public void restoreSnapshot(ByteBuffer snapshot) throws IOException {
+            byte[] data = new byte[snapshot.remaining()];
+            snapshot.get(data);
+            value = new DataInputStream(new ByteArrayInputStream(data)).readUTF();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import jline.console.ConsoleReader;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CLIPagerTest {
+
+    private List<String> fetched;
+
+    @Before
+    public void setUp() {
+        System.setProperty("jline.terminal", "none");
+        fetched = new ArrayList<>();
+    }
+
+    @Test
+    public void testShow() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ConsoleReader consoleReader = new ConsoleReader(new ByteArrayInputStream(" \nq".getBytes(StandardCharsets.US_ASCII)), outputStream);
+        CLIPager pager = new CLIPager(consoleReader);
+        pager.setPageHeight(3);
+
+        Assert.assertEquals(7, pager.show(source(100)));
+        Assert.assertEquals("[0,3)[3,6)[6,7)", String.join("", fetched));
+
+        String output = outputStream.toString("UTF-8");
+        Assert.assertTrue(output.contains("line 6"));
+        Assert.assertFalse(output.contains("line 7"));
+        Assert.assertTrue(output.contains(CLIPager.PROMPT + " (6%)"));
+    }
+
+    @Test
+    public void testShowShort() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ConsoleReader consoleReader = new ConsoleReader(new ByteArrayInputStream(new byte[0]), outputStream);
+        CLIPager pager = new CLIPager(consoleReader);
+        pager.setPageHeight(10);
+
+        Assert.assertEquals(4, pager.show(source(4)));
+        Assert.assertEquals("[0,4)", String.join("", fetched));
+        Assert.assertFalse(outputStream.toString("UTF-8").contains(CLIPager.PROMPT));
+    }
+
+    private CLIPager.PageSource source(int size) {
+        return new CLIPager.PageSource() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public List<String> lines(int from, int to) {
+                fetched.add("[" + from + "," + to + ")");
+                List<String> lines = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    lines.add("line " + i);
+                }
+                return lines;
+            }
+        };
+    }
+}
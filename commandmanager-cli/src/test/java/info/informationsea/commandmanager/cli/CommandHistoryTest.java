@@ -0,0 +1,173 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import jline.console.history.History;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+
+public class CommandHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> values(List<History.Entry> entries) {
+        List<String> values = new ArrayList<>();
+        for (History.Entry one : entries) {
+            values.add(one.value().toString());
+        }
+        return values;
+    }
+
+    private static int countFiles(File directory, String suffix) {
+        int count = 0;
+        for (String one : directory.list()) {
+            if (one.endsWith(suffix))
+                count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testNavigation() throws Exception {
+        try (CommandHistory history = new CommandHistory(temporaryFolder.newFolder())) {
+            Assert.assertTrue(history.isEmpty());
+            Assert.assertEquals("", history.current().toString());
+            history.add("load a.txt");
+            history.add("print");
+            history.add("print");
+            history.add("save b.txt");
+            Assert.assertEquals(3, history.size());
+            Assert.assertEquals(3, history.index());
+
+            Assert.assertTrue(history.previous());
+            Assert.assertEquals("save b.txt", history.current().toString());
+            Assert.assertTrue(history.previous());
+            Assert.assertEquals("print", history.current().toString());
+            Assert.assertTrue(history.moveToFirst());
+            Assert.assertFalse(history.previous());
+            Assert.assertEquals("load a.txt", history.current().toString());
+            Assert.assertTrue(history.moveTo(2));
+            Assert.assertEquals("save b.txt", history.current().toString());
+            history.moveToEnd();
+            Assert.assertFalse(history.next());
+
+            ListIterator<History.Entry> iterator = history.entries(1);
+            History.Entry entry = iterator.next();
+            Assert.assertEquals(1, entry.index());
+            Assert.assertEquals("print", entry.value().toString());
+            Assert.assertEquals(1, iterator.previous().index());
+            Assert.assertFalse(history.entries(3).hasNext());
+        }
+    }
+
+    @Test
+    public void testPersist() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        List<String> expected = new ArrayList<>();
+        for (int session = 0; session < 3; session++) {
+            try (CommandHistory history = new CommandHistory(directory, 256, 100)) {
+                Assert.assertEquals(expected.size(), history.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(expected.get(i), history.get(i).toString());
+                }
+                for (int i = 0; i < 40; i++) {
+                    String line = String.format("command %d-%d caf\u00e9", session, i);
+                    history.add(line);
+                    expected.add(line);
+                }
+            }
+        }
+        Assert.assertTrue(countFiles(directory, CommandHistory.LOG_SUFFIX) > 10);
+        Assert.assertEquals(countFiles(directory, CommandHistory.LOG_SUFFIX) - 1, countFiles(directory, CommandHistory.INDEX_SUFFIX));
+
+        try (CommandHistory history = new CommandHistory(directory, 256, 3)) {
+            Assert.assertEquals(3, countFiles(directory, CommandHistory.LOG_SUFFIX));
+            Assert.assertTrue(history.size() < expected.size());
+            Assert.assertEquals(expected.get(expected.size() - 1), history.get(history.size() - 1).toString());
+        }
+    }
+
+    @Test
+    public void testBrokenSegment() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        try (CommandHistory history = new CommandHistory(directory)) {
+            history.add("first");
+            history.add("second");
+        }
+        File log = new File(directory, CommandHistory.SEGMENT_PREFIX + "00000000" + CommandHistory.LOG_SUFFIX);
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        try (CommandHistory history = new CommandHistory(directory)) {
+            Assert.assertEquals(1, history.size());
+            Assert.assertEquals("first", history.get(0).toString());
+            history.add("third");
+        }
+        try (CommandHistory history = new CommandHistory(directory)) {
+            Assert.assertEquals(2, history.size());
+            Assert.assertEquals("third", history.get(1).toString());
+        }
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        try (CommandHistory history = new CommandHistory(directory, 128, 100)) {
+            history.add("load data.txt");
+            history.add("replace -target foo -replacement bar");
+            history.add("save data.txt");
+        }
+        try (CommandHistory history = new CommandHistory(directory, 128, 100)) {
+            Assert.assertEquals(Arrays.asList("save data.txt", "load data.txt"), values(history.search("data", false, 10)));
+            Assert.assertEquals(Arrays.asList("load data.txt"), values(history.search("lo", true, 10)));
+            Assert.assertEquals(Arrays.asList("replace -target foo -replacement bar"), values(history.search("re", true, 10)));
+            Assert.assertEquals(0, history.search("data", true, 10).size());
+
+            history.add("load other.txt");
+            Assert.assertEquals(Arrays.asList("load other.txt", "load data.txt"), values(history.search("load ", true, 10)));
+            Assert.assertEquals(Arrays.asList("load other.txt"), values(history.search("load ", true, 1)));
+            Assert.assertEquals(0, history.searchBackwards("load", 1, true));
+            Assert.assertEquals(-1, history.searchBackwards("load", 0, true));
+            Assert.assertEquals(3, history.searchBackwards("load", 4, true));
+            Assert.assertEquals(-1, history.searchBackwards("missing", 4, false));
+            Assert.assertEquals(-1, history.searchBackwards("x", 0, false));
+
+            history.clear();
+            Assert.assertEquals(0, history.size());
+            Assert.assertEquals(0, history.search("load", false, 10).size());
+            history.add("after clear");
+            Assert.assertEquals("after clear", history.get(history.index() - 1).toString());
+        }
+        try (CommandHistory history = new CommandHistory(directory, 128, 100)) {
+            Assert.assertEquals(1, history.size());
+            Assert.assertEquals("after clear", history.get(0).toString());
+        }
+    }
+}
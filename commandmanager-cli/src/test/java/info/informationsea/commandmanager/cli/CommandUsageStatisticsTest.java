@@ -0,0 +1,68 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class CommandUsageStatisticsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWeight() throws Exception {
+        CommandUsageStatistics statistics = new CommandUsageStatistics();
+        long now = System.currentTimeMillis();
+        statistics.record("frequent", now - 1000);
+        statistics.record("frequent", now - 1000);
+        statistics.record("frequent", now - 1000);
+        statistics.record("once", now - 1000);
+        statistics.record("old", now - 10 * CommandUsageStatistics.RECENCY_HALF_LIFE);
+
+        Assert.assertEquals(3, statistics.getCount("frequent"));
+        Assert.assertEquals(0, statistics.getCount("unknown"));
+        Assert.assertEquals(0, statistics.weight("unknown", now), 0);
+        Assert.assertTrue(statistics.weight("frequent", now) > statistics.weight("once", now));
+        Assert.assertTrue(statistics.weight("once", now) > statistics.weight("old", now));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = temporaryFolder.newFile("usage.properties");
+        long now = System.currentTimeMillis();
+
+        CommandUsageStatistics statistics = new CommandUsageStatistics();
+        statistics.record("load", now);
+        statistics.record("load", now);
+        statistics.record("print", now - 1000);
+        statistics.save(file);
+
+        CommandUsageStatistics loaded = new CommandUsageStatistics();
+        loaded.load(file);
+        Assert.assertEquals(2, loaded.getCount("load"));
+        Assert.assertEquals(1, loaded.getCount("print"));
+        Assert.assertEquals(statistics.weight("load", now), loaded.weight("load", now), 1e-9);
+        Assert.assertEquals(statistics.weight("print", now), loaded.weight("print", now), 1e-9);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FuzzyCompleterTest {
+
+    @Test
+    public void testPrefixTier() throws Exception {
+        CommandUsageStatistics statistics = new CommandUsageStatistics();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            statistics.record("load", now);
+        }
+
+        FuzzyCompleter completer = new FuzzyCompleter(Arrays.asList("load", "ldap", "list"), statistics);
+        List<CharSequence> candidates = new ArrayList<>();
+        completer.complete("ld", 2, candidates);
+        // a frequently used fuzzy match never outranks a prefix match
+        Assert.assertArrayEquals(new CharSequence[]{"ldap", "load"}, candidates.toArray());
+
+        candidates.clear();
+        completer.complete("l", 1, candidates);
+        Assert.assertArrayEquals(new CharSequence[]{"load", "ldap", "list"}, candidates.toArray());
+
+        // prefix matches ignore case
+        candidates.clear();
+        completer.complete("LD", 2, candidates);
+        Assert.assertArrayEquals(new CharSequence[]{"ldap", "load"}, candidates.toArray());
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        FuzzyCompleter completer = new FuzzyCompleter(Arrays.asList("abc", "axbxc", "ab", "abcd"), null, 2);
+        List<CharSequence> candidates = new ArrayList<>();
+        completer.complete("abc", 3, candidates);
+        Assert.assertArrayEquals(new CharSequence[]{"abc", "abcd"}, candidates.toArray());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import jline.console.ConsoleReader;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+public class FuzzyCompletionHandlerTest {
+
+    @Before
+    public void setUp() {
+        System.setProperty("jline.terminal", "none");
+    }
+
+    @Test
+    public void testFuzzyCandidates() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ConsoleReader consoleReader = new ConsoleReader(new ByteArrayInputStream(new byte[0]), outputStream);
+        consoleReader.putString("lod");
+
+        new FuzzyCompletionHandler().complete(consoleReader, Arrays.<CharSequence>asList("lodge", "load"), 0);
+        Assert.assertEquals("lod", consoleReader.getCursorBuffer().toString());
+        Assert.assertTrue(outputStream.toString("UTF-8").contains("load"));
+    }
+
+    @Test
+    public void testPrefixCandidates() throws Exception {
+        ConsoleReader consoleReader = new ConsoleReader(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        consoleReader.putString("lo");
+
+        new FuzzyCompletionHandler().complete(consoleReader, Arrays.<CharSequence>asList("loaded", "loader"), 0);
+        Assert.assertEquals("loade", consoleReader.getCursorBuffer().toString());
+    }
+
+    @Test
+    public void testSingleCandidate() throws Exception {
+        ConsoleReader consoleReader = new ConsoleReader(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        consoleReader.putString("lod");
+
+        new FuzzyCompletionHandler().complete(consoleReader, Arrays.<CharSequence>asList("load "), 0);
+        Assert.assertEquals("load ", consoleReader.getCursorBuffer().toString());
+    }
+}
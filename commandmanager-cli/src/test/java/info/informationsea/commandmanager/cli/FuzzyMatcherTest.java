@@ -0,0 +1,46 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FuzzyMatcherTest {
+
+    @Test
+    public void testScore() throws Exception {
+        Assert.assertEquals(0, FuzzyMatcher.score("", "hello"));
+        Assert.assertEquals(FuzzyMatcher.NO_MATCH, FuzzyMatcher.score("x", "hello"));
+        Assert.assertEquals(FuzzyMatcher.NO_MATCH, FuzzyMatcher.score("el", "hello"));
+        Assert.assertEquals(FuzzyMatcher.NO_MATCH, FuzzyMatcher.score("hello!", "hello"));
+        Assert.assertNotEquals(FuzzyMatcher.NO_MATCH, FuzzyMatcher.score("hlo", "hello"));
+        Assert.assertNotEquals(FuzzyMatcher.NO_MATCH, FuzzyMatcher.score("HLO", "hello"));
+
+        // prefix matches are always better than other matches
+        Assert.assertTrue(FuzzyMatcher.score("hel", "hello") > FuzzyMatcher.score("hel", "h-e-l"));
+        Assert.assertEquals(FuzzyMatcher.score("he", "hello"), FuzzyMatcher.score("he", "help"));
+        Assert.assertEquals(FuzzyMatcher.score("hel", "hello"), FuzzyMatcher.score("HeL", "hello"));
+        Assert.assertTrue(FuzzyMatcher.score("Lo", "load") > FuzzyMatcher.score("Lo", "l-o"));
+
+        // consecutive and word boundary matches are better than scattered matches
+        Assert.assertTrue(FuzzyMatcher.score("sr", "show-result") > FuzzyMatcher.score("sr", "sorter"));
+        Assert.assertTrue(FuzzyMatcher.score("sR", "showResult") > FuzzyMatcher.score("sR", "sorter"));
+        Assert.assertTrue(FuzzyMatcher.score("rpl", "replace") > FuzzyMatcher.score("rpl", "rapid-load"));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+public class SessionRecorderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRecord() throws Exception {
+        File file = temporaryFolder.newFile("session.txt");
+        try (SessionRecorder recorder = new SessionRecorder(file)) {
+            recorder.record(new String[]{"load", "a file.txt"});
+            Thread.sleep(20);
+            recorder.record(new String[]{"replace", "-target", "\"", "-replacement", ""});
+            recorder.record(new String[]{"insert", "two\nlines"});
+        }
+
+        List<SessionRecorder.RecordedCommand> commands = SessionRecorder.read(file);
+        Assert.assertEquals(2, commands.size());
+        Assert.assertEquals(Arrays.asList("load", "a file.txt"), commands.get(0).getArgs());
+        Assert.assertEquals(Arrays.asList("replace", "-target", "\"", "-replacement", ""), commands.get(1).getArgs());
+        Assert.assertTrue(commands.get(1).getTime() >= commands.get(0).getTime() + 20);
+    }
+
+    @Test
+    public void testReadScript() throws Exception {
+        List<SessionRecorder.RecordedCommand> commands =
+                SessionRecorder.read(new InputStreamReader(getClass().getResourceAsStream("samplerun.txt")));
+        Assert.assertEquals(2, commands.size());
+        Assert.assertEquals(Arrays.asList("1", "-a", "23", "hello"), commands.get(0).getArgs());
+        Assert.assertEquals(Arrays.asList("2"), commands.get(1).getArgs());
+
+        commands = SessionRecorder.read(new StringReader("# comment\n100\tfirst ; second\nthird\n50\tfourth\n"));
+        Assert.assertEquals(4, commands.size());
+        Assert.assertEquals(Arrays.asList("second"), commands.get(1).getArgs());
+        Assert.assertEquals(100, commands.get(1).getTime());
+        Assert.assertEquals(100, commands.get(2).getTime());
+        Assert.assertEquals(100, commands.get(3).getTime());
+    }
+}
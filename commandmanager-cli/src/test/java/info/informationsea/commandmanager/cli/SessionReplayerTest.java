@@ -0,0 +1,100 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.cli;
+
+import info.informationsea.commandmanager.core.CommandManager;
+import info.informationsea.commandmanager.core.CommandResult;
+import info.informationsea.commandmanager.core.ManagedCommand;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.args4j.Argument;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SessionReplayerTest {
+
+    public static class AppendCommand implements ManagedCommand {
+        @Argument
+        private String value = "";
+
+        private List<String> context;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            context.add(value);
+            return new CommandResult(null, value.equals("fail") ? CommandResult.ResultState.ERROR : CommandResult.ResultState.SUCCESS);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void setContext(Object context) {
+            this.context = (List<String>) context;
+        }
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        CommandManager commandManager = new CommandManager();
+        commandManager.addCommand("1", AppendCommand.class);
+        commandManager.addCommand("2", AppendCommand.class);
+        List<List<String>> contexts = Collections.synchronizedList(new ArrayList<>());
+
+        SessionReplayer replayer = new SessionReplayer(commandManager, () -> {
+            List<String> context = new ArrayList<>();
+            contexts.add(context);
+            return context;
+        }, 4, SessionReplayer.MAXIMUM_SPEED);
+        SessionReplayer.Report report = replayer.replay(SessionRecorder.read(
+                new InputStreamReader(getClass().getResourceAsStream("samplerun.txt"))));
+
+        Assert.assertEquals(4, contexts.size());
+        for (List<String> one : contexts) {
+            Assert.assertEquals(2, one.size());
+        }
+        Assert.assertEquals(8, report.getCommands());
+        Assert.assertEquals(0, report.getErrors());
+        Assert.assertEquals(2, report.getStatistics().size());
+        Assert.assertEquals("1", report.getStatistics().get(0).getCommand());
+        Assert.assertEquals(4, report.getStatistics().get(0).getCount());
+        Assert.assertTrue(report.getThroughput() > 0);
+        Assert.assertTrue(report.format().contains("throughput"));
+        Assert.assertTrue(commandManager.getSessions().isEmpty());
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        CommandManager commandManager = new CommandManager();
+        commandManager.addCommand("1", AppendCommand.class);
+        List<SessionRecorder.RecordedCommand> recording =
+                SessionRecorder.read(new StringReader("0\t1 a\n200\t1 fail\n400\tunknown\n"));
+
+        SessionReplayer.Report report = new SessionReplayer(commandManager, ArrayList::new, 2, 2).replay(recording);
+        Assert.assertTrue(report.getElapsedNanos() >= 200000000L);
+        Assert.assertEquals(3 * 2, report.getCommands());
+        Assert.assertEquals(2 * 2, report.getErrors());
+        SessionReplayer.CommandStatistics statistics = report.getStatistics().get(0);
+        Assert.assertEquals(4, statistics.getCount());
+        Assert.assertTrue(statistics.getMedian() <= statistics.getPercentile99());
+        Assert.assertTrue(statistics.getPercentile99() <= statistics.getMax());
+    }
+}
@@ -22,6 +22,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 @Slf4j
 public class ShellParserTest {
 
@@ -45,4 +48,15 @@ public class ShellParserTest {
                 new ShellParser.ArgumentAndPosition(8, "world")
         }, ShellParser.parseShellLineWithPosition(" hello  world").toArray());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testQuote() throws Exception {
+        Assert.assertEquals("hello", ShellParser.quote("hello"));
+        Assert.assertEquals("\"hello world\"", ShellParser.quote("hello world"));
+        Assert.assertEquals("\"\"", ShellParser.quote(""));
+        Assert.assertEquals("\"a\\\"b\\\\c\"", ShellParser.quote("a\"b\\c"));
+
+        List<String> args = Arrays.asList("replace", "-target", "a \"b\"", "", "c\\d", ";");
+        Assert.assertEquals(args, ShellParser.parseShellLine(ShellParser.join(args)));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builder to configure and execute a command with typed values, without parsing string arguments.
+ *
+ * Options and arguments are validated against {@code CommandManager.OptionInfo}, and values are converted
+ * when they are set. Values are assigned with fields or methods resolved in {@code OptionSlot}.
+ * An invocation can be executed many times. A new command instance is created for each execution.
+ * Invocations started from a {@code CommandSession} create commands with the context of the session.
+ * <pre>
+ * commandManager.invoke("replace").set("-target", "a").set("-replacement", "b").execute();
+ * </pre>
+ * @author Yasunobu OKAMURA
+ */
+public class CommandInvocation {
+
+    private final CommandManager commandManager;
+
+    @Getter
+    private final String commandName;
+
+    private final CommandSession session;
+
+    private final CommandManager.OptionInfo optionInfo;
+
+    private final Map<OptionSlot, Object> values = new LinkedHashMap<>();
+
+    CommandInvocation(CommandManager commandManager, String commandName) {
+        this(commandManager, commandName, null);
+    }
+
+    CommandInvocation(CommandManager commandManager, String commandName, CommandSession session) {
+        this.commandManager = commandManager;
+        this.commandName = commandName;
+        this.session = session;
+        this.optionInfo = commandManager.getOptionInfoForName(commandName);
+        if (optionInfo == null)
+            throw new IllegalArgumentException("Command is not found: " + commandName);
+    }
+
+    /**
+     * Set a value of an option.
+     * @param option an option name including '-'
+     * @param value a value. A string is converted to the type of the option.
+     * @throws IllegalArgumentException the option is unknown or the value cannot be converted
+     * @return this invocation
+     */
+    public CommandInvocation set(String option, Object value) {
+        OptionSlot slot = optionInfo.getOptionSlots().get(option);
+        if (slot == null)
+            throw new IllegalArgumentException("Unknown option " + option + " for " + commandName);
+        return put(slot, value);
+    }
+
+    /**
+     * Enable a flag option.
+     * @param option an option name including '-'
+     * @throws IllegalArgumentException the option is unknown
+     * @return this invocation
+     */
+    public CommandInvocation set(String option) {
+        return set(option, Boolean.TRUE);
+    }
+
+    /**
+     * Set a value of an argument.
+     * @param index an argument index
+     * @param value a value. A string is converted to the type of the argument.
+     * @throws IllegalArgumentException the index is out of range or the value cannot be converted
+     * @return this invocation
+     */
+    public CommandInvocation arg(int index, Object value) {
+        if (index < 0 || index >= optionInfo.getArgumentSlots().size())
+            throw new IllegalArgumentException("Argument index " + index + " is out of range for " + commandName);
+        return put(optionInfo.getArgumentSlots().get(index), value);
+    }
+
+    private CommandInvocation put(OptionSlot slot, Object value) {
+        values.put(slot, slot.isMultiValued() ? slot.convertAll(value) : slot.convert(value));
+        return this;
+    }
+
+    /**
+     * Create a command instance and assign values.
+     * @throws IllegalArgumentException a required option or argument is not set
+     * @return a configured command instance
+     */
+    public ManagedCommand build() {
+        for (OptionSlot slot : optionInfo.getOptionSlots().values()) {
+            if (slot.isRequired() && !values.containsKey(slot))
+                throw new IllegalArgumentException("Option " + slot.getName() + " is required for " + commandName);
+        }
+        for (OptionSlot slot : optionInfo.getArgumentSlots()) {
+            if (slot.isRequired() && !values.containsKey(slot))
+                throw new IllegalArgumentException("Argument " + slot.getName() + " is required for " + commandName);
+        }
+
+        ManagedCommand command = session == null ?
+                commandManager.getCommandInstance(commandName) : session.getCommandInstance(commandName);
+        for (Map.Entry<OptionSlot, Object> entry : values.entrySet()) {
+            entry.getKey().assign(command, entry.getValue());
+        }
+        return command;
+    }
+
+    /**
+     * Create a command instance, assign values and execute it.
+     * The command is locked as declared with {@code ContextAccess}.
+     * @throws Exception the command may throw Exception
+     * @return a result of the command
+     */
+    public CommandResult execute() throws Exception {
+        ManagedCommand command = build();
+        return session == null ? commandManager.execute(command) : session.execute(command);
+    }
+}
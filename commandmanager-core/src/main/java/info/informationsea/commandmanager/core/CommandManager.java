@@ -25,21 +25,41 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.spi.OptionHandler;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manage commands.
+ *
+ * Commands created by the manager receive the context of the manager. To run commands with different contexts
+ * concurrently, open a {@code CommandSession} for each context. Sessions share commands and option information
+ * with the manager. Commands executed with {@code execute} are locked as declared with {@code ContextAccess}.
  * @author Yasunobu OKAMURA
  */
 public class CommandManager {
-    private Map<String, Class> commands = new HashMap<>();
+    private Map<String, Class> commands = new ConcurrentHashMap<>();
 
     @Getter @Setter
-    private Object context = null;
+    private volatile Object context = null;
 
-    private Map<String, OptionInfo> optionInfoMap = new HashMap<>();
+    private Map<String, OptionInfo> optionInfoMap = new ConcurrentHashMap<>();
+
+    private final Map<String, CommandSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong sessionCounter = new AtomicLong();
+
+    private final ContextLock contextLock = new ContextLock();
+
+    /**
+     * A registry to resolve converters of options when commands are added.
+     */
+    @Getter @Setter
+    private ConverterRegistry converterRegistry = ConverterRegistry.getDefault();
 
     /**
      * Register a new command to command manager.
@@ -48,15 +68,14 @@ public class CommandManager {
      * @param <T> a ManagedCommand
      */
     public <T extends ManagedCommand> void addCommand(String name, Class<T> command) {
-        if (commands.containsKey(name)) {
+        if (commands.putIfAbsent(name, command) != null) {
             throw new IllegalArgumentException("Command name is duplicated");
         }
-        commands.put(name, command);
 
         try {
             Object bean = command.newInstance();
             CmdLineParser parser = new CmdLineParser(bean);
-            optionInfoMap.put(name, new OptionInfo(parser.getOptions(), parser.getArguments()));
+            optionInfoMap.put(name, new OptionInfo(parser.getOptions(), parser.getArguments(), converterRegistry));
         } catch (InstantiationException | IllegalAccessException e) {
             e.printStackTrace();
         }
@@ -76,6 +95,16 @@ public class CommandManager {
      * @return a instance of ManagedCommand
      */
     public ManagedCommand getCommandInstance(String name) {
+        return getCommandInstance(name, context);
+    }
+
+    /**
+     * Get a instance of ManagedCommand that corresponding to the name with a context
+     * @param name a command name
+     * @param context a context object passed to the command
+     * @return a instance of ManagedCommand
+     */
+    public ManagedCommand getCommandInstance(String name, Object context) {
         Class clazz = getCommandForName(name);
         try {
             ManagedCommand instance = (ManagedCommand) clazz.newInstance();
@@ -87,6 +116,88 @@ public class CommandManager {
         }
     }
 
+    /**
+     * Execute a command created by this manager.
+     * The command waits for other commands of this manager as declared with {@code ContextAccess}.
+     * @param command a command
+     * @throws Exception the command may throw Exception
+     * @return a result of the command
+     */
+    public CommandResult execute(ManagedCommand command) throws Exception {
+        return contextLock.execute(command, context);
+    }
+
+    /**
+     * Call an action which accesses the context of this manager, with the lock declared by a command.
+     * For example, a frontend can prepare output of a command as if the command were executed.
+     * @param command a command which declares access to the context
+     * @param action an action to call
+     * @throws Exception the action may throw Exception
+     * @return a result of the action
+     */
+    public <T> T callWithLock(ManagedCommand command, Callable<T> action) throws Exception {
+        return contextLock.call(command.getClass(), context, action);
+    }
+
+    /**
+     * Start to configure a command with typed values.
+     * Unlike parsing string arguments, values are assigned directly with cached option information.
+     * @param name a command name
+     * @throws IllegalArgumentException the command is not found
+     * @return an invocation builder
+     */
+    public CommandInvocation invoke(String name) {
+        return new CommandInvocation(this, name);
+    }
+
+    /**
+     * Open a session with a generated identifier.
+     * @param context a context of the session
+     * @return a new session
+     */
+    public CommandSession openSession(Object context) {
+        String id;
+        do {
+            id = "session-" + sessionCounter.incrementAndGet();
+        } while (sessions.containsKey(id));
+        return openSession(id, context);
+    }
+
+    /**
+     * Open a session.
+     * @param id an identifier of the session
+     * @param context a context of the session
+     * @throws IllegalArgumentException a session with the identifier is already open
+     * @return a new session
+     */
+    public CommandSession openSession(String id, Object context) {
+        CommandSession session = new CommandSession(this, id, context);
+        if (sessions.putIfAbsent(id, session) != null)
+            throw new IllegalArgumentException("Session is already open: " + id);
+        return session;
+    }
+
+    /**
+     * Get an open session.
+     * @param id an identifier of the session
+     * @return a session, or null if no session is open with the identifier
+     */
+    public CommandSession getSession(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Get open sessions.
+     * @return an unmodifiable view of open sessions
+     */
+    public Collection<CommandSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    void closeSession(CommandSession session) {
+        sessions.remove(session.getId(), session);
+    }
+
     /**
      * get a Class of ManagedCommand corresponding to the name
      * @param name a command name
@@ -107,21 +218,34 @@ public class CommandManager {
 
     /**
      * Command Option Information.
-     * The list of command options and arguments.
+     * The list of command options and arguments, and their slots with resolved converters.
      */
     @Value
     public static class OptionInfo {
         private Map<String, OptionHandler> options;
         private List<OptionHandler> arguments;
+        private Map<String, OptionSlot> optionSlots;
+        private List<OptionSlot> argumentSlots;
 
         public OptionInfo(List<OptionHandler> options, List<OptionHandler> arguments) {
+            this(options, arguments, ConverterRegistry.getDefault());
+        }
+
+        public OptionInfo(List<OptionHandler> options, List<OptionHandler> arguments, ConverterRegistry registry) {
             this.options = new HashMap<>();
             this.arguments = arguments;
+            this.optionSlots = new HashMap<>();
+            this.argumentSlots = new ArrayList<>();
 
             for (OptionHandler one : options) {
                 this.options.put(one.option.toString(), one);
+                this.optionSlots.put(one.option.toString(), new OptionSlot(one.option.toString(), one, registry));
                 //log.info("option {} {}", one, one.option.toString());
             }
+
+            for (int i = 0; i < arguments.size(); i++) {
+                this.argumentSlots.add(new OptionSlot("arg" + i, arguments.get(i), registry));
+            }
         }
 
         public static List<String> candidateOptions(OptionHandler optionHandler) {
@@ -0,0 +1,107 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+
+/**
+ * A session of a {@code CommandManager} with its own context.
+ *
+ * A session only holds its identifier and context. Commands, option information and converters are shared
+ * with the command manager, so many sessions can be opened cheaply and used from different threads.
+ * Commands created through a session receive the context of the session instead of the context of the manager.
+ * Commands executed with {@code execute} are locked with a lock of the session as declared with {@code ContextAccess}.
+ * @see CommandManager#openSession(Object)
+ * @author Yasunobu OKAMURA
+ */
+public class CommandSession implements Closeable {
+
+    @Getter
+    private final CommandManager commandManager;
+
+    @Getter
+    private final String id;
+
+    /**
+     * A context object passed to commands created through this session
+     */
+    @Getter @Setter
+    private volatile Object context;
+
+    private final ContextLock contextLock = new ContextLock();
+
+    CommandSession(CommandManager commandManager, String id, Object context) {
+        this.commandManager = commandManager;
+        this.id = id;
+        this.context = context;
+    }
+
+    /**
+     * Get a instance of ManagedCommand with the context of this session
+     * @param name a command name
+     * @return a instance of ManagedCommand
+     */
+    public ManagedCommand getCommandInstance(String name) {
+        return commandManager.getCommandInstance(name, context);
+    }
+
+    /**
+     * Execute a command created by this session.
+     * The command waits for other commands of this session as declared with {@code ContextAccess}.
+     * @param command a command
+     * @throws Exception the command may throw Exception
+     * @return a result of the command
+     */
+    public CommandResult execute(ManagedCommand command) throws Exception {
+        return contextLock.execute(command, context);
+    }
+
+    /**
+     * Call an action which accesses the context of this session, with the lock declared by a command.
+     * @param command a command which declares access to the context
+     * @param action an action to call
+     * @throws Exception the action may throw Exception
+     * @return a result of the action
+     */
+    public <T> T callWithLock(ManagedCommand command, Callable<T> action) throws Exception {
+        return contextLock.call(command.getClass(), context, action);
+    }
+
+    /**
+     * Start to configure a command which is executed with the context of this session.
+     * @param name a command name
+     * @throws IllegalArgumentException the command is not found
+     * @return an invocation builder
+     */
+    public CommandInvocation invoke(String name) {
+        return new CommandInvocation(commandManager, name, this);
+    }
+
+    /**
+     * Remove this session from the command manager. The context is not closed.
+     */
+    @Override
+    public void close() {
+        commandManager.closeSession(this);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import java.lang.annotation.*;
+
+/**
+ * Declare how a command accesses its context.
+ *
+ * Commands executed with {@code CommandManager.execute} or {@code CommandSession.execute} are locked
+ * according to this declaration. Commands without this annotation are executed as {@code WRITE}.
+ * Commands declared as {@code READ} or {@code OPTIMISTIC_READ} must not modify the context, including caches
+ * and deferred work. A context which defers work until it is read should implement {@code DeferredContext}.
+ * @author Yasunobu OKAMURA
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ContextAccess {
+
+    enum Mode {
+        /**
+         * The command does not modify the context. Readers run in parallel, and wait for a writer.
+         */
+        READ,
+
+        /**
+         * The command does not modify the context, and can be executed again with the same options.
+         * The command is executed without a lock first, and executed again with a read lock
+         * if a writer ran in the meantime. The command should only read immutable data from the context,
+         * so that a concurrent writer never makes it loop or fail badly.
+         */
+        OPTIMISTIC_READ,
+
+        /**
+         * The command may modify the context. Writers run exclusively.
+         */
+        WRITE
+    }
+
+    Mode value();
+}
@@ -0,0 +1,159 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Execute commands sharing a context with a {@code StampedLock} as declared with {@code ContextAccess}.
+ *
+ * A command may execute other commands with the same lock, for example to run a script. Such nested commands
+ * are executed without acquiring the lock again, because {@code StampedLock} is not reentrant. A command which
+ * only reads the context cannot execute a command which modifies it.
+ * @author Yasunobu OKAMURA
+ */
+class ContextLock {
+
+    private static final ClassValue<ContextAccess.Mode> MODES = new ClassValue<ContextAccess.Mode>() {
+        @Override
+        protected ContextAccess.Mode computeValue(Class<?> type) {
+            ContextAccess access = type.getAnnotation(ContextAccess.class);
+            return access == null ? ContextAccess.Mode.WRITE : access.value();
+        }
+    };
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Access held by the current thread, or null if the thread is not executing a command with this lock.
+     * Optimistic reads are held as {@code READ}.
+     */
+    private final ThreadLocal<ContextAccess.Mode> held = new ThreadLocal<>();
+
+    /**
+     * Number of optimistic executions which were executed again with a read lock
+     */
+    private final LongAdder retries = new LongAdder();
+
+    static ContextAccess.Mode modeOf(Class<?> type) {
+        return MODES.get(type);
+    }
+
+    CommandResult execute(ManagedCommand command, Object context) throws Exception {
+        return call(command.getClass(), context, command::execute);
+    }
+
+    /**
+     * Call an action with the lock as declared by a type of command.
+     * @param type a type of command
+     * @param context a context which the action accesses
+     * @param action an action to call
+     * @throws Exception the action may throw Exception
+     * @return a result of the action
+     */
+    <T> T call(Class<?> type, Object context, Callable<T> action) throws Exception {
+        ContextAccess.Mode mode = modeOf(type);
+        ContextAccess.Mode current = held.get();
+        if (current != null) {
+            if (current == ContextAccess.Mode.READ && mode == ContextAccess.Mode.WRITE)
+                throw new IllegalStateException("A command which reads the context cannot execute " + type.getName());
+            return action.call();
+        }
+
+        switch (mode) {
+            case OPTIMISTIC_READ: {
+                long stamp = lock.tryOptimisticRead();
+                if (stamp != 0 && !hasPendingWork(context)) {
+                    held.set(ContextAccess.Mode.READ);
+                    try {
+                        T result = action.call();
+                        if (lock.validate(stamp))
+                            return result;
+                    } catch (Exception e) {
+                        // the action may have read the context while it was modified
+                        if (lock.validate(stamp))
+                            throw e;
+                    } finally {
+                        held.remove();
+                    }
+                    retries.increment();
+                }
+                return callWithReadLock(context, action);
+            }
+            case READ:
+                return callWithReadLock(context, action);
+            default: {
+                long stamp = lock.writeLock();
+                held.set(ContextAccess.Mode.WRITE);
+                try {
+                    return action.call();
+                } finally {
+                    held.remove();
+                    lock.unlockWrite(stamp);
+                }
+            }
+        }
+    }
+
+    private <T> T callWithReadLock(Object context, Callable<T> action) throws Exception {
+        long stamp = readLock(context);
+        held.set(ContextAccess.Mode.READ);
+        try {
+            return action.call();
+        } finally {
+            held.remove();
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Acquire a read lock after pending work of the context is finished.
+     */
+    private long readLock(Object context) {
+        while (true) {
+            if (hasPendingWork(context)) {
+                long stamp = lock.writeLock();
+                try {
+                    ((DeferredContext) context).finishPendingWork();
+                } catch (RuntimeException | Error e) {
+                    lock.unlockWrite(stamp);
+                    throw e;
+                }
+                // a write lock is always converted to a read lock
+                return lock.tryConvertToReadLock(stamp);
+            }
+
+            long stamp = lock.readLock();
+            if (!hasPendingWork(context))
+                return stamp;
+            // a writer left pending work before the read lock was acquired
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static boolean hasPendingWork(Object context) {
+        return context instanceof DeferredContext && ((DeferredContext) context).hasPendingWork();
+    }
+
+    long getRetries() {
+        return retries.sum();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Save and restore a {@code SnapshotableContext} with a snapshot file.
+ *
+ * A snapshot file starts with a magic number, a format version, flags, the class name of the context,
+ * and the stored and original lengths of the state. The state written by the context follows,
+ * compressed with Deflate if requested. Snapshot files are mapped on restore, so an uncompressed state
+ * is passed to the context without being read into the heap.
+ * Snapshot files are written to a temporary file and moved to the destination atomically.
+ * A state is passed to the context as a single buffer, so a snapshot file and its state are limited to
+ * {@code MAX_SIZE} bytes. Writing a larger snapshot fails, and the destination is not replaced.
+ * @author Yasunobu OKAMURA
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ContextSnapshot {
+
+    static final int MAGIC = 0x434d5353; // "CMSS"
+    static final int VERSION = 1;
+    static final int FLAG_COMPRESSED = 1;
+
+    /**
+     * Maximum size of a snapshot file and of a state before compression
+     */
+    public static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Header of a snapshot file.
+     */
+    @Value
+    public static class Header {
+        private String contextType;
+        private boolean compressed;
+
+        /**
+         * Length of the state in the file
+         */
+        private long storedLength;
+
+        /**
+         * Length of the state before compression
+         */
+        private long length;
+    }
+
+    /**
+     * Write a snapshot of the context to a file.
+     * @param context a context to save
+     * @param file a snapshot file
+     * @param compress compress the state with Deflate
+     * @return a header of the written snapshot
+     * @throws IOException failed to write, or the snapshot is larger than {@code MAX_SIZE}
+     */
+    public static Header write(@NonNull SnapshotableContext context, @NonNull File file, boolean compress) throws IOException {
+        return write(context, file, compress, MAX_SIZE);
+    }
+
+    static Header write(SnapshotableContext context, File file, boolean compress, long maxSize) throws IOException {
+        Path destination = file.toPath().toAbsolutePath();
+        Path temporary = Files.createTempFile(destination.getParent(), "." + destination.getFileName(), ".tmp");
+        try {
+            Header header;
+            try (FileOutputStream fileOutput = new FileOutputStream(temporary.toFile())) {
+                byte[] type = context.getClass().getName().getBytes(StandardCharsets.UTF_8);
+                CountingOutputStream stored = new CountingOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE), maxSize);
+                DataOutputStream prefix = new DataOutputStream(stored);
+                prefix.writeInt(MAGIC);
+                prefix.writeInt(VERSION);
+                prefix.writeInt(compress ? FLAG_COMPRESSED : 0);
+                prefix.writeInt(type.length);
+                prefix.write(type);
+                long lengthPosition = stored.getCount();
+                // lengths are filled after the state is written
+                prefix.writeLong(0);
+                prefix.writeLong(0);
+                long statePosition = stored.getCount();
+
+                Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+                try {
+                    DeflaterOutputStream deflated = compress ? new DeflaterOutputStream(stored, deflater, BUFFER_SIZE) : null;
+                    CountingOutputStream raw = new CountingOutputStream(
+                            new BufferedOutputStream(compress ? deflated : stored, BUFFER_SIZE), maxSize);
+                    DataOutputStream output = new DataOutputStream(raw);
+                    context.writeSnapshot(output);
+                    output.flush();
+                    if (deflated != null)
+                        deflated.finish();
+                    stored.flush();
+                    header = new Header(context.getClass().getName(), compress,
+                            stored.getCount() - statePosition, raw.getCount());
+                } finally {
+                    if (deflater != null)
+                        deflater.end();
+                }
+
+                FileChannel channel = fileOutput.getChannel();
+                ByteBuffer lengths = ByteBuffer.allocate(16);
+                lengths.putLong(header.getStoredLength()).putLong(header.getLength()).flip();
+                while (lengths.hasRemaining()) {
+                    channel.write(lengths, lengthPosition + lengths.position());
+                }
+                channel.force(false);
+            }
+
+            try {
+                Files.move(temporary, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return header;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Replace state of the context with a snapshot file.
+     * @param context a context to restore
+     * @param file a snapshot file written by {@code write}
+     * @return a header of the snapshot
+     * @throws IOException failed to read, the snapshot is broken, or the snapshot was taken from another type of context
+     */
+    public static Header restore(@NonNull SnapshotableContext context, @NonNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > MAX_SIZE)
+                throw new IOException("Snapshot is too large: " + file);
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            Header header;
+            try {
+                header = readHeader(mapped);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Snapshot is truncated: " + file);
+            }
+            if (!header.getContextType().equals(context.getClass().getName()))
+                throw new IOException(String.format("Snapshot of %s cannot be restored to %s",
+                        header.getContextType(), context.getClass().getName()));
+            if (header.getStoredLength() != mapped.remaining())
+                throw new IOException("Snapshot is truncated: " + file);
+
+            ByteBuffer state = header.isCompressed() ? inflate(mapped, header.getLength()) : mapped.slice();
+            try {
+                context.restoreSnapshot(state);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Snapshot is broken: " + file);
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Read a header of a snapshot file.
+     * @param file a snapshot file written by {@code write}
+     * @return a header of the snapshot
+     * @throws IOException failed to read or the file is not a snapshot
+     */
+    public static Header readHeader(@NonNull File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] prefix = new byte[4 * 4];
+            input.readFully(prefix);
+            int typeLength = ByteBuffer.wrap(prefix, 12, 4).getInt();
+            if (typeLength < 0 || typeLength > BUFFER_SIZE)
+                throw new IOException("Not a snapshot: " + file);
+            byte[] rest = new byte[typeLength + 8 * 2];
+            input.readFully(rest);
+            return readHeader((ByteBuffer) ByteBuffer.allocate(prefix.length + rest.length).put(prefix).put(rest).flip());
+        } catch (EOFException | BufferUnderflowException e) {
+            throw new IOException("Snapshot is truncated: " + file);
+        }
+    }
+
+    private static Header readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Not a snapshot");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version: " + version);
+        int flags = buffer.getInt();
+        int typeLength = buffer.getInt();
+        if (typeLength < 0 || typeLength > buffer.remaining())
+            throw new IOException("Not a snapshot");
+        byte[] type = new byte[typeLength];
+        buffer.get(type);
+        long storedLength = buffer.getLong();
+        long length = buffer.getLong();
+        if (storedLength < 0 || length < 0)
+            throw new IOException("Snapshot is broken");
+        return new Header(new String(type, StandardCharsets.UTF_8), (flags & FLAG_COMPRESSED) != 0, storedLength, length);
+    }
+
+    private static ByteBuffer inflate(ByteBuffer compressed, long length) throws IOException {
+        if (length > MAX_SIZE)
+            throw new IOException("Snapshot is too large to decompress");
+        byte[] state = new byte[(int) length];
+        byte[] chunk = new byte[BUFFER_SIZE];
+        Inflater inflater = new Inflater();
+        try {
+            int offset = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!compressed.hasRemaining())
+                        throw new IOException("Snapshot is truncated");
+                    int size = Math.min(chunk.length, compressed.remaining());
+                    compressed.get(chunk, 0, size);
+                    inflater.setInput(chunk, 0, size);
+                }
+                int inflated = inflater.inflate(state, offset, state.length - offset);
+                offset += inflated;
+                if (inflated == 0 && offset == state.length && !inflater.finished() && !inflater.needsInput())
+                    throw new IOException("Snapshot is larger than recorded");
+            }
+            if (offset != state.length)
+                throw new IOException("Snapshot is shorter than recorded");
+        } catch (DataFormatException e) {
+            throw new IOException("Snapshot is broken", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(state);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final long limit;
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkLimit(1);
+            out.write(b);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkLimit(len);
+            out.write(b, off, len);
+            count += len;
+        }
+
+        private void checkLimit(int length) throws IOException {
+            if (count + length > limit)
+                throw new IOException(String.format("Snapshot is larger than %d bytes and cannot be restored", limit));
+        }
+    }
+}
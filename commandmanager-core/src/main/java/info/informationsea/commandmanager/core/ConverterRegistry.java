@@ -0,0 +1,139 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import lombok.NonNull;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@code OptionConverter} keyed by a type of option setter.
+ *
+ * Converters are resolved once for each option when {@code CommandManager.OptionInfo} is built,
+ * so values are converted without type dispatch for each call.
+ * Register custom converters before adding commands to {@code CommandManager}.
+ * @author Yasunobu OKAMURA
+ */
+public class ConverterRegistry {
+
+    private static final Map<Class<?>, Class<?>> PRIMITIVE_TO_WRAPPER = new HashMap<>();
+
+    static {
+        PRIMITIVE_TO_WRAPPER.put(boolean.class, Boolean.class);
+        PRIMITIVE_TO_WRAPPER.put(byte.class, Byte.class);
+        PRIMITIVE_TO_WRAPPER.put(char.class, Character.class);
+        PRIMITIVE_TO_WRAPPER.put(short.class, Short.class);
+        PRIMITIVE_TO_WRAPPER.put(int.class, Integer.class);
+        PRIMITIVE_TO_WRAPPER.put(long.class, Long.class);
+        PRIMITIVE_TO_WRAPPER.put(float.class, Float.class);
+        PRIMITIVE_TO_WRAPPER.put(double.class, Double.class);
+    }
+
+    // created after PRIMITIVE_TO_WRAPPER because the constructor uses it
+    private static final ConverterRegistry DEFAULT_REGISTRY = new ConverterRegistry();
+
+    private final Map<Class<?>, OptionConverter<?>> converters = new ConcurrentHashMap<>();
+
+    /**
+     * Create a registry with default converters.
+     * Default converters support String, primitive types and their wrappers, File, Path, Duration, BigDecimal,
+     * BigInteger, URI and enums.
+     */
+    public ConverterRegistry() {
+        register(String.class, value -> value);
+        register(Boolean.class, Boolean::parseBoolean);
+        register(Byte.class, Byte::parseByte);
+        register(Short.class, Short::parseShort);
+        register(Integer.class, Integer::parseInt);
+        register(Long.class, Long::parseLong);
+        register(Float.class, Float::parseFloat);
+        register(Double.class, Double::parseDouble);
+        register(Character.class, value -> {
+            if (value.length() != 1)
+                throw new IllegalArgumentException("A single character is required: " + value);
+            return value.charAt(0);
+        });
+        register(File.class, File::new);
+        register(Path.class, value -> Paths.get(value));
+        register(Duration.class, Duration::parse);
+        register(BigDecimal.class, BigDecimal::new);
+        register(BigInteger.class, BigInteger::new);
+        register(URI.class, URI::create);
+    }
+
+    /**
+     * Get a registry shared by command managers.
+     * @return the default registry
+     */
+    public static ConverterRegistry getDefault() {
+        return DEFAULT_REGISTRY;
+    }
+
+    /**
+     * Register a converter. A converter for a wrapper type is also used for its primitive type.
+     * @param type a type of option setter
+     * @param converter a converter
+     * @param <T> a type of option setter
+     */
+    public <T> void register(@NonNull Class<T> type, @NonNull OptionConverter<? extends T> converter) {
+        converters.put(wrap(type), converter);
+    }
+
+    /**
+     * Resolve a converter for the type.
+     * @param type a type of option setter
+     * @return a converter, or null if no converter is registered for the type
+     */
+    public OptionConverter<?> resolve(@NonNull Class<?> type) {
+        Class<?> wrapped = wrap(type);
+        OptionConverter<?> converter = converters.get(wrapped);
+        if (converter != null)
+            return converter;
+
+        if (wrapped.isEnum()) {
+            return converters.computeIfAbsent(wrapped, ConverterRegistry::enumConverter);
+        }
+        return null;
+    }
+
+    /**
+     * Get a wrapper type for a primitive type.
+     * @param type a type
+     * @return a wrapper type if the type is primitive, or the type itself
+     */
+    public static Class<?> wrap(Class<?> type) {
+        Class<?> wrapper = PRIMITIVE_TO_WRAPPER.get(type);
+        return wrapper == null ? type : wrapper;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static OptionConverter<?> enumConverter(Class<?> type) {
+        Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+        return value -> Enum.valueOf(enumType, value);
+    }
+}
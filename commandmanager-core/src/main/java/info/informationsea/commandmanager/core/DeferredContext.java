@@ -0,0 +1,38 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+/**
+ * A context which defers work until it is read, such as pending transformations or a stale index.
+ *
+ * Before a command declared as {@code READ} or {@code OPTIMISTIC_READ} with {@code ContextAccess} is executed,
+ * pending work is finished with the write lock, so commands which only read the context never modify it.
+ * @author Yasunobu OKAMURA
+ */
+public interface DeferredContext {
+    /**
+     * @return true if work should be finished before the context is read
+     */
+    boolean hasPendingWork();
+
+    /**
+     * Finish pending work. Called with the write lock.
+     */
+    void finishPendingWork();
+}
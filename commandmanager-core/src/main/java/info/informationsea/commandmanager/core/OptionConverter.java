@@ -0,0 +1,36 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+/**
+ * Convert a string value of an option or an argument to a typed object.
+ * @see ConverterRegistry
+ * @param <T> a converted type
+ * @author Yasunobu OKAMURA
+ */
+@FunctionalInterface
+public interface OptionConverter<T> {
+    /**
+     * Convert a value.
+     * @param value a string value
+     * @throws IllegalArgumentException the value cannot be converted
+     * @return a converted object
+     */
+    T convert(String value);
+}
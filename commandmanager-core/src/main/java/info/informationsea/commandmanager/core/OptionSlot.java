@@ -0,0 +1,180 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import lombok.Getter;
+import org.kohsuke.args4j.spi.OptionHandler;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An option or an argument of a command, with a converter resolved from {@code ConverterRegistry}
+ * and a field or a method to assign values.
+ * @author Yasunobu OKAMURA
+ */
+public class OptionSlot {
+
+    /**
+     * Option name such as "-target", or argument index such as "arg0"
+     */
+    @Getter
+    private final String name;
+
+    @Getter
+    private final OptionHandler handler;
+
+    /**
+     * A type of value. An element type for multi-valued options.
+     */
+    @Getter
+    private final Class<?> type;
+
+    @Getter
+    private final boolean multiValued;
+
+    @Getter
+    private final boolean required;
+
+    private final OptionConverter<?> converter;
+
+    private final Field field;
+    private final Method method;
+
+    public OptionSlot(String name, OptionHandler handler, ConverterRegistry registry) {
+        this.name = name;
+        this.handler = handler;
+        this.type = ConverterRegistry.wrap(handler.setter.getType());
+        this.multiValued = handler.setter.isMultiValued();
+        this.required = handler.option.required();
+        this.converter = registry.resolve(type);
+
+        AnnotatedElement element = handler.setter.asAnnotatedElement();
+        if (element instanceof Field) {
+            field = (Field) element;
+            field.setAccessible(true);
+            method = null;
+        } else if (element instanceof Method) {
+            field = null;
+            method = (Method) element;
+            method.setAccessible(true);
+        } else {
+            field = null;
+            method = null;
+        }
+    }
+
+    /**
+     * Convert a value to the type of this slot.
+     * A value which is already an instance of the type is returned as is.
+     * If no converter is registered for the type, the value is returned as is.
+     * @param value a value to convert
+     * @throws IllegalArgumentException the value cannot be converted
+     * @return a converted value
+     */
+    public Object convert(Object value) {
+        if (value == null || converter == null || type.isInstance(value))
+            return value;
+        return converter.convert(value.toString());
+    }
+
+    /**
+     * Convert a value to a list of values for multi-valued options.
+     * A collection is converted element by element, and a string is split with ','.
+     * @param value a value to convert
+     * @throws IllegalArgumentException the value cannot be converted
+     * @return a list of converted values
+     */
+    public List<Object> convertAll(Object value) {
+        if (value == null)
+            return Collections.emptyList();
+
+        List<Object> values = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object one : (Collection<?>) value) {
+                values.add(convert(one));
+            }
+        } else if (value instanceof String) {
+            for (String one : ((String) value).split(",")) {
+                if (!one.trim().isEmpty())
+                    values.add(convert(one.trim()));
+            }
+        } else {
+            values.add(convert(value));
+        }
+        return values;
+    }
+
+    /**
+     * Convert a value and assign it to a command instance directly with the field or the method resolved
+     * when this slot is created. Values of multi-valued options are appended to the current values.
+     * @param bean a command instance
+     * @param value a value to assign
+     * @throws IllegalArgumentException the value cannot be converted or assigned
+     */
+    public void assign(Object bean, Object value) {
+        try {
+            if (field != null) {
+                if (!multiValued) {
+                    field.set(bean, convert(value));
+                } else if (field.getType().isArray()) {
+                    Object current = field.get(bean);
+                    List<Object> values = convertAll(value);
+                    int currentLength = current == null ? 0 : Array.getLength(current);
+                    Object array = Array.newInstance(field.getType().getComponentType(), currentLength + values.size());
+                    if (current != null)
+                        System.arraycopy(current, 0, array, 0, currentLength);
+                    for (int i = 0; i < values.size(); i++) {
+                        Array.set(array, currentLength + i, values.get(i));
+                    }
+                    field.set(bean, array);
+                } else {
+                    @SuppressWarnings("unchecked")
+                    Collection<Object> current = (Collection<Object>) field.get(bean);
+                    if (current == null) {
+                        current = new ArrayList<>();
+                        field.set(bean, current);
+                    }
+                    current.addAll(convertAll(value));
+                }
+            } else if (method != null) {
+                if (multiValued) {
+                    for (Object one : convertAll(value)) {
+                        method.invoke(bean, one);
+                    }
+                } else {
+                    method.invoke(bean, convert(value));
+                }
+            } else {
+                throw new IllegalArgumentException("Cannot assign a value to " + name);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot assign a value to " + name, e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Failed to set " + name, e.getCause());
+        }
+    }
+}
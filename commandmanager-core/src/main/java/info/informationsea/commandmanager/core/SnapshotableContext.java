@@ -0,0 +1,46 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A context which can be saved to a snapshot and restored from it.
+ * Contexts write their state in their own binary format, and {@code ContextSnapshot} wraps it in a snapshot file.
+ * @see ContextSnapshot
+ * @author Yasunobu OKAMURA
+ */
+public interface SnapshotableContext {
+    /**
+     * Write state of this context.
+     * @param output a stream to write state
+     * @throws IOException failed to write
+     */
+    void writeSnapshot(DataOutputStream output) throws IOException;
+
+    /**
+     * Replace state of this context with a snapshot.
+     * The buffer may be mapped from a snapshot file, so data used after this method returns should be copied.
+     * @param snapshot state written by {@code writeSnapshot} in big endian order
+     * @throws IOException the snapshot is broken
+     */
+    void restoreSnapshot(ByteBuffer snapshot) throws IOException;
+}
@@ -0,0 +1,35 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import java.io.PrintWriter;
+
+/**
+ * A command which writes its output to a writer while it is running, instead of returning it in {@code CommandResult}.
+ * A frontend sets the writer before the command is executed, and shows the output as it is written.
+ * Commands should fall back to returning their output if the writer is not set.
+ * @author Yasunobu OKAMURA
+ */
+public interface StreamingCommand extends ManagedCommand {
+    /**
+     * Set a writer to write output.
+     * @param output a writer of the frontend
+     */
+    void setOutput(PrintWriter output);
+}
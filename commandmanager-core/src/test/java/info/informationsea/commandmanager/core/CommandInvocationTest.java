@@ -0,0 +1,122 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CommandInvocationTest {
+
+    private CommandManager commandManager;
+
+    @Before
+    public void setup() {
+        commandManager = new CommandManager();
+        commandManager.addCommand("sample", SampleCommand.class);
+    }
+
+    @Test
+    public void testInvoke() throws Exception {
+        SampleCommand command = (SampleCommand) commandManager.invoke("sample").
+                set("-target", "a").
+                set("-count", "12").
+                set("-verbose").
+                set("-names", Arrays.asList("x", "y")).
+                arg(0, "input.txt").
+                build();
+
+        Assert.assertEquals("a", command.target);
+        Assert.assertEquals(12L, command.count);
+        Assert.assertTrue(command.verbose);
+        Assert.assertEquals(Arrays.asList("x", "y"), command.names);
+        Assert.assertEquals(new File("input.txt"), command.input);
+        Assert.assertEquals(7, command.level);
+    }
+
+    @Test
+    public void testExecuteMany() throws Exception {
+        CommandInvocation invocation = commandManager.invoke("sample").set("-target", "b").set("-count", 3L).set("-level", 4);
+        for (int i = 0; i < 3; i++) {
+            CommandResult result = invocation.execute();
+            Assert.assertEquals("b 3 4", result.getResult());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCommand() throws Exception {
+        commandManager.invoke("unknown");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOption() throws Exception {
+        commandManager.invoke("sample").set("-unknown", "a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiredOption() throws Exception {
+        commandManager.invoke("sample").set("-count", 1).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConvertFailure() throws Exception {
+        commandManager.invoke("sample").set("-count", "not a number");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArgumentOutOfRange() throws Exception {
+        commandManager.invoke("sample").arg(1, "a");
+    }
+
+    public static class SampleCommand implements ManagedCommand {
+        @Option(name = "-target", required = true)
+        private String target;
+
+        @Option(name = "-count")
+        private long count = 1;
+
+        @Option(name = "-verbose")
+        private boolean verbose = false;
+
+        @Option(name = "-names")
+        private List<String> names = new ArrayList<>();
+
+        @Argument
+        private File input;
+
+        private int level = 7;
+
+        @Option(name = "-level")
+        public void setLevel(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public CommandResult execute() {
+            return new CommandResult(target + " " + count + " " + level, CommandResult.ResultState.SUCCESS);
+        }
+    }
+}
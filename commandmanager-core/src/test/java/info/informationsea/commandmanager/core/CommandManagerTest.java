@@ -21,8 +21,11 @@ package info.informationsea.commandmanager.core;
 import lombok.Getter;
 import org.junit.Assert;
 import org.junit.Test;
+import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 public class CommandManagerTest {
@@ -63,6 +66,26 @@ public class CommandManagerTest {
         Assert.assertNull(CommandManager.OptionInfo.candidateOptions(optionInfo.getOptions().get("sample")));
     }
 
+    @Test
+    public void testOptionSlots() throws Exception {
+        CommandManager commandManager = new CommandManager();
+        commandManager.addCommand("test", TestCommand5.class);
+        CommandManager.OptionInfo optionInfo = commandManager.getOptionInfoForName("test");
+
+        OptionSlot count = optionInfo.getOptionSlots().get("-count");
+        Assert.assertEquals(Long.class, count.getType());
+        Assert.assertEquals(10L, count.convert("10"));
+        Assert.assertEquals(10L, count.convert(10L));
+
+        OptionSlot names = optionInfo.getOptionSlots().get("-names");
+        Assert.assertTrue(names.isMultiValued());
+        Assert.assertArrayEquals(new Object[]{"a", "b"}, names.convertAll("a, b").toArray());
+
+        OptionSlot path = optionInfo.getArgumentSlots().get(0);
+        Assert.assertEquals("arg0", path.getName());
+        Assert.assertEquals(java.nio.file.Paths.get("x"), path.convert("x"));
+    }
+
     public static class TestCommand1 implements ManagedCommand {
         @Override
         public CommandResult execute() {
@@ -100,4 +123,20 @@ public class CommandManagerTest {
             return new CommandResult(null, CommandResult.ResultState.SUCCESS);
         }
     }
+
+    public static class TestCommand5 implements ManagedCommand {
+        @Option(name = "-count") @Getter
+        private long count = 1;
+
+        @Option(name = "-names") @Getter
+        private List<String> names = new ArrayList<>();
+
+        @Argument @Getter
+        private Path path;
+
+        @Override
+        public CommandResult execute() {
+            return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.args4j.Argument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class CommandSessionTest {
+
+    public static class AppendCommand implements ManagedCommand {
+        @Argument
+        private String value = "";
+
+        private List<String> context;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            context.add(value);
+            return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void setContext(Object context) {
+            this.context = (List<String>) context;
+        }
+    }
+
+    @Test
+    public void testSession() throws Exception {
+        CommandManager commandManager = new CommandManager();
+        commandManager.addCommand("append", AppendCommand.class);
+        List<String> managerContext = new ArrayList<>();
+        commandManager.setContext(managerContext);
+
+        List<String> context1 = new ArrayList<>();
+        List<String> context2 = new ArrayList<>();
+        CommandSession session1 = commandManager.openSession(context1);
+        CommandSession session2 = commandManager.openSession("second", context2);
+        Assert.assertNotEquals(session1.getId(), session2.getId());
+        Assert.assertSame(session2, commandManager.getSession("second"));
+        Assert.assertEquals(2, commandManager.getSessions().size());
+
+        session1.invoke("append").arg(0, "a").execute();
+        session2.invoke("append").arg(0, "b").execute();
+        session2.getCommandInstance("append").execute();
+        commandManager.invoke("append").arg(0, "c").execute();
+
+        Assert.assertEquals(1, context1.size());
+        Assert.assertEquals("a", context1.get(0));
+        Assert.assertEquals(2, context2.size());
+        Assert.assertEquals("b", context2.get(0));
+        Assert.assertEquals(1, managerContext.size());
+
+        try {
+            commandManager.openSession("second", new ArrayList<String>());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        session2.close();
+        Assert.assertNull(commandManager.getSession("second"));
+        Assert.assertEquals(1, commandManager.getSessions().size());
+        session1.close();
+        Assert.assertTrue(commandManager.getSessions().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        CommandManager commandManager = new CommandManager();
+        commandManager.addCommand("append", AppendCommand.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String value = String.valueOf(i);
+            results.add(executor.submit(() -> {
+                List<String> context = new ArrayList<>();
+                try (CommandSession session = commandManager.openSession(context)) {
+                    for (int j = 0; j < 100; j++) {
+                        session.invoke("append").arg(0, value).execute();
+                    }
+                }
+                return context;
+            }));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            List<String> context = results.get(i).get();
+            Assert.assertEquals(100, context.size());
+            for (String one : context) {
+                Assert.assertEquals(String.valueOf(i), one);
+            }
+        }
+        executor.shutdown();
+        Assert.assertTrue(commandManager.getSessions().isEmpty());
+    }
+}
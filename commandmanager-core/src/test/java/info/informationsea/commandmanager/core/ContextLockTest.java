@@ -0,0 +1,222 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ContextLockTest {
+
+    public static class WriteCommand implements ManagedCommand {
+        Callable<?> body = () -> null;
+
+        @Override
+        public CommandResult execute() throws Exception {
+            body.call();
+            return new CommandResult(null, CommandResult.ResultState.SUCCESS);
+        }
+
+        @Override
+        public void setContext(Object context) {}
+    }
+
+    @ContextAccess(ContextAccess.Mode.READ)
+    public static class ReadCommand extends WriteCommand {}
+
+    @ContextAccess(ContextAccess.Mode.OPTIMISTIC_READ)
+    public static class OptimisticReadCommand extends WriteCommand {}
+
+    public static class InheritedReadCommand extends ReadCommand {}
+
+    @Test
+    public void testModeOf() {
+        Assert.assertEquals(ContextAccess.Mode.WRITE, ContextLock.modeOf(WriteCommand.class));
+        Assert.assertEquals(ContextAccess.Mode.READ, ContextLock.modeOf(ReadCommand.class));
+        Assert.assertEquals(ContextAccess.Mode.OPTIMISTIC_READ, ContextLock.modeOf(OptimisticReadCommand.class));
+        Assert.assertEquals(ContextAccess.Mode.READ, ContextLock.modeOf(InheritedReadCommand.class));
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentReaders() throws Exception {
+        ContextLock lock = new ContextLock();
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<CommandResult> first = executor.submit(() -> {
+                ReadCommand command = new ReadCommand();
+                command.body = () -> barrier.await(5, TimeUnit.SECONDS);
+                return lock.execute(command, null);
+            });
+            OptimisticReadCommand command = new OptimisticReadCommand();
+            command.body = () -> barrier.await(5, TimeUnit.SECONDS);
+            // both commands pass the barrier only if they run at the same time
+            Assert.assertEquals(CommandResult.ResultState.SUCCESS, lock.execute(command, null).getState());
+            Assert.assertEquals(CommandResult.ResultState.SUCCESS, first.get().getState());
+            Assert.assertEquals(0, lock.getRetries());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterIsExclusive() throws Exception {
+        ContextLock lock = new ContextLock();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean read = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<CommandResult> writer = executor.submit(() -> {
+                WriteCommand command = new WriteCommand();
+                command.body = () -> {
+                    entered.countDown();
+                    return release.await(5, TimeUnit.SECONDS);
+                };
+                return lock.execute(command, null);
+            });
+            entered.await();
+
+            Future<CommandResult> reader = executor.submit(() -> {
+                ReadCommand command = new ReadCommand();
+                command.body = () -> {
+                    read.set(true);
+                    return null;
+                };
+                return lock.execute(command, null);
+            });
+            Thread.sleep(100);
+            Assert.assertFalse(read.get());
+
+            release.countDown();
+            writer.get();
+            reader.get();
+            Assert.assertTrue(read.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testOptimisticRetry() throws Exception {
+        ContextLock lock = new ContextLock();
+        AtomicInteger executions = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            OptimisticReadCommand command = new OptimisticReadCommand();
+            command.body = () -> {
+                if (executions.incrementAndGet() == 1) {
+                    // a writer modifies the context while the command reads it
+                    executor.submit(() -> lock.execute(new WriteCommand(), null)).get();
+                    throw new IllegalStateException("Inconsistent context");
+                }
+                return null;
+            };
+            Assert.assertEquals(CommandResult.ResultState.SUCCESS, lock.execute(command, null).getState());
+            Assert.assertEquals(2, executions.get());
+            Assert.assertEquals(1, lock.getRetries());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        OptimisticReadCommand failed = new OptimisticReadCommand();
+        failed.body = () -> {
+            throw new IllegalStateException("Failed");
+        };
+        try {
+            lock.execute(failed, null);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Failed", e.getMessage());
+        }
+        Assert.assertEquals(1, lock.getRetries());
+    }
+
+    @Test(timeout = 10000)
+    public void testNested() throws Exception {
+        ContextLock lock = new ContextLock();
+        AtomicInteger executions = new AtomicInteger();
+
+        WriteCommand script = new WriteCommand();
+        script.body = () -> {
+            WriteCommand nested = new WriteCommand();
+            nested.body = executions::incrementAndGet;
+            lock.execute(nested, null);
+            lock.execute(new ReadCommand(), null);
+            return lock.execute(new OptimisticReadCommand(), null);
+        };
+        Assert.assertEquals(CommandResult.ResultState.SUCCESS, lock.execute(script, null).getState());
+        Assert.assertEquals(1, executions.get());
+
+        ReadCommand reader = new ReadCommand();
+        reader.body = () -> lock.execute(new WriteCommand(), null);
+        try {
+            lock.execute(reader, null);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // ok
+        }
+
+        // the lock is released after the failure
+        Assert.assertEquals(CommandResult.ResultState.SUCCESS, lock.execute(new WriteCommand(), null).getState());
+    }
+
+    public static class TestDeferredContext implements DeferredContext {
+        volatile int pending = 0;
+        volatile int finished = 0;
+
+        @Override
+        public boolean hasPendingWork() {
+            return pending > 0;
+        }
+
+        @Override
+        public void finishPendingWork() {
+            finished += pending;
+            pending = 0;
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testDeferredContext() throws Exception {
+        ContextLock lock = new ContextLock();
+        TestDeferredContext context = new TestDeferredContext();
+
+        WriteCommand writer = new WriteCommand();
+        writer.body = () -> context.pending += 1;
+        lock.execute(writer, context);
+        lock.execute(writer, context);
+        Assert.assertEquals(2, context.pending);
+
+        for (WriteCommand reader : new WriteCommand[]{new ReadCommand(), new OptimisticReadCommand()}) {
+            reader.body = () -> {
+                // pending work is finished before the context is read
+                Assert.assertEquals(0, context.pending);
+                return null;
+            };
+            lock.execute(writer, context);
+            lock.execute(reader, context);
+        }
+        Assert.assertEquals(4, context.finished);
+        Assert.assertEquals(0, lock.getRetries());
+    }
+}
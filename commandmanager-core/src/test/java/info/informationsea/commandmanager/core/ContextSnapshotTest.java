@@ -0,0 +1,176 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ContextSnapshotTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    public static class TestContext implements SnapshotableContext {
+        List<String> values = new ArrayList<>();
+
+        @Override
+        public void writeSnapshot(DataOutputStream output) throws IOException {
+            output.writeInt(values.size());
+            for (String one : values) {
+                output.writeUTF(one);
+            }
+        }
+
+        @Override
+        public void restoreSnapshot(ByteBuffer snapshot) throws IOException {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(toArray(snapshot)));
+            List<String> restored = new ArrayList<>();
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                restored.add(input.readUTF());
+            }
+            values = restored;
+        }
+
+        private static byte[] toArray(ByteBuffer buffer) {
+            byte[] array = new byte[buffer.remaining()];
+            buffer.get(array);
+            return array;
+        }
+    }
+
+    public static class OtherContext extends TestContext {}
+
+    private static TestContext createContext(int size) {
+        TestContext context = new TestContext();
+        for (int i = 0; i < size; i++) {
+            context.values.add("line " + (i % 100));
+        }
+        return context;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = temporaryFolder.newFile("snapshot");
+        TestContext context = createContext(10000);
+        ContextSnapshot.Header header = ContextSnapshot.write(context, file, false);
+        Assert.assertEquals(TestContext.class.getName(), header.getContextType());
+        Assert.assertFalse(header.isCompressed());
+        Assert.assertEquals(header.getLength(), header.getStoredLength());
+
+        ContextSnapshot.Header read = ContextSnapshot.readHeader(file);
+        Assert.assertEquals(header.getContextType(), read.getContextType());
+        Assert.assertEquals(header.getLength(), read.getLength());
+
+        TestContext restored = new TestContext();
+        ContextSnapshot.restore(restored, file);
+        Assert.assertEquals(context.values, restored.values);
+        Assert.assertEquals(1, temporaryFolder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        File file = temporaryFolder.newFile("snapshot");
+        TestContext context = createContext(10000);
+        ContextSnapshot.Header header = ContextSnapshot.write(context, file, true);
+        Assert.assertTrue(header.isCompressed());
+        Assert.assertTrue(header.getStoredLength() < header.getLength() / 10);
+        Assert.assertTrue(file.length() < header.getLength() / 10);
+
+        TestContext restored = new TestContext();
+        ContextSnapshot.restore(restored, file);
+        Assert.assertEquals(context.values, restored.values);
+
+        ContextSnapshot.write(createContext(0), file, true);
+        ContextSnapshot.restore(restored, file);
+        Assert.assertEquals(0, restored.values.size());
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        File file = temporaryFolder.newFile("snapshot");
+        ContextSnapshot.write(createContext(10), file, false);
+        for (boolean compress : new boolean[]{false, true}) {
+            try {
+                ContextSnapshot.write(createContext(100000), file, compress, 10000);
+                Assert.fail();
+            } catch (IOException e) {
+                // ok
+            }
+        }
+
+        // the previous snapshot is kept
+        TestContext restored = new TestContext();
+        ContextSnapshot.restore(restored, file);
+        Assert.assertEquals(10, restored.values.size());
+        Assert.assertEquals(1, temporaryFolder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testOtherContext() throws Exception {
+        File file = temporaryFolder.newFile("snapshot");
+        ContextSnapshot.write(createContext(10), file, false);
+        OtherContext other = new OtherContext();
+        try {
+            ContextSnapshot.restore(other, file);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains(OtherContext.class.getName()));
+        }
+        Assert.assertEquals(0, other.values.size());
+    }
+
+    @Test
+    public void testBroken() throws Exception {
+        File file = temporaryFolder.newFile("snapshot");
+        Files.write(file.toPath(), "not a snapshot file".getBytes("UTF-8"));
+        TestContext context = createContext(10);
+        try {
+            ContextSnapshot.restore(context, file);
+            Assert.fail();
+        } catch (IOException e) {
+            // ok
+        }
+        Assert.assertEquals(10, context.values.size());
+
+        for (boolean compress : new boolean[]{false, true}) {
+            ContextSnapshot.write(createContext(1000), file, compress);
+            byte[] data = Files.readAllBytes(file.toPath());
+            for (int length : new int[]{10, 40, data.length - 1}) {
+                Files.write(file.toPath(), Arrays.copyOf(data, length));
+                try {
+                    ContextSnapshot.restore(context, file);
+                    Assert.fail();
+                } catch (IOException e) {
+                    // ok
+                }
+                Assert.assertEquals(10, context.values.size());
+            }
+        }
+    }
+}
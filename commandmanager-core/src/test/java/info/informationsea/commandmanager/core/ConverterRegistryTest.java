@@ -0,0 +1,64 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+public class ConverterRegistryTest {
+
+    enum Sample {
+        FIRST, SECOND
+    }
+
+    @Test
+    public void testDefaultConverters() throws Exception {
+        ConverterRegistry registry = new ConverterRegistry();
+        Assert.assertEquals("hello", registry.resolve(String.class).convert("hello"));
+        Assert.assertEquals(12, registry.resolve(int.class).convert("12"));
+        Assert.assertEquals(12, registry.resolve(Integer.class).convert("12"));
+        Assert.assertEquals(1L << 40, registry.resolve(long.class).convert(String.valueOf(1L << 40)));
+        Assert.assertEquals(1.5, registry.resolve(double.class).convert("1.5"));
+        Assert.assertEquals(true, registry.resolve(boolean.class).convert("true"));
+        Assert.assertEquals(new File("a.txt"), registry.resolve(File.class).convert("a.txt"));
+        Assert.assertEquals(Paths.get("a.txt"), registry.resolve(java.nio.file.Path.class).convert("a.txt"));
+        Assert.assertEquals(Duration.ofSeconds(90), registry.resolve(Duration.class).convert("PT1M30S"));
+        Assert.assertEquals(new BigDecimal("1.000"), registry.resolve(BigDecimal.class).convert("1.000"));
+        Assert.assertEquals(Sample.SECOND, registry.resolve(Sample.class).convert("SECOND"));
+        Assert.assertNull(registry.resolve(Object.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConvertFailure() throws Exception {
+        new ConverterRegistry().resolve(int.class).convert("not a number");
+    }
+
+    @Test
+    public void testCustomConverter() throws Exception {
+        ConverterRegistry registry = new ConverterRegistry();
+        registry.register(StringBuilder.class, StringBuilder::new);
+        Assert.assertEquals("custom", registry.resolve(StringBuilder.class).convert("custom").toString());
+        Assert.assertNull(ConverterRegistry.getDefault().resolve(StringBuilder.class));
+    }
+}
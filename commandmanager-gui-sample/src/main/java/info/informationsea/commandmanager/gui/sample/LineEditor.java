@@ -20,15 +20,12 @@ package info.informationsea.commandmanager.gui.sample;
 
 import info.informationsea.commandmanager.cli.sample.LineEditorCommands;
 import info.informationsea.commandmanager.core.CommandManager;
+import info.informationsea.commandmanager.gui.GUICommandPalette;
 import info.informationsea.commandmanager.gui.GUICommandPaneFactory;
 import javafx.application.Application;
 import javafx.scene.Scene;
-import javafx.scene.control.Accordion;
-import javafx.scene.control.TitledPane;
 import javafx.stage.Stage;
 
-import java.util.Map;
-
 /**
  * Sample GUI Line Editor.
  * @author OKAMURA Yasunobu
@@ -46,13 +43,9 @@ public class LineEditor extends Application {
     public void start(Stage primaryStage) throws Exception {
         LineEditorCommands.registerCommands(commandManager);
 
-        Accordion accordion = new Accordion();
-        for (Map.Entry<String, Class> entry : commandManager.getCommands().entrySet()) {
-            accordion.getPanes().add(new TitledPane(entry.getKey(), factory.getCommandPane(entry.getKey())));
-        }
-
-        accordion.setPrefSize(800, 600);
-        Scene scene = new Scene(accordion);
+        GUICommandPalette palette = new GUICommandPalette(factory);
+        palette.setPrefSize(800, 600);
+        Scene scene = new Scene(palette);
         primaryStage.setScene(scene);
         primaryStage.setTitle("Line Editor Sample");
         primaryStage.show();
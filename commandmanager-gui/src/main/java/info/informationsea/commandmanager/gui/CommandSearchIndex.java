@@ -0,0 +1,175 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.gui;
+
+import lombok.NonNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+
+/**
+ * Incremental substring search index of command names.
+ *
+ * When a query extends the previous query, only the previous matches are scanned again,
+ * so typing a query character by character does not scan the whole registry every time.
+ * Matches are returned in alphabetical order as an immutable list. A list refers to the sorted names of the index,
+ * and holds only positions of matches, which are collected while scanning. Later searches never change it.
+ * @author Yasunobu OKAMURA
+ */
+public class CommandSearchIndex {
+    private String[] names;
+    private String[] lowerNames;
+
+    /**
+     * Matches of an empty query
+     */
+    private Matches all;
+
+    private String lastQuery;
+    private Matches lastMatches;
+
+    /**
+     * Create an index
+     * @param names command names
+     */
+    public CommandSearchIndex(@NonNull Collection<String> names) {
+        setNames(names);
+    }
+
+    /**
+     * Replace indexed names, for example after commands are added. The next search scans all names.
+     * @param names command names
+     */
+    public synchronized void setNames(@NonNull Collection<String> names) {
+        this.names = names.toArray(new String[names.size()]);
+        Arrays.sort(this.names);
+
+        lowerNames = new String[this.names.length];
+        int[] positions = new int[this.names.length];
+        for (int i = 0; i < this.names.length; i++) {
+            lowerNames[i] = this.names[i].toLowerCase(Locale.ROOT);
+            positions[i] = i;
+        }
+
+        all = new Matches(this.names, positions, positions.length);
+        lastQuery = "";
+        lastMatches = all;
+    }
+
+    /**
+     * Get a number of indexed names.
+     * @return a number of names
+     */
+    public synchronized int size() {
+        return names.length;
+    }
+
+    /**
+     * Search command names which contain the query, ignoring case.
+     * @param query a query string. An empty query matches all names.
+     * @return an unmodifiable list of matched names
+     */
+    public synchronized List<String> search(@NonNull String query) {
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        if (lowerQuery.equals(lastQuery))
+            return lastMatches;
+        if (lowerQuery.isEmpty()) {
+            lastQuery = lowerQuery;
+            lastMatches = all;
+            return all;
+        }
+
+        // the previous matches are narrowed if the query extends the previous one. otherwise all names are scanned.
+        Matches candidates = lowerQuery.startsWith(lastQuery) ? lastMatches : all;
+        int[] positions = new int[candidates.size];
+        int count = 0;
+        for (int i = 0; i < candidates.size; i++) {
+            int index = candidates.positions[i];
+            if (lowerNames[index].contains(lowerQuery)) {
+                positions[count++] = index;
+            }
+        }
+        lastQuery = lowerQuery;
+        lastMatches = new Matches(names, positions, count);
+        return lastMatches;
+    }
+
+    /**
+     * Names at the first {@code size} positions.
+     */
+    private static final class Matches extends AbstractList<String> implements RandomAccess {
+        private final String[] names;
+        private final int[] positions;
+        private final int size;
+
+        Matches(String[] names, int[] positions, int size) {
+            this.names = names;
+            this.positions = positions;
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            return names[positions[index]];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Find a name with binary search because matches are sorted.
+         */
+        @Override
+        public int indexOf(Object o) {
+            if (!(o instanceof String))
+                return -1;
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int compared = names[positions[middle]].compareTo((String) o);
+                if (compared < 0)
+                    low = middle + 1;
+                else if (compared > 0)
+                    high = middle - 1;
+                else
+                    return middle;
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.gui;
+
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Command palette for large command registries.
+ *
+ * Command names are shown in a filterable {@code ListView}, which renders only visible cells.
+ * Matches of {@code CommandSearchIndex} are shown without being copied into the list.
+ * A configuration pane is created only for the selected command with {@code GUICommandPaneFactory},
+ * so startup cost does not depend on the number of registered commands.
+ * @author Yasunobu OKAMURA
+ */
+public class GUICommandPalette extends BorderPane {
+
+    @Getter
+    private GUICommandPaneFactory factory;
+
+    private final CommandSearchIndex searchIndex;
+    private final TextField filterField = new TextField();
+    private final ListView<String> commandList = new ListView<>();
+    private final ScrollPane commandPaneHolder = new ScrollPane();
+    private final GUICommandPaneFactory.CommandEventListener listener;
+
+    public GUICommandPalette(GUICommandPaneFactory factory) {
+        this(factory, null);
+    }
+
+    /**
+     * Create a command palette.
+     * @param factory a factory to create command panes
+     * @param listener notify command event
+     */
+    public GUICommandPalette(GUICommandPaneFactory factory, GUICommandPaneFactory.CommandEventListener listener) {
+        this.factory = factory;
+        this.listener = listener;
+        searchIndex = new CommandSearchIndex(factory.getCommandManager().getCommands().keySet());
+
+        filterField.setPromptText("Search commands");
+        filterField.textProperty().addListener((observable, oldValue, newValue) -> filter(newValue));
+
+        commandList.getSelectionModel().selectedItemProperty().addListener(
+                (observable, oldValue, newValue) -> showCommand(newValue));
+        filterField.setOnAction(e -> commandList.getSelectionModel().selectFirst());
+
+        VBox left = new VBox(5, filterField, commandList);
+        left.setPadding(new Insets(5));
+        VBox.setVgrow(commandList, Priority.ALWAYS);
+
+        commandPaneHolder.setFitToWidth(true);
+        setLeft(left);
+        setCenter(commandPaneHolder);
+
+        filter("");
+    }
+
+    /**
+     * Show commands which contain the query.
+     * @param query a query string
+     */
+    public void filter(String query) {
+        String selected = commandList.getSelectionModel().getSelectedItem();
+        List<String> matches = searchIndex.search(query);
+        commandList.setItems(FXCollections.observableList(matches));
+        int index = selected == null ? -1 : matches.indexOf(selected);
+        if (index >= 0) {
+            commandList.getSelectionModel().select(index);
+        }
+    }
+
+    /**
+     * Index commands again after commands are added to or removed from the command manager.
+     */
+    public void refreshCommands() {
+        searchIndex.setNames(factory.getCommandManager().getCommands().keySet());
+        filter(filterField.getText());
+    }
+
+    /**
+     * Select a command and show its configuration pane.
+     * @param commandName a name of command
+     */
+    public void selectCommand(String commandName) {
+        commandList.getSelectionModel().select(commandName);
+        commandList.scrollTo(commandName);
+    }
+
+    private void showCommand(String commandName) {
+        if (commandName == null) {
+            commandPaneHolder.setContent(new Label("Select a command"));
+            return;
+        }
+        commandPaneHolder.setContent(factory.getCommandPane(commandName, listener));
+    }
+}
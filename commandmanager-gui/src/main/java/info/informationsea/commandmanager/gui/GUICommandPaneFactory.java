@@ -18,41 +18,101 @@
 
 package info.informationsea.commandmanager.gui;
 
+import info.informationsea.commandmanager.core.CommandInvocation;
 import info.informationsea.commandmanager.core.CommandManager;
 import info.informationsea.commandmanager.core.CommandResult;
 import info.informationsea.commandmanager.core.ManagedCommand;
+import info.informationsea.commandmanager.core.StreamingCommand;
+import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Parent;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
-import lombok.AllArgsConstructor;
+import javafx.stage.Stage;
 import lombok.Getter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.spi.*;
 
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Command Configuration Pane Factory
+ * Command Configuration Pane Factory.
+ * Commands are executed in background, so long running commands do not block the JavaFX application thread.
+ * Commands of several panes may run at once, and they are locked as declared with {@code ContextAccess}.
+ * Output of a {@code StreamingCommand} is shown in a {@code GUIResultViewer} window while the command is running.
+ * A cancelled command is interrupted, and the pane is enabled again when the command actually returns.
  * @author Yasunobu OKAMURA
  */
-@AllArgsConstructor @Slf4j
+@Slf4j
 public class GUICommandPaneFactory {
 
     @Getter
     private CommandManager commandManager;
 
+    private Executor executor;
+
+    public static final int DEFAULT_PANE_CACHE_SIZE = 32;
+
+    /**
+     * Maximum number of command panes kept by {@code getCommandPane}.
+     * The least recently used pane is evicted when the cache is full.
+     */
+    @Getter
+    private int paneCacheSize = DEFAULT_PANE_CACHE_SIZE;
+
+    private final LinkedHashMap<String, CommandPane> paneCache = new LinkedHashMap<String, CommandPane>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CommandPane> eldest) {
+            return size() > paneCacheSize;
+        }
+    };
+
+    private final Map<String, List<OptionLayout>> layoutCache = new ConcurrentHashMap<>();
+
+    /**
+     * Create a factory which runs commands with daemon threads.
+     * @param commandManager a command manager
+     */
+    public GUICommandPaneFactory(CommandManager commandManager) {
+        this(commandManager, Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "CommandManager command runner");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Create a factory.
+     * @param commandManager a command manager
+     * @param executor an executor to run commands in background.
+     *                 A running command is interrupted when the cancel button is clicked.
+     */
+    public GUICommandPaneFactory(CommandManager commandManager, Executor executor) {
+        this.commandManager = commandManager;
+        this.executor = executor;
+    }
+
     /**
      * Get a configuration pane and its properties.
      * An empty {@code Map<String, ObservableValue>}
@@ -61,27 +121,54 @@ public class GUICommandPaneFactory {
      * @return a configuration pane.
      */
     public Parent getConfigurationDialog(String commandName, Map<String, ObservableValue> option2property) {
+        return createConfigurationPane(commandName, option2property, new ArrayList<>());
+    }
+
+    private Parent createConfigurationPane(String commandName, Map<String, ObservableValue> option2property, List<Runnable> resetters) {
         GridPane gridPane = new GridPane();
         gridPane.setHgap(10);
         gridPane.setVgap(10);
         gridPane.setPadding(new Insets(10));
 
-        CommandManager.OptionInfo optionInfo = commandManager.getOptionInfoForName(commandName);
-
-        int numberOfArguments = optionInfo.getArguments().size();
-        for (int i = 0; i < numberOfArguments; i++) {
-            OptionHandler optionHandler = optionInfo.getArguments().get(i);
-            //log.info("add {} {} {}", i, gridPane, optionHandler);
-            option2property.put("arg" + i, addOption(gridPane, optionHandler, i));
+        List<OptionLayout> layouts = getOptionLayouts(commandName);
+        for (int i = 0; i < layouts.size(); i++) {
+            OptionLayout layout = layouts.get(i);
+            OptionControl control = addOption(gridPane, layout, i);
+            option2property.put(layout.getKey(), control.getProperty());
+            resetters.add(control.getReset());
         }
 
-        int position = numberOfArguments;
-        for (Map.Entry<String, OptionHandler> entry : optionInfo.getOptions().entrySet()) {
-            //log.info("{} {}", commandName, entry.getValue().getClass());
-            option2property.put(entry.getKey(), addOption(gridPane, entry.getValue(), position++));
+        return gridPane;
+    }
+
+    /**
+     * Set maximum number of cached command panes.
+     * @param paneCacheSize maximum number of panes
+     */
+    public void setPaneCacheSize(int paneCacheSize) {
+        if (paneCacheSize < 0)
+            throw new IllegalArgumentException("Cache size should not be negative");
+        this.paneCacheSize = paneCacheSize;
+
+        Iterator<String> iterator = paneCache.keySet().iterator();
+        while (paneCache.size() > paneCacheSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
         }
+    }
 
-        return gridPane;
+    /**
+     * Reset all controls of a cached command pane to the default values.
+     * The controls are reused, so the scene graph is not rebuilt.
+     * @param commandName a name of command
+     * @return true if the pane is cached and reset.
+     */
+    public boolean resetToDefaults(String commandName) {
+        CommandPane commandPane = paneCache.get(commandName);
+        if (commandPane == null)
+            return false;
+        commandPane.resetters.forEach(Runnable::run);
+        return true;
     }
 
     /**
@@ -93,173 +180,268 @@ public class GUICommandPaneFactory {
         return getCommandPane(commandName, null);
     }
 
-        /**
-         * Get a configuration pane with the run button.
-         * @param commandName a name of command
-         * @param listener notify command event
-         * @return a TitledPane to configure and run a command.
-         */
+    /**
+     * Get a configuration pane with the run button.
+     * Panes are cached by command name, so the same node is returned while the pane is in the cache.
+     * @param commandName a name of command
+     * @param listener notify command event
+     * @return a TitledPane to configure and run a command.
+     */
     public Parent getCommandPane(String commandName, CommandEventListener listener) {
-        HBox buttonBox = new HBox();
+        CommandPane commandPane = paneCache.get(commandName);
+        if (commandPane == null) {
+            commandPane = createCommandPane(commandName);
+            paneCache.put(commandName, commandPane);
+        }
+        commandPane.listener = listener;
+        return commandPane.root;
+    }
+
+    private CommandPane createCommandPane(String commandName) {
+        CommandPane commandPane = new CommandPane();
+
+        HBox buttonBox = new HBox(10);
+        ProgressIndicator progressIndicator = new ProgressIndicator();
+        progressIndicator.setPrefSize(24, 24);
+        progressIndicator.setVisible(false);
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setDisable(true);
+        Button resetButton = new Button("Reset");
+        resetButton.setOnMouseClicked(e -> commandPane.resetters.forEach(Runnable::run));
         Button runButton = new Button("Run");
-        buttonBox.getChildren().add(runButton);
+        buttonBox.getChildren().addAll(progressIndicator, resetButton, cancelButton, runButton);
         buttonBox.setAlignment(Pos.CENTER_RIGHT);
 
         final HashMap<String, ObservableValue> option2property = new HashMap<>();
 
-        VBox vBox = new VBox(
-                getConfigurationDialog(commandName, option2property),
+        commandPane.root = new VBox(
+                createConfigurationPane(commandName, option2property, commandPane.resetters),
                 buttonBox
         );
 
+        CommandManager.OptionInfo optionInfo = commandManager.getOptionInfoForName(commandName);
+
         runButton.setOnMouseClicked(e -> {
-            ManagedCommand command = commandManager.getCommandInstance(commandName);
-            CmdLineParser parser = new CmdLineParser(command);
-            List<OptionHandler> arguments = parser.getArguments();
+            final ManagedCommand command;
             try {
-                for (int i = 0; i < arguments.size(); i++) {
-                    Object optionValue = option2property.get("arg"+i).getValue();
-                    //noinspection unchecked
-                    arguments.get(i).setter.addValue(convertProperObject(arguments.get(i), optionValue));
-                }
-                for (OptionHandler handler : parser.getOptions()) {
-                    Object optionValue = option2property.get(handler.option.toString()).getValue();
-                    //noinspection unchecked
-                    handler.setter.addValue(convertProperObject(handler, optionValue));
+                CommandInvocation invocation = commandManager.invoke(commandName);
+                for (int i = 0; i < optionInfo.getArgumentSlots().size(); i++) {
+                    invocation.arg(i, option2property.get("arg" + i).getValue());
                 }
-
-                CommandResult result = command.execute();
-
-                CommandEventListener.CommandEvent commandEvent;
-
-                Alert.AlertType type = Alert.AlertType.ERROR;
-                String headerText = "";
-                switch (result.getState()) {
-                    case SUCCESS:
-                        type = Alert.AlertType.INFORMATION;
-                        commandEvent = CommandEventListener.CommandEvent.SUCCESS;
-                        headerText = "Command executed successfully";
-                        break;
-                    case WARN:
-                        type = Alert.AlertType.WARNING;
-                        commandEvent = CommandEventListener.CommandEvent.WARN;
-                        headerText = "Command executed with warning";
-                        break;
-                    case ERROR:
-                    default:
-                        type = Alert.AlertType.ERROR;
-                        commandEvent = CommandEventListener.CommandEvent.ERROR;
-                        headerText = "Command executed with error";
-                        break;
+                for (String name : optionInfo.getOptionSlots().keySet()) {
+                    invocation.set(name, option2property.get(name).getValue());
                 }
+                command = invocation.build();
+            } catch (Exception e1) {
+                e1.printStackTrace();
+                showExceptionAlert("Failed to run", e1);
+                return;
+            }
 
-                Alert alert = new Alert(type);
-                alert.setHeaderText(headerText);
-
-                if (result.getResult() == null || result.getResult().length() < 300) {
-                    alert.setContentText(result.getResult());
+            final GUIResultViewer streamViewer = command instanceof StreamingCommand ? new GUIResultViewer() : null;
+            final PrintWriter streamOutput = streamViewer == null ? null : new PrintWriter(streamViewer.getWriter());
+            if (streamViewer != null) {
+                ((StreamingCommand) command).setOutput(streamOutput);
+                showResultWindow(commandName, streamViewer);
+            }
 
-                } else {
-                    alert.setContentText(result.getResult().substring(0, 300)+"...");
-                    TextArea textArea = new TextArea(result.getResult());
-                    alert.getDialogPane().setExpandableContent(textArea);
+            Runnable finish = () -> {
+                runButton.setDisable(false);
+                cancelButton.setDisable(true);
+                cancelButton.setOnMouseClicked(null);
+                progressIndicator.setVisible(false);
+            };
+            Runnable finishCancelled = () -> {
+                finish.run();
+                if (commandPane.listener != null)
+                    commandPane.listener.finishCommand(CommandEventListener.CommandEvent.CANCELLED, command);
+            };
+            // set by the worker when the command starts, or by the cancel handler if the command never starts
+            final AtomicBoolean started = new AtomicBoolean(false);
+
+            // Properties are read on the FX thread above. Only the command itself runs in background.
+            Task<CommandResult> task = new Task<CommandResult>() {
+                @Override
+                protected CommandResult call() throws Exception {
+                    if (!started.compareAndSet(false, true))
+                        return null;
+                    try {
+                        return commandManager.execute(command);
+                    } finally {
+                        if (streamOutput != null)
+                            streamOutput.close();
+                        // commands may ignore interruption, so the pane is finished after the command returns
+                        boolean cancelled = isCancelled();
+                        Platform.runLater(cancelled ? finishCancelled : finish);
+                    }
                 }
+            };
 
-                alert.showAndWait();
+            task.setOnSucceeded(event -> showCommandResult(task.getValue(), command, commandPane.listener));
+            task.setOnFailed(event -> {
+                log.error("Failed to run {}", commandName, task.getException());
+                showExceptionAlert("Failed to run", task.getException());
+            });
+            task.setOnCancelled(event -> {
+                cancelButton.setDisable(true);
+                if (started.compareAndSet(false, true)) {
+                    if (streamOutput != null)
+                        streamOutput.close();
+                    finishCancelled.run();
+                }
+            });
 
-                if (listener != null)
-                    listener.finishCommand(commandEvent, command);
-            } catch (Exception e1) {
-                e1.printStackTrace();
-                showExceptionAlert("Failed to run", e1);
-            }
+            runButton.setDisable(true);
+            cancelButton.setDisable(false);
+            cancelButton.setOnMouseClicked(event -> task.cancel(true));
+            progressIndicator.setVisible(true);
+            executor.execute(task);
         });
 
-        return vBox;
+        return commandPane;
     }
 
-    private Object convertProperObject(OptionHandler handler, Object optionValue) {
-        if (handler instanceof FileOptionHandler)
-            optionValue = new File(optionValue.toString());
-        else if (handler instanceof EnumOptionHandler)
-            optionValue = Enum.valueOf(handler.setter.getType(), optionValue.toString());
-        else if (handler instanceof DoubleOptionHandler)
-            optionValue = Double.parseDouble(optionValue.toString());
-        else if (handler instanceof IntOptionHandler)
-            optionValue = Integer.parseInt(optionValue.toString());
-        return optionValue;
+    private static void showResultWindow(String title, GUIResultViewer resultViewer) {
+        Stage stage = new Stage();
+        stage.setTitle(title);
+        stage.setScene(new Scene(resultViewer, 600, 400));
+        stage.show();
     }
 
+    private void showCommandResult(CommandResult result, ManagedCommand command, CommandEventListener listener) {
+        CommandEventListener.CommandEvent commandEvent;
+
+        Alert.AlertType type = Alert.AlertType.ERROR;
+        String headerText = "";
+        switch (result.getState()) {
+            case SUCCESS:
+                type = Alert.AlertType.INFORMATION;
+                commandEvent = CommandEventListener.CommandEvent.SUCCESS;
+                headerText = "Command executed successfully";
+                break;
+            case WARN:
+                type = Alert.AlertType.WARNING;
+                commandEvent = CommandEventListener.CommandEvent.WARN;
+                headerText = "Command executed with warning";
+                break;
+            case ERROR:
+            default:
+                type = Alert.AlertType.ERROR;
+                commandEvent = CommandEventListener.CommandEvent.ERROR;
+                headerText = "Command executed with error";
+                break;
+        }
 
-    private ObservableValue addOption(GridPane gridPane, OptionHandler optionHandler, int position) {
-        gridPane.add(new Label(optionHandler.option.usage()), 0, position);
+        Alert alert = new Alert(type);
+        alert.setHeaderText(headerText);
 
-        if (optionHandler instanceof FileOptionHandler) {
-            TextField textField = new TextField(optionHandler.printDefaultValue());
-            Button selectButton = new Button("Select...");
-            selectButton.setOnMouseClicked(e -> {
-                FileChooser fileChooser = new FileChooser();
-                String usage = optionHandler.option.usage();
-                fileChooser.setTitle(usage);
-                File file = null;
-
-                if (usage.toLowerCase().contains("save") || usage.toLowerCase().contains("store")) {
-                    file = fileChooser.showSaveDialog(null);
-                } else {
-                    file = fileChooser.showOpenDialog(null);
-                }
+        if (result.getResult() == null || result.getResult().length() < 300) {
+            alert.setContentText(result.getResult());
 
-                if (file != null)
-                    textField.setText(file.getAbsolutePath());
-            });
-
-            gridPane.add(textField, 1, position);
-            gridPane.add(selectButton, 2, position);
-            return textField.textProperty();
+        } else {
+            alert.setContentText(result.getResult().substring(0, 300)+"...");
+            GUIResultViewer resultViewer = new GUIResultViewer();
+            resultViewer.setPrefSize(600, 400);
+            resultViewer.append(result.getResult());
+            resultViewer.finish();
+            alert.getDialogPane().setExpandableContent(resultViewer);
         }
 
-        if (optionHandler instanceof BooleanOptionHandler) {
-            CheckBox checkBox = new CheckBox();
-            checkBox.setSelected(optionHandler.printDefaultValue().equals("true"));
-            gridPane.add(checkBox, 1, position);
-            return checkBox.selectedProperty();
-        }
+        alert.showAndWait();
+
+        if (listener != null)
+            listener.finishCommand(commandEvent, command);
+    }
+
+    private List<OptionLayout> getOptionLayouts(String commandName) {
+        return layoutCache.computeIfAbsent(commandName, name -> {
+            CommandManager.OptionInfo optionInfo = commandManager.getOptionInfoForName(name);
+            List<OptionLayout> layouts = new ArrayList<>();
+
+            int numberOfArguments = optionInfo.getArguments().size();
+            for (int i = 0; i < numberOfArguments; i++) {
+                layouts.add(createOptionLayout("arg" + i, optionInfo.getArguments().get(i)));
+            }
+            for (Map.Entry<String, OptionHandler> entry : optionInfo.getOptions().entrySet()) {
+                layouts.add(createOptionLayout(entry.getKey(), entry.getValue()));
+            }
+            return Collections.unmodifiableList(layouts);
+        });
+    }
 
-        // disable following code due to unexpected behavior of Spinner
-        /*
-        if (optionHandler instanceof IntOptionHandler) {
-            Spinner<Integer> spinner = new Spinner<>();
-            SpinnerValueFactory<Integer> factory = new SpinnerValueFactory.IntegerSpinnerValueFactory(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.parseInt(optionHandler.printDefaultValue()));
-            spinner.setValueFactory(factory);
-            spinner.setEditable(true);
-            gridPane.add(spinner, 1, position);
-            return spinner.valueProperty();
+    private static OptionLayout createOptionLayout(String key, OptionHandler optionHandler) {
+        String usage = optionHandler.option.usage();
+        String defaultValue = optionHandler.printDefaultValue();
+
+        if (optionHandler instanceof FileOptionHandler) {
+            boolean save = usage.toLowerCase().contains("save") || usage.toLowerCase().contains("store");
+            return new OptionLayout(key, usage, ControlType.FILE, defaultValue, null, save);
         }
 
-        if (optionHandler instanceof DoubleOptionHandler) {
-            Spinner<Double> spinner = new Spinner<>();
-            SpinnerValueFactory<Double> factory = new SpinnerValueFactory.DoubleSpinnerValueFactory(Double.MIN_VALUE, Double.MAX_VALUE, Double.parseDouble(optionHandler.printDefaultValue()));
-            spinner.setValueFactory(factory);
-            spinner.setEditable(true);
-            gridPane.add(spinner, 1, position);
-            return spinner.valueProperty();
+        if (optionHandler instanceof BooleanOptionHandler) {
+            return new OptionLayout(key, usage, ControlType.CHECK_BOX, defaultValue, null, false);
         }
-        */
+
+        // Spinner is not used for IntOptionHandler and DoubleOptionHandler due to unexpected behavior of Spinner
 
         if (optionHandler instanceof EnumOptionHandler) {
-            ChoiceBox<String> choiceBox = new ChoiceBox<>();
             List<String> candidates = CommandManager.OptionInfo.candidateOptions(optionHandler);
             if (candidates != null) {
-                choiceBox.getItems().addAll(candidates);
-                choiceBox.getSelectionModel().select(optionHandler.printDefaultValue());
-                gridPane.add(choiceBox, 1, position);
-                return choiceBox.getSelectionModel().selectedItemProperty();
+                return new OptionLayout(key, usage, ControlType.CHOICE_BOX, defaultValue, candidates, false);
             }
         }
 
-        TextField textField = new TextField(optionHandler.printDefaultValue());
-        gridPane.add(textField, 1, position);
-        return textField.textProperty();
+        return new OptionLayout(key, usage, ControlType.TEXT_FIELD, defaultValue, null, false);
+    }
+
+    private OptionControl addOption(GridPane gridPane, OptionLayout layout, int position) {
+        gridPane.add(new Label(layout.getLabel()), 0, position);
+        String defaultValue = layout.getDefaultValue();
+
+        switch (layout.getControlType()) {
+            case FILE: {
+                TextField textField = new TextField(defaultValue);
+                Button selectButton = new Button("Select...");
+                selectButton.setOnMouseClicked(e -> {
+                    FileChooser fileChooser = new FileChooser();
+                    fileChooser.setTitle(layout.getLabel());
+                    File file = null;
+
+                    if (layout.isSaveFile()) {
+                        file = fileChooser.showSaveDialog(null);
+                    } else {
+                        file = fileChooser.showOpenDialog(null);
+                    }
+
+                    if (file != null)
+                        textField.setText(file.getAbsolutePath());
+                });
+
+                gridPane.add(textField, 1, position);
+                gridPane.add(selectButton, 2, position);
+                return new OptionControl(textField.textProperty(), () -> textField.setText(defaultValue));
+            }
+            case CHECK_BOX: {
+                CheckBox checkBox = new CheckBox();
+                checkBox.setSelected("true".equals(defaultValue));
+                gridPane.add(checkBox, 1, position);
+                return new OptionControl(checkBox.selectedProperty(), () -> checkBox.setSelected("true".equals(defaultValue)));
+            }
+            case CHOICE_BOX: {
+                ChoiceBox<String> choiceBox = new ChoiceBox<>();
+                choiceBox.getItems().addAll(layout.getCandidates());
+                choiceBox.getSelectionModel().select(defaultValue);
+                gridPane.add(choiceBox, 1, position);
+                return new OptionControl(choiceBox.getSelectionModel().selectedItemProperty(),
+                        () -> choiceBox.getSelectionModel().select(defaultValue));
+            }
+            case TEXT_FIELD:
+            default: {
+                TextField textField = new TextField(defaultValue);
+                gridPane.add(textField, 1, position);
+                return new OptionControl(textField.textProperty(), () -> textField.setText(defaultValue));
+            }
+        }
     }
 
     public static void showExceptionAlert(String headerText, Throwable th) {
@@ -278,14 +460,49 @@ public class GUICommandPaneFactory {
         alert.showAndWait();
     }
 
+    private enum ControlType {
+        FILE, CHECK_BOX, CHOICE_BOX, TEXT_FIELD
+    }
+
+    /**
+     * Control layout of an option, computed once from {@code OptionInfo} for each command.
+     */
+    @Value
+    private static class OptionLayout {
+        private String key;
+        private String label;
+        private ControlType controlType;
+        private String defaultValue;
+        private List<String> candidates;
+        private boolean saveFile;
+    }
+
+    @Value
+    private static class OptionControl {
+        private ObservableValue property;
+        private Runnable reset;
+    }
+
+    private static class CommandPane {
+        private Parent root;
+        private List<Runnable> resetters = new ArrayList<>();
+        private CommandEventListener listener;
+    }
+
     public interface CommandEventListener {
 
         enum CommandEvent {
             SUCCESS,
             WARN,
-            ERROR
+            ERROR,
+            CANCELLED
         }
 
+        /**
+         * Called on the JavaFX application thread when a command is finished or cancelled.
+         * @param commandEvent a result of the command
+         * @param managedCommand the executed command
+         */
         void finishCommand(CommandEvent commandEvent, ManagedCommand managedCommand);
     }
 }
@@ -0,0 +1,270 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.informationsea.commandmanager.gui;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
+import lombok.NonNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Viewer for large command results.
+ *
+ * Output is shown line by line in a {@code ListView}, so only visible rows are rendered.
+ * Text can be appended from any thread while a command is running. Appended text is batched and
+ * added to the view on the JavaFX application thread.
+ * @author Yasunobu OKAMURA
+ */
+public class GUIResultViewer extends BorderPane {
+
+    private static final int SAVE_BUFFER_SIZE = 1024 * 64;
+
+    private final ListView<String> lineView = new ListView<>();
+    private final TextField searchField = new TextField();
+    private final Label statusLabel = new Label();
+
+    private final Object lock = new Object();
+    private StringBuilder pending = new StringBuilder();
+    private boolean flushScheduled = false;
+    private boolean finished = false;
+
+    // a last line which is not terminated yet. Accessed only on the JavaFX application thread.
+    private String partialLine = "";
+
+    // true if the last flushed text ended with '\r', so a following '\n' is a part of CRLF
+    private boolean pendingCarriageReturn = false;
+
+    public GUIResultViewer() {
+        lineView.setStyle("-fx-font-family: monospace;");
+
+        searchField.setPromptText("Search");
+        searchField.setOnAction(e -> findNext(searchField.getText()));
+        Button findButton = new Button("Find next");
+        findButton.setOnMouseClicked(e -> findNext(searchField.getText()));
+        Button saveButton = new Button("Save...");
+        saveButton.setOnMouseClicked(e -> saveWithDialog());
+
+        HBox toolBox = new HBox(5, searchField, findButton, saveButton, statusLabel);
+        toolBox.setAlignment(Pos.CENTER_LEFT);
+        toolBox.setPadding(new Insets(5));
+
+        setTop(toolBox);
+        setCenter(lineView);
+    }
+
+    /**
+     * Append text to this viewer. This method can be called from any thread.
+     * @param text text to append. Lines are terminated by '\n', '\r' or CRLF, which may span appended texts.
+     */
+    public void append(@NonNull CharSequence text) {
+        synchronized (lock) {
+            pending.append(text);
+            if (flushScheduled)
+                return;
+            flushScheduled = true;
+        }
+        Platform.runLater(this::flush);
+    }
+
+    /**
+     * Notify that all text is appended, and show the last line even if it is not terminated.
+     * This method can be called from any thread.
+     */
+    public void finish() {
+        synchronized (lock) {
+            finished = true;
+            if (flushScheduled)
+                return;
+            flushScheduled = true;
+        }
+        Platform.runLater(this::flush);
+    }
+
+    /**
+     * Get a writer which appends text to this viewer. Closing the writer calls {@code finish}.
+     * @return a writer
+     */
+    public Writer getWriter() {
+        return new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                append(new String(cbuf, off, len));
+            }
+
+            @Override
+            public void write(String str, int off, int len) {
+                append(str.substring(off, off + len));
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {
+                finish();
+            }
+        };
+    }
+
+    /**
+     * Get lines shown in this viewer. Must be called on the JavaFX application thread.
+     * @return shown lines
+     */
+    public List<String> getLines() {
+        return lineView.getItems();
+    }
+
+    private void flush() {
+        StringBuilder text;
+        boolean last;
+        synchronized (lock) {
+            text = pending;
+            pending = new StringBuilder();
+            last = finished;
+            flushScheduled = false;
+        }
+
+        List<String> newLines = new ArrayList<>();
+        String carry = partialLine;
+        int length = text.length();
+        int start = 0;
+        if (pendingCarriageReturn && length > 0) {
+            if (text.charAt(0) == '\n')
+                start = 1;
+            pendingCarriageReturn = false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                String line = text.substring(start, i);
+                if (carry.length() > 0) {
+                    line = carry + line;
+                    carry = "";
+                }
+                newLines.add(line);
+                if (c == '\r') {
+                    if (i + 1 == length)
+                        pendingCarriageReturn = true;
+                    else if (text.charAt(i + 1) == '\n')
+                        i++;
+                }
+                start = i + 1;
+            }
+        }
+        partialLine = carry + text.substring(start);
+
+        if (last && partialLine.length() > 0) {
+            newLines.add(partialLine);
+            partialLine = "";
+        }
+
+        lineView.getItems().addAll(newLines);
+        statusLabel.setText(String.format("%d lines", lineView.getItems().size()));
+    }
+
+    /**
+     * Select and show the next line which contains the query, ignoring case.
+     * Search wraps around at the end. Must be called on the JavaFX application thread.
+     * @param query a query string
+     * @return index of the found line, or -1 if not found
+     */
+    public int findNext(String query) {
+        List<String> lines = lineView.getItems();
+        if (query == null || query.isEmpty() || lines.isEmpty())
+            return -1;
+
+        int start = lineView.getSelectionModel().getSelectedIndex() + 1;
+        for (int i = 0; i < lines.size(); i++) {
+            int index = (start + i) % lines.size();
+            if (containsIgnoreCase(lines.get(index), query)) {
+                lineView.getSelectionModel().clearAndSelect(index);
+                lineView.scrollTo(index);
+                statusLabel.setText(String.format("Line %d", index + 1));
+                return index;
+            }
+        }
+
+        statusLabel.setText("Not found");
+        return -1;
+    }
+
+    private static boolean containsIgnoreCase(String line, String query) {
+        for (int i = 0; i + query.length() <= line.length(); i++) {
+            if (line.regionMatches(true, i, query, 0, query.length()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Save shown lines to a file. Lines are written one by one, and the whole text is never concatenated.
+     * Must be called on the JavaFX application thread.
+     * @param file a file to save
+     * @throws IOException failed to write
+     */
+    public void save(File file) throws IOException {
+        writeLines(file, lineView.getItems().toArray(new String[0]));
+    }
+
+    private static void writeLines(File file, String[] lines) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), SAVE_BUFFER_SIZE)) {
+            for (String one : lines) {
+                writer.write(one);
+                writer.write('\n');
+            }
+        }
+    }
+
+    private void saveWithDialog() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save result");
+        File file = fileChooser.showSaveDialog(getScene() == null ? null : getScene().getWindow());
+        if (file == null)
+            return;
+
+        // copy only references to lines, and write them in background
+        String[] lines = lineView.getItems().toArray(new String[0]);
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                writeLines(file, lines);
+                return null;
+            }
+        };
+        task.setOnSucceeded(e -> statusLabel.setText("Saved to " + file.getName()));
+        task.setOnFailed(e -> GUICommandPaneFactory.showExceptionAlert("Failed to save", task.getException()));
+
+        Thread thread = new Thread(task, "CommandManager result writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+    CommandManager : manage commands
+    Copyright (C) 2015 Yasunobu OKAMURA
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package info.informationsea.commandmanager.gui;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public class CommandSearchIndexTest {
+
+    private static final List<String> NAMES = Arrays.asList("load", "save", "print", "Replace", "bulkreplace", "redo");
+
+    private static List<String> expected(List<String> names, String query) {
+        List<String> result = new ArrayList<>();
+        for (String one : names) {
+            if (one.toLowerCase(Locale.ROOT).contains(query.toLowerCase(Locale.ROOT)))
+                result.add(one);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testNarrowing() {
+        CommandSearchIndex index = new CommandSearchIndex(NAMES);
+        Assert.assertEquals(6, index.size());
+        Assert.assertEquals(expected(NAMES, ""), index.search(""));
+
+        List<String> r = index.search("r");
+        List<String> re = index.search("Re");
+        List<String> rep = index.search("rep");
+        Assert.assertEquals(expected(NAMES, "rep"), rep);
+        Assert.assertEquals(Arrays.asList("Replace", "bulkreplace"), rep);
+        Assert.assertEquals(1, rep.indexOf("bulkreplace"));
+        Assert.assertEquals(-1, rep.indexOf("redo"));
+
+        // lists returned earlier are not changed by later searches
+        Assert.assertEquals(expected(NAMES, "r"), r);
+        Assert.assertEquals(expected(NAMES, "re"), re);
+        Assert.assertEquals(Collections.emptyList(), index.search("repx"));
+        Assert.assertEquals(expected(NAMES, "rep"), rep);
+    }
+
+    @Test
+    public void testWidening() {
+        CommandSearchIndex index = new CommandSearchIndex(NAMES);
+        Assert.assertEquals(expected(NAMES, "lo"), index.search("lo"));
+        Assert.assertEquals(Collections.singletonList("load"), index.search("loa"));
+
+        // backspace
+        Assert.assertEquals(expected(NAMES, "lo"), index.search("lo"));
+        Assert.assertEquals(expected(NAMES, "l"), index.search("l"));
+        Assert.assertEquals(expected(NAMES, ""), index.search(""));
+        Assert.assertEquals(expected(NAMES, "e"), index.search("e"));
+        Assert.assertEquals(expected(NAMES, "d"), index.search("d"));
+    }
+
+    @Test
+    public void testSetNames() {
+        CommandSearchIndex index = new CommandSearchIndex(NAMES);
+        List<String> before = index.search("re");
+
+        List<String> names = new ArrayList<>(NAMES);
+        names.add("restore");
+        names.remove("redo");
+        index.setNames(names);
+        Assert.assertEquals(6, index.size());
+        Assert.assertEquals(expected(names, "re"), index.search("re"));
+        Assert.assertEquals(expected(names, "res"), index.search("res"));
+        Assert.assertEquals(expected(NAMES, "re"), before);
+    }
+}